@@ -0,0 +1,63 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Room;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Booking attempts per second when many threads go after a few hot rooms, with
+ * no database write. A quarter of the calls cancel a random stay, so the
+ * calendars never fill up and refusals do not take over. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=BookingAdmissionBenchmark},
+ * changing the thread count with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class BookingAdmissionBenchmark {
+
+    private static final int HOT_ROOMS = 10;
+
+    @Param({ "256" })
+    private int stripes;
+
+    private RoomAvailabilityService availability;
+    private BookingAdmissionService admission;
+    private LocalDate today;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<Room> rooms = new ArrayList<>();
+        for (long id = 1; id <= HOT_ROOMS; id++) {
+            Room room = new Room();
+            room.setId(id);
+            rooms.add(room);
+        }
+        today = LocalDate.now();
+        availability = new RoomAvailabilityService();
+        availability.rebuild(rooms, List.of());
+        admission = new BookingAdmissionService(availability, stripes);
+    }
+
+    @Benchmark
+    public boolean admit() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long roomId = 1 + random.nextInt(HOT_ROOMS);
+        LocalDate checkIn = today.plusDays(random.nextInt(300));
+        LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(4));
+        if (random.nextInt(4) == 0) {
+            admission.release(roomId, checkIn, checkOut, () -> true);
+            return false;
+        }
+        return admission.admit(roomId, checkIn, checkOut, () -> { });
+    }
+}
@@ -0,0 +1,62 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-hotel queries per second while one writer keeps moving hotels.
+ * Readers and the writer run as one JMH group; change the reader count with
+ * {@code -tg}, e.g.
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="KDTreeConcurrencyBenchmark -tg 32,1"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class KDTreeConcurrencyBenchmark {
+
+    private static final int HOTELS = 20_000;
+
+    private KDTreeService service;
+    private List<Hotel> hotels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hotels = SpatialTestData.uniform(HOTELS, 1);
+        service = new KDTreeService();
+        service.rebuild(hotels);
+    }
+
+    @Benchmark
+    @Group("readersWithWriter")
+    @GroupThreads(8)
+    public List<NearbyHotelResponse> nearest10() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return service.findNearestHotels(-60 + random.nextDouble() * 120, -180 + random.nextDouble() * 360, 10);
+    }
+
+    /**
+     * One hotel moved per millisecond, as in a steady admin import.
+     */
+    @Benchmark
+    @Group("readersWithWriter")
+    @GroupThreads(1)
+    public void move() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Hotel hotel = hotels.get(random.nextInt(HOTELS));
+        service.updateHotelCache(SpatialTestData.hotel(hotel.getId(), -60 + random.nextDouble() * 120,
+                -180 + random.nextDouble() * 360));
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
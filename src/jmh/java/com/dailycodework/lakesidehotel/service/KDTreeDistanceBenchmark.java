@@ -0,0 +1,171 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.KDTreeIndex;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * K-D tree kNN keyed by squared chord, with haversine only for the final k,
+ * against the same traversal running haversine at every visited node. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=KDTreeDistanceBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class KDTreeDistanceBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int K = 10;
+
+    @Param({ "10000", "1000000" })
+    private int size;
+
+    @Param({ "uniform", "clusteredCities" })
+    private String distribution;
+
+    private KDTreeService kdTreeService;
+    private HaversineSearch haversineSearch;
+    private double[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Hotel> hotels = "uniform".equals(distribution)
+                ? SpatialTestData.uniform(size, 1)
+                : SpatialTestData.clusteredCities(size, 1);
+        kdTreeService = new KDTreeService();
+        kdTreeService.rebuild(hotels);
+
+        long[] ids = new long[size];
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = hotels.get(i).getId();
+            latitudes[i] = hotels.get(i).getLatitude();
+            longitudes[i] = hotels.get(i).getLongitude();
+        }
+        haversineSearch = new HaversineSearch(KDTreeIndex.build(ids, latitudes, longitudes), K);
+
+        Random random = new Random(2);
+        queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = SpatialTestData.queryNear(hotels, random);
+        }
+
+        // Both searches must report the same hotels at the very same distances
+        for (double[] query : queries) {
+            List<NearbyHotelResponse> surrogate = kdTreeService.findNearestHotels(query[0], query[1], K);
+            double[] exact = haversineSearch.nearest(query[0], query[1]);
+            for (int i = 0; i < K; i++) {
+                if (surrogate.get(i).getDistance() != exact[i]) {
+                    throw new IllegalStateException("Distances differ at " + Arrays.toString(query));
+                }
+            }
+        }
+    }
+
+    private double[] nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return queries[next];
+    }
+
+    @Benchmark
+    public List<NearbyHotelResponse> chordThenHaversine() {
+        double[] query = nextQuery();
+        return kdTreeService.findNearestHotels(query[0], query[1], K);
+    }
+
+    @Benchmark
+    public double[] haversinePerNode() {
+        double[] query = nextQuery();
+        return haversineSearch.nearest(query[0], query[1]);
+    }
+
+    /**
+     * The previous search: haversine for every visited node, pruning on the
+     * chord of the k-th best haversine distance. Returns the k distances,
+     * nearest first.
+     */
+    private static final class HaversineSearch {
+        private final KDTreeIndex index;
+        private final int k;
+        private final double[] heap;
+        private int heapSize;
+        private double userLat;
+        private double userLon;
+        private double[] point;
+
+        HaversineSearch(KDTreeIndex index, int k) {
+            this.index = index;
+            this.k = k;
+            this.heap = new double[k];
+        }
+
+        double[] nearest(double userLat, double userLon) {
+            this.userLat = userLat;
+            this.userLon = userLon;
+            this.point = KDTreeIndex.toUnitVector(userLat, userLon);
+            heapSize = 0;
+            search(0, index.treeSize(), 0);
+            double[] distances = Arrays.copyOf(heap, heapSize);
+            Arrays.sort(distances);
+            return distances;
+        }
+
+        private void search(int lo, int hi, int depth) {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            offer(SpatialIndex.calculateDistance(userLat, userLon, index.latitude(mid), index.longitude(mid)));
+
+            int axis = depth % KDTreeIndex.DIMENSIONS;
+            double offset = point[axis] - index.coordinate(mid, axis);
+            int nearLo = offset < 0 ? lo : mid + 1;
+            int nearHi = offset < 0 ? mid : hi;
+            search(nearLo, nearHi, depth + 1);
+            if (heapSize < k || offset * offset < chordSquared(heap[0])) {
+                search(offset < 0 ? mid + 1 : lo, offset < 0 ? hi : mid, depth + 1);
+            }
+        }
+
+        private void offer(double distance) {
+            if (heapSize < k) {
+                int i = heapSize++;
+                while (i > 0 && heap[(i - 1) >>> 1] < distance) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = distance;
+            } else if (distance < heap[0]) {
+                int i = 0;
+                while (2 * i + 1 < heapSize) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < heapSize && heap[child + 1] > heap[child]) {
+                        child++;
+                    }
+                    if (heap[child] <= distance) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = distance;
+            }
+        }
+
+        private static double chordSquared(double distanceKm) {
+            double chord = 2 * Math.sin(Math.min(distanceKm / SpatialIndex.EARTH_RADIUS_KM, Math.PI) / 2);
+            return chord * chord;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-hotel searches with and without Micrometer meters. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="KDTreeMetricsBenchmark -prof gc"}:
+ * {@code gc.alloc.rate.norm} should be the same for both, since a search only
+ * adds to the meters' preallocated counters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KDTreeMetricsBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({ "off", "on" })
+    private String metrics;
+
+    private KDTreeService index;
+    private double[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Hotel> hotels = SpatialTestData.uniform(100_000, 1);
+        index = new KDTreeService();
+        if ("on".equals(metrics)) {
+            index.setMeterRegistry(new SimpleMeterRegistry());
+        }
+        index.rebuild(hotels);
+
+        Random random = new Random(2);
+        queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = SpatialTestData.queryNear(hotels, random);
+        }
+    }
+
+    @Benchmark
+    public List<NearbyHotelResponse> nearest10() {
+        next = (next + 1) & (QUERIES - 1);
+        double[] query = queries[next];
+        return index.findNearestHotels(query[0], query[1], 10);
+    }
+}
@@ -0,0 +1,201 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.HotelSummary;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building, growing and querying the K-D tree over 1k to 1M hotels. The sorted
+ * catalog is the degenerate case: ids follow latitude, so one-by-one inserts
+ * arrive region by region. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=KDTreeServiceBenchmark},
+ * narrowing the sizes with {@code -p size=100000} when 1M is too slow.
+ *
+ * Setup checks a sample of every query against brute force, on both the bulk
+ * built tree and the one grown by inserts, and fails the trial on the first
+ * difference. A new query type gets its benchmark and its check here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class KDTreeServiceBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int CHECKED_QUERIES = 16;
+    private static final int K = 10;
+    private static final double RADIUS_KM = 5;
+    // Half the height and width of the map box, in degrees
+    private static final double BOX_LAT = 0.1;
+    private static final double BOX_LON = 0.15;
+
+    @Param({ "1000", "100000", "1000000" })
+    private int size;
+
+    @Param({ "uniform", "clusteredCities", "sorted" })
+    private String distribution;
+
+    private List<HotelSummary> summaries;
+    private double[] latitudes;
+    private double[] longitudes;
+    // Every hotel cached but none indexed yet: the starting point of insertOneByOne
+    private double[] unlocated;
+    private KDTreeService built;
+    private double[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Hotel> hotels = switch (distribution) {
+            case "uniform" -> SpatialTestData.uniform(size, 1);
+            case "clusteredCities" -> SpatialTestData.clusteredCities(size, 1);
+            default -> SpatialTestData.sorted(size, 1);
+        };
+        summaries = new ArrayList<>(size);
+        latitudes = new double[size];
+        longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            summaries.add(HotelSummary.of(hotels.get(i)));
+            latitudes[i] = hotels.get(i).getLatitude();
+            longitudes[i] = hotels.get(i).getLongitude();
+        }
+        unlocated = new double[size];
+        Arrays.fill(unlocated, Double.NaN);
+
+        built = new KDTreeService();
+        built.rebuild(summaries, latitudes, longitudes);
+
+        Random random = new Random(2);
+        queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = SpatialTestData.queryNear(hotels, random);
+        }
+
+        // A benchmark of wrong answers is worthless: check both trees against brute force first
+        KDTreeService inserted = insertAll(newUnlocatedIndex());
+        for (int i = 0; i < CHECKED_QUERIES; i++) {
+            double[] query = queries[i];
+            double[] box = boxAround(query);
+            List<Long> nearest = SpatialTestData.nearestIds(hotels, query[0], query[1], K);
+            List<Long> within = SpatialTestData.withinIds(hotels, query[0], query[1], RADIUS_KM);
+            List<Long> inBox = SpatialTestData.inBoxIds(hotels, box[0], box[1], box[2], box[3]);
+            for (KDTreeService index : List.of(built, inserted)) {
+                String tree = index == built ? "built" : "inserted";
+                check(nearest, nearbyIds(index.findNearestHotels(query[0], query[1], K)), tree, "nearest");
+                check(within, nearbyIds(index.findHotelsWithin(query[0], query[1], RADIUS_KM)), tree, "within");
+                check(inBox, mapIds(index.findHotelsInBox(box[0], box[1], box[2], box[3])), tree, "box");
+            }
+        }
+    }
+
+    /**
+     * A fresh tree for each insertOneByOne call; its own state, so the other
+     * benchmarks are not reset on every invocation.
+     */
+    @State(Scope.Thread)
+    public static class Growing {
+        private KDTreeService index;
+
+        @Setup(Level.Invocation)
+        public void reset(KDTreeServiceBenchmark benchmark) {
+            index = benchmark.newUnlocatedIndex();
+        }
+    }
+
+    private KDTreeService newUnlocatedIndex() {
+        KDTreeService index = new KDTreeService();
+        index.rebuild(summaries, unlocated, unlocated);
+        return index;
+    }
+
+    private KDTreeService insertAll(KDTreeService index) {
+        for (int i = 0; i < size; i++) {
+            index.insertHotel(summaries.get(i).id(), latitudes[i], longitudes[i]);
+        }
+        return index;
+    }
+
+    private void check(List<Long> expected, List<Long> actual, String tree, String query) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("The " + tree + " tree answered a " + query + " query wrongly on "
+                    + size + " " + distribution + " hotels");
+        }
+    }
+
+    private static List<Long> nearbyIds(List<NearbyHotelResponse> hotels) {
+        return hotels.stream().map(NearbyHotelResponse::getId).toList();
+    }
+
+    private static List<Long> mapIds(List<MapHotelResponse> hotels) {
+        return hotels.stream().map(MapHotelResponse::getId).sorted().toList();
+    }
+
+    // South, west, north, east; wraps across the antimeridian like a map viewport would
+    private static double[] boxAround(double[] query) {
+        double west = query[1] - BOX_LON;
+        double east = query[1] + BOX_LON;
+        return new double[] {
+                Math.max(-90, query[0] - BOX_LAT), west < -180 ? west + 360 : west,
+                Math.min(90, query[0] + BOX_LAT), east > 180 ? east - 360 : east };
+    }
+
+    private double[] nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return queries[next];
+    }
+
+    /**
+     * Bulk build of the whole catalog, as at startup.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public KDTreeService build() {
+        KDTreeService index = new KDTreeService();
+        index.rebuild(summaries, latitudes, longitudes);
+        return index;
+    }
+
+    /**
+     * Every hotel inserted on its own, in id order, including the rebuilds the
+     * growing unbuilt tail triggers.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public KDTreeService insertOneByOne(Growing growing) {
+        return insertAll(growing.index);
+    }
+
+    @Benchmark
+    public List<NearbyHotelResponse> nearest10() {
+        double[] query = nextQuery();
+        return built.findNearestHotels(query[0], query[1], K);
+    }
+
+    @Benchmark
+    public List<NearbyHotelResponse> within5Km() {
+        double[] query = nextQuery();
+        return built.findHotelsWithin(query[0], query[1], RADIUS_KM, 100);
+    }
+
+    @Benchmark
+    public List<MapHotelResponse> inBox() {
+        double[] box = boxAround(nextQuery());
+        return built.findHotelsInBox(box[0], box[1], box[2], box[3]);
+    }
+}
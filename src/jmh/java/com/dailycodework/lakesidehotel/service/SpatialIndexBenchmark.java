@@ -0,0 +1,101 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the spatial index implementations on the same catalogs. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=SpatialIndexBenchmark}.
+ * Add {@code -prof gc} to the arguments to see the bytes allocated per query
+ * ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpatialIndexBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({ "kdtree", "grid" })
+    private String type;
+
+    @Param({ "uniform", "clusteredCities", "singleCity" })
+    private String distribution;
+
+    @Param({ "100000" })
+    private int size;
+
+    private SpatialIndex index;
+    private List<Hotel> hotels;
+    private double[][] queries;
+    private Random random;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hotels = switch (distribution) {
+            case "uniform" -> SpatialTestData.uniform(size, 1);
+            case "clusteredCities" -> SpatialTestData.clusteredCities(size, 1);
+            default -> SpatialTestData.singleCity(size, 1);
+        };
+        index = "grid".equals(type) ? new GridIndexService(0.25) : new KDTreeService();
+        index.rebuild(hotels);
+
+        random = new Random(2);
+        queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = SpatialTestData.queryNear(hotels, random);
+        }
+
+        // A benchmark of wrong answers is worthless: check a sample against brute force first
+        for (int i = 0; i < 20; i++) {
+            double[] query = queries[i];
+            List<Long> actual = index.findNearestHotels(query[0], query[1], 10).stream()
+                    .map(NearbyHotelResponse::getId)
+                    .toList();
+            if (!actual.equals(SpatialTestData.nearestIds(hotels, query[0], query[1], 10))) {
+                throw new IllegalStateException(type + " returned wrong neighbours on " + distribution);
+            }
+        }
+    }
+
+    private double[] nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return queries[next];
+    }
+
+    @Benchmark
+    public List<NearbyHotelResponse> nearest10() {
+        double[] query = nextQuery();
+        return index.findNearestHotels(query[0], query[1], 10);
+    }
+
+    @Benchmark
+    public List<NearbyHotelResponse> within5Km() {
+        double[] query = nextQuery();
+        return index.findHotelsWithin(query[0], query[1], 5, 100);
+    }
+
+    /**
+     * One move and one remove/re-insert pair: the write mix of a busy admin
+     * import.
+     */
+    @Benchmark
+    public void churn() {
+        Hotel hotel = hotels.get(random.nextInt(hotels.size()));
+        double[] target = nextQuery();
+        index.updateHotelCache(SpatialTestData.hotel(hotel.getId(), target[0], target[1]));
+
+        Hotel other = hotels.get(random.nextInt(hotels.size()));
+        index.removeHotel(other.getId());
+        index.updateHotelCache(other);
+    }
+}
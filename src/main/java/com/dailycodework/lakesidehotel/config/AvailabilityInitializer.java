@@ -0,0 +1,45 @@
+package com.dailycodework.lakesidehotel.config;
+
+import com.dailycodework.lakesidehotel.repository.BookingRepository;
+import com.dailycodework.lakesidehotel.model.Room;
+import com.dailycodework.lakesidehotel.repository.RoomRepository;
+import com.dailycodework.lakesidehotel.service.RoomAttributeService;
+import com.dailycodework.lakesidehotel.service.RoomAvailabilityService;
+import com.dailycodework.lakesidehotel.service.RoomTypeInventoryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@Order(3) // Run after DataSeeder has created the rooms and bookings
+public class AvailabilityInitializer implements CommandLineRunner {
+
+    private final RoomRepository roomRepository;
+    private final BookingRepository bookingRepository;
+    private final RoomAvailabilityService roomAvailabilityService;
+    private final RoomAttributeService roomAttributeService;
+    private final RoomTypeInventoryService roomTypeInventoryService;
+
+    @Override
+    public void run(String... args) throws Exception {
+        log.info("Loading room availability...");
+
+        try {
+            List<Room> rooms = roomRepository.findAll();
+            roomAvailabilityService.rebuild(rooms, bookingRepository.findAll());
+            // Room filters of the spatial index; runs after KDTreeInitializer has loaded the hotels
+            roomAttributeService.rebuild(rooms);
+            // Room type counters, corrected against the bookings in case the last run left them off
+            roomTypeInventoryService.reconcile();
+            log.info("Room availability loaded");
+        } catch (Exception e) {
+            log.error("Error loading room availability: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.dailycodework.lakesidehotel.config;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.service.HotelChangedEvent;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Entity listener on {@link Hotel} that publishes a {@link HotelChangedEvent}
+ * for every insert, update and delete flushed by JPA, whichever code path made
+ * it. Hibernate obtains this listener from Spring, so it can be injected.
+ */
+@Component
+@RequiredArgsConstructor
+public class HotelChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void hotelChanged(Hotel hotel) {
+        eventPublisher.publishEvent(new HotelChangedEvent(hotel.getId()));
+    }
+}
@@ -1,8 +1,8 @@
 package com.dailycodework.lakesidehotel.config;
 
-import com.dailycodework.lakesidehotel.model.Hotel;
-import com.dailycodework.lakesidehotel.repository.HotelRepository;
-import com.dailycodework.lakesidehotel.service.KDTreeService;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
+import com.dailycodework.lakesidehotel.service.SpatialIndex;
+import com.dailycodework.lakesidehotel.service.SpatialIndexSnapshotService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
@@ -15,33 +15,34 @@ import org.springframework.stereotype.Component;
 @Order(2) // Run after DataInitializer but before DataSeeder
 public class KDTreeInitializer implements CommandLineRunner {
 
-    private final HotelRepository hotelRepository;
-    private final KDTreeService kdTreeService;
+    private final SpatialIndexSnapshotService spatialIndexSnapshotService;
+    private final SpatialIndex spatialIndex;
 
     @Override
     public void run(String... args) throws Exception {
-        log.info("Initializing K-D Tree with existing hotel data...");
+        log.info("Initializing spatial index with existing hotel data...");
 
         try {
             // Sample hotel data with coordinates (you can replace with real coordinates)
             // For demo purposes, using some sample coordinates
             initializeSampleHotels();
 
-            log.info("K-D Tree initialization completed successfully");
+            log.info("Spatial index initialization completed successfully");
         } catch (Exception e) {
-            log.error("Error initializing K-D Tree: {}", e.getMessage(), e);
+            log.error("Error initializing spatial index: {}", e.getMessage(), e);
         }
     }
 
     private void initializeSampleHotels() {
-        // Populate K-D Tree with all hotels (DataSeeder will create the hotels)
-        Iterable<Hotel> hotels = hotelRepository.findAll();
-        for (Hotel hotel : hotels) {
-            if (hotel.getLatitude() != null && hotel.getLongitude() != null) {
-                kdTreeService.updateHotelCache(hotel);
-                log.debug("Added hotel to K-D Tree: {} at ({}, {})",
-                        hotel.getName(), hotel.getLatitude(), hotel.getLongitude());
-            }
-        }
+        // Populate the spatial index with all hotels (DataSeeder will create the hotels), from the
+        // on-disk snapshot plus the changes since when there is one.
+        // Bulk-build so a K-D tree is balanced regardless of the order rows come back in.
+        long started = System.nanoTime();
+        spatialIndexSnapshotService.loadIndex();
+
+        SpatialIndexStatsResponse stats = spatialIndex.getStats();
+        log.info("Spatial index ({}) built with {} hotels in {} ms, depth {} (balanced depth {})",
+                stats.getType(), stats.getNodeCount(), (System.nanoTime() - started) / 1_000_000, stats.getDepth(),
+                stats.getBalancedDepth());
     }
 }
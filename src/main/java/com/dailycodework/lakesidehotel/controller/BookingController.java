@@ -4,6 +4,7 @@ import com.dailycodework.lakesidehotel.exception.InvalidBookingRequestException;
 import com.dailycodework.lakesidehotel.exception.ResourceNotFoundException;
 import com.dailycodework.lakesidehotel.model.BookedRoom;
 import com.dailycodework.lakesidehotel.model.Room;
+import com.dailycodework.lakesidehotel.request.GroupBookingRequest;
 import com.dailycodework.lakesidehotel.response.BookingResponse;
 import com.dailycodework.lakesidehotel.response.DynamicPricingResponse;
 import com.dailycodework.lakesidehotel.response.RoomResponse;
@@ -72,6 +73,18 @@ public class BookingController {
         }
     }
 
+    @PostMapping("/group")
+    public ResponseEntity<?> saveGroupBooking(@RequestBody GroupBookingRequest groupRequest) {
+        try {
+            List<String> confirmationCodes = bookingService.saveGroupBooking(groupRequest);
+            return ResponseEntity.ok(confirmationCodes);
+        } catch (InvalidBookingRequestException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
     @GetMapping("/confirmation/{confirmationCode}")
     public ResponseEntity<?> getBookingByConfirmationCode(@PathVariable String confirmationCode) {
         try {
@@ -140,6 +153,7 @@ public class BookingController {
                 booking.getCheckOutDate(), booking.getGuestFullName(),
                 booking.getGuestEmail(), booking.getPhoneNumber(),
                 booking.getNumOfAdults(), booking.getNumOfChildren(),
-                booking.getTotalNumOfGuests(), numOfNights, booking.getBookingConfirmationCode(), room);
+                booking.getTotalNumOfGuests(), numOfNights, booking.getBookingConfirmationCode(), room,
+                booking.getStatus());
     }
 }
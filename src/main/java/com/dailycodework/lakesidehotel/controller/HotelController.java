@@ -1,17 +1,34 @@
 package com.dailycodework.lakesidehotel.controller;
 
+import com.dailycodework.lakesidehotel.model.GeoPolygon;
 import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.NearbyCursor;
+import com.dailycodework.lakesidehotel.request.NearbyQueryRequest;
 import com.dailycodework.lakesidehotel.response.HotelResponse;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyCacheStatsResponse;
 import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyPageResponse;
+import com.dailycodework.lakesidehotel.response.RoomTypeAvailabilityResponse;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
+import com.dailycodework.lakesidehotel.response.ViewportResponse;
+import com.dailycodework.lakesidehotel.service.DistrictRegistry;
 import com.dailycodework.lakesidehotel.service.IHotelService;
-import com.dailycodework.lakesidehotel.service.KDTreeService;
+import com.dailycodework.lakesidehotel.service.NearbyResultCache;
+import com.dailycodework.lakesidehotel.service.RoomTypeInventoryService;
+import com.dailycodework.lakesidehotel.service.SpatialIndex;
+import com.dailycodework.lakesidehotel.service.ViewportService;
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -19,8 +36,19 @@ import java.util.List;
 @RequiredArgsConstructor
 public class HotelController {
 
+    // Most queries one batch nearby request may carry
+    private static final int MAX_BATCH_QUERIES = 500;
+    private static final int MAX_WITHIN_HOTELS = 500;
+    // Largest geometry /in-polygon accepts, checked before its raster cover is built
+    private static final int MAX_POLYGON_RINGS = 100;
+    private static final int MAX_POLYGON_VERTICES = 10_000;
+
     private final IHotelService hotelService;
-    private final KDTreeService kdTreeService;
+    private final SpatialIndex spatialIndex;
+    private final ViewportService viewportService;
+    private final NearbyResultCache nearbyResultCache;
+    private final DistrictRegistry districtRegistry;
+    private final RoomTypeInventoryService roomTypeInventoryService;
 
     @PostMapping("/add")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
@@ -55,6 +83,22 @@ public class HotelController {
         }
     }
 
+    // Free rooms of each type at the hotel for the stay, from the per-night room type counters
+    @GetMapping("/{id}/availability")
+    public ResponseEntity<List<RoomTypeAvailabilityResponse>> getRoomTypeAvailability(
+            @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut) {
+        try {
+            if (!checkOut.isAfter(checkIn)) {
+                return ResponseEntity.badRequest().build();
+            }
+            return ResponseEntity.ok(roomTypeInventoryService.availabilityByType(id, checkIn, checkOut));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @PutMapping("/update/{id}")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public ResponseEntity<HotelResponse> updateHotel(@PathVariable Long id, @RequestBody Hotel hotel) {
@@ -114,19 +158,172 @@ public class HotelController {
     public ResponseEntity<List<NearbyHotelResponse>> findNearbyHotels(
             @RequestParam double lat,
             @RequestParam double lon,
-            @RequestParam(defaultValue = "5") int k) {
+            @RequestParam(defaultValue = "5") int k,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut,
+            @RequestParam(required = false) List<String> roomType,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) List<String> amenity) {
         try {
-            if (k <= 0 || k > 100) {
+            if (k <= 0 || k > 100 || (checkIn == null) != (checkOut == null)
+                    || (checkIn != null && !checkOut.isAfter(checkIn))
+                    || (maxPrice != null && maxPrice.signum() < 0)) {
                 return ResponseEntity.badRequest().build();
             }
 
-            List<NearbyHotelResponse> nearbyHotels = kdTreeService.findNearestHotels(lat, lon, k);
+            // With dates or room conditions, only hotels with a room that meets them all (free for the whole stay,
+            // of one of the types, within the price, with every amenity)
+            boolean filtered = checkIn != null || roomType != null || maxPrice != null || amenity != null;
+            List<NearbyHotelResponse> nearbyHotels = filtered
+                    ? hotelService.findNearestHotels(lat, lon, k, checkIn, checkOut, roomType, maxPrice, amenity)
+                    : nearbyResultCache.findNearestHotels(lat, lon, k);
             return ResponseEntity.ok(nearbyHotels);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    @GetMapping("/nearby/page")
+    public ResponseEntity<NearbyPageResponse> findNearbyHotelsPage(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        try {
+            if (size <= 0 || size > 100) {
+                return ResponseEntity.badRequest().build();
+            }
+            NearbyCursor after;
+            try {
+                after = cursor == null ? null : NearbyCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            return ResponseEntity.ok(spatialIndex.findNearestPage(lat, lon, size, after));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping("/nearby/batch")
+    public ResponseEntity<List<List<NearbyHotelResponse>>> findNearbyHotelsBatch(
+            @RequestBody List<NearbyQueryRequest> queries) {
+        try {
+            if (queries.isEmpty() || queries.size() > MAX_BATCH_QUERIES
+                    || queries.stream().anyMatch(query -> query.getK() <= 0 || query.getK() > 100)) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            return ResponseEntity.ok(spatialIndex.findNearestHotels(queries));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/within")
+    public ResponseEntity<List<NearbyHotelResponse>> findHotelsWithin(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam double radiusKm,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            // Capped like k on /nearby, so a wide radius cannot return the whole catalog
+            if (radiusKm <= 0 || limit <= 0 || limit > MAX_WITHIN_HOTELS) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            return ResponseEntity.ok(spatialIndex.findHotelsWithin(lat, lon, radiusKm, limit));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/viewport")
+    public ResponseEntity<ViewportResponse> findHotelsInViewport(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east,
+            @RequestParam int zoom) {
+        try {
+            if (south < -90 || north > 90 || south > north || west < -180 || west > 180
+                    || east < -180 || east > 180 || zoom < 0 || zoom > 22) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            return ResponseEntity.ok(viewportService.findInViewport(south, west, north, east, zoom));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/districts")
+    public ResponseEntity<List<String>> getDistricts() {
+        return ResponseEntity.ok(districtRegistry.names());
+    }
+
+    @GetMapping("/districts/{name}/hotels")
+    public ResponseEntity<List<MapHotelResponse>> findHotelsInDistrict(@PathVariable String name,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            if (limit <= 0 || limit > MAX_WITHIN_HOTELS) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            return districtRegistry.find(name)
+                    .map(district -> ResponseEntity.ok(spatialIndex.findHotelsInPolygon(district, limit)))
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Hotels inside an ad hoc GeoJSON Polygon or MultiPolygon geometry, of at
+     * most MAX_POLYGON_RINGS rings and MAX_POLYGON_VERTICES vertices.
+     */
+    @PostMapping("/in-polygon")
+    public ResponseEntity<List<MapHotelResponse>> findHotelsInPolygon(@RequestBody JsonNode geometry,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > MAX_WITHIN_HOTELS) {
+            return ResponseEntity.badRequest().build();
+        }
+        GeoPolygon polygon;
+        try {
+            polygon = DistrictRegistry.polygonOf(geometry, MAX_POLYGON_RINGS, MAX_POLYGON_VERTICES);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(spatialIndex.findHotelsInPolygon(polygon, limit));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping("/index/rebuild")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<SpatialIndexStatsResponse> rebuildIndex() {
+        try {
+            return ResponseEntity.ok(hotelService.rebuildSpatialIndex());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/index/stats")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<SpatialIndexStatsResponse> getIndexStats() {
+        return ResponseEntity.ok(spatialIndex.getStats());
+    }
+
+    @GetMapping("/index/cache")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<NearbyCacheStatsResponse> getNearbyCacheStats() {
+        return ResponseEntity.ok(nearbyResultCache.getStats());
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> healthCheck() {
         return ResponseEntity.ok("Hotel service is running!");
@@ -178,7 +178,7 @@ public class RoomController {
                 .stream()
                 .map(booking -> new BookingResponse(booking.getBookingId(),
                         booking.getCheckInDate(),
-                        booking.getCheckOutDate(), booking.getBookingConfirmationCode()))
+                        booking.getCheckOutDate(), booking.getBookingConfirmationCode(), booking.getStatus()))
                 .toList();
 
         // Convert Hotel to HotelResponse if hotel exists
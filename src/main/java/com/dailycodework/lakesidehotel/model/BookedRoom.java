@@ -9,6 +9,7 @@ import lombok.Setter;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 @Entity
@@ -57,6 +58,23 @@ public class BookedRoom {
     @JoinColumn(name = "room_id")
     private Room room;
 
+    /**
+     * Whether the stays [checkIn, checkOut) and [otherCheckIn, otherCheckOut)
+     * share a night. A guest may check in on the day another checks out.
+     */
+    public static boolean overlaps(LocalDate checkIn, LocalDate checkOut, LocalDate otherCheckIn,
+            LocalDate otherCheckOut) {
+        return checkIn.isBefore(otherCheckOut) && otherCheckIn.isBefore(checkOut);
+    }
+
+    /**
+     * Whether this booking still keeps its room from other guests; a cancelled
+     * one does not.
+     */
+    public boolean holdsRoom() {
+        return status != BookingStatus.CANCELLED;
+    }
+
     public void calculateTotalGuests() {
         this.totalNumOfGuests = this.numOfAdults + this.numOfChildren;
     }
@@ -86,7 +104,7 @@ public class BookedRoom {
     public void setCheckInAndCheckOut(LocalDate checkIn, LocalDate checkOut) {
         this.checkInDate = checkIn;
         this.checkOutDate = checkOut;
-        this.numberOfNights = checkOut.getDayOfYear() - checkIn.getDayOfYear();
+        this.numberOfNights = (int) ChronoUnit.DAYS.between(checkIn, checkOut);
         calculateTotalAmount();
     }
 }
@@ -0,0 +1,152 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.util.Arrays;
+
+/**
+ * Grid pyramid over hotel coordinates for map clustering.
+ *
+ * Level l splits the world into 2^l columns of longitude and 2^l rows of
+ * latitude. Points are sorted by the Morton (Z-order) code of their cell at
+ * {@link #MAX_LEVEL}, so every cell at every coarser level covers one
+ * contiguous run of the sorted points. With prefix sums of latitude and
+ * longitude, the count and centroid of any cell are two binary searches away,
+ * and no level has to be stored on its own.
+ *
+ * A pyramid is never modified once built.
+ */
+public class ClusterPyramid {
+
+    public static final int MAX_LEVEL = 15;
+
+    public static final ClusterPyramid EMPTY = build(new long[0], new double[0], new double[0], 0);
+
+    /**
+     * Receives one non-empty cell of a query. {@code hotelId} is the id of one
+     * hotel in the cell, which is the hotel itself when {@code count} is 1.
+     */
+    public interface CellConsumer {
+        void accept(int count, double latitude, double longitude, long hotelId);
+    }
+
+    // Morton code of each point's cell at MAX_LEVEL, ascending
+    private final int[] keys;
+    private final long[] ids;
+    // Sum of the first i latitudes / longitudes in key order, at index i
+    private final double[] latitudeSums;
+    private final double[] longitudeSums;
+
+    private ClusterPyramid(int[] keys, long[] ids, double[] latitudeSums, double[] longitudeSums) {
+        this.keys = keys;
+        this.ids = ids;
+        this.latitudeSums = latitudeSums;
+        this.longitudeSums = longitudeSums;
+    }
+
+    /**
+     * Build a pyramid over the first {@code count} given points.
+     */
+    public static ClusterPyramid build(long[] ids, double[] latitudes, double[] longitudes, int count) {
+        // Cell code in the high half, input position in the low half, so one primitive sort orders both
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            long key = morton(column(longitudes[i], MAX_LEVEL), row(latitudes[i], MAX_LEVEL));
+            order[i] = key << 32 | i;
+        }
+        Arrays.sort(order);
+
+        int[] keys = new int[count];
+        long[] sortedIds = new long[count];
+        double[] latitudeSums = new double[count + 1];
+        double[] longitudeSums = new double[count + 1];
+        for (int i = 0; i < count; i++) {
+            int point = (int) order[i];
+            keys[i] = (int) (order[i] >>> 32);
+            sortedIds[i] = ids[point];
+            latitudeSums[i + 1] = latitudeSums[i] + latitudes[point];
+            longitudeSums[i + 1] = longitudeSums[i] + longitudes[point];
+        }
+        return new ClusterPyramid(keys, sortedIds, latitudeSums, longitudeSums);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Report every non-empty cell at {@code level} that intersects the box. The
+     * box must not cross the antimeridian (west <= east). Work is proportional to
+     * the number of non-empty cells visited, not to the area of the box.
+     */
+    public void query(double south, double west, double north, double east, int level, CellConsumer consumer) {
+        query(0, 0, 0, 0, keys.length, south, west, north, east, level, consumer);
+    }
+
+    private void query(int level, int column, int row, int lo, int hi,
+            double south, double west, double north, double east, int targetLevel, CellConsumer consumer) {
+        if (lo >= hi) {
+            return;
+        }
+
+        double cellWidth = 360.0 / (1 << level);
+        double cellHeight = 180.0 / (1 << level);
+        double cellWest = -180 + column * cellWidth;
+        double cellSouth = -90 + row * cellHeight;
+        if (cellWest > east || cellWest + cellWidth < west || cellSouth > north || cellSouth + cellHeight < south) {
+            return;
+        }
+
+        if (level == targetLevel) {
+            int count = hi - lo;
+            consumer.accept(count, (latitudeSums[hi] - latitudeSums[lo]) / count,
+                    (longitudeSums[hi] - longitudeSums[lo]) / count, ids[lo]);
+            return;
+        }
+
+        // Children in Morton order: (0,0), (1,0), (0,1), (1,1)
+        int shift = 2 * (MAX_LEVEL - level - 1);
+        int childKey = morton(column, row) << 2;
+        int start = lo;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            int end = quadrant == 3 ? hi : lowerBound(start, hi, (childKey + quadrant + 1) << shift);
+            query(level + 1, 2 * column + (quadrant & 1), 2 * row + (quadrant >> 1), start, end,
+                    south, west, north, east, targetLevel, consumer);
+            start = end;
+        }
+    }
+
+    // First index in [lo, hi) whose key is >= key
+    private int lowerBound(int lo, int hi, int key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int column(double longitude, int level) {
+        int cells = 1 << level;
+        return Math.min(cells - 1, Math.max(0, (int) ((longitude + 180) / 360 * cells)));
+    }
+
+    private static int row(double latitude, int level) {
+        int cells = 1 << level;
+        return Math.min(cells - 1, Math.max(0, (int) ((latitude + 90) / 180 * cells)));
+    }
+
+    // Interleave column bits (even positions) with row bits (odd positions)
+    private static int morton(int column, int row) {
+        return spread(column) | spread(row) << 1;
+    }
+
+    private static int spread(int v) {
+        v = (v | v << 8) & 0x00FF00FF;
+        v = (v | v << 4) & 0x0F0F0F0F;
+        v = (v | v << 2) & 0x33333333;
+        v = (v | v << 1) & 0x55555555;
+        return v;
+    }
+}
@@ -0,0 +1,62 @@
+package com.dailycodework.lakesidehotel.model;
+
+/**
+ * A latitude/longitude box; west > east means it crosses the antimeridian.
+ */
+public record GeoBox(double south, double west, double north, double east) {
+    public boolean crossesAntimeridian() {
+        return west > east;
+    }
+
+    public double width() {
+        return crossesAntimeridian() ? east - west + 360 : east - west;
+    }
+
+    public double height() {
+        return north - south;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < south || latitude > north) {
+            return false;
+        }
+        return crossesAntimeridian()
+                ? longitude >= west || longitude <= east
+                : longitude >= west && longitude <= east;
+    }
+
+    /**
+     * Axis-aligned bounds of the box on the unit sphere, as min x, y, z
+     * followed by max x, y, z. x and y are products of cos(lat) and
+     * cos(lon) or sin(lon), so their extremes lie at combinations of the
+     * extremes of each factor.
+     */
+    public double[] unitVectorBounds() {
+        double southRad = Math.toRadians(south);
+        double northRad = Math.toRadians(north);
+        double cosLatMin = Math.min(Math.cos(southRad), Math.cos(northRad));
+        double cosLatMax = south <= 0 && north >= 0 ? 1 : Math.max(Math.cos(southRad), Math.cos(northRad));
+
+        double westRad = Math.toRadians(west);
+        double eastRad = Math.toRadians(west + width());
+        double cosLonMin = containsLongitude(180) ? -1 : Math.min(Math.cos(westRad), Math.cos(eastRad));
+        double cosLonMax = containsLongitude(0) ? 1 : Math.max(Math.cos(westRad), Math.cos(eastRad));
+        double sinLonMin = containsLongitude(-90) ? -1 : Math.min(Math.sin(westRad), Math.sin(eastRad));
+        double sinLonMax = containsLongitude(90) ? 1 : Math.max(Math.sin(westRad), Math.sin(eastRad));
+
+        // Pad for rounding so points on the edge are never pruned
+        double pad = 1e-12;
+        return new double[] {
+                Math.min(cosLatMin * cosLonMin, cosLatMax * cosLonMin) - pad,
+                Math.min(cosLatMin * sinLonMin, cosLatMax * sinLonMin) - pad,
+                Math.sin(southRad) - pad,
+                Math.max(cosLatMin * cosLonMax, cosLatMax * cosLonMax) + pad,
+                Math.max(cosLatMin * sinLonMax, cosLatMax * sinLonMax) + pad,
+                Math.sin(northRad) + pad };
+    }
+
+    private boolean containsLongitude(double longitude) {
+        double offset = ((longitude - west) % 360 + 360) % 360;
+        return offset <= width();
+    }
+}
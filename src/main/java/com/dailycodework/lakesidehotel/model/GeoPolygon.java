@@ -0,0 +1,215 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A district outline: one or more rings of longitude/latitude vertices, with
+ * a point inside when it lies inside an odd number of rings. Holes and
+ * multi-part districts therefore need no special casing.
+ *
+ * Outlines with many vertices carry a raster cover: a grid over their bounds
+ * whose cells are marked inside, outside, or crossed by an edge. Only points
+ * in crossed cells pay for the exact test against every edge.
+ *
+ * Longitudes are taken as given, so an outline must not cross the
+ * antimeridian.
+ */
+public final class GeoPolygon {
+
+    // Outlines with more vertices than this get a raster cover
+    public static final int RASTER_MIN_VERTICES = 64;
+    // Cells per side of a raster cover
+    public static final int RASTER_CELLS = 64;
+
+    private static final byte OUTSIDE = 0;
+    private static final byte INSIDE = 1;
+    private static final byte CROSSED = 2;
+
+    // Per ring, longitude at 2 * i and latitude at 2 * i + 1, without repeating the first vertex
+    private final List<double[]> rings;
+    private final GeoBox bounds;
+    private final int vertexCount;
+    // Null without a raster cover
+    private final byte[] cells;
+    private final int rasterCells;
+    private final double cellWidth;
+    private final double cellHeight;
+
+    /**
+     * @param rings       each ring as longitude, latitude pairs, as in GeoJSON;
+     *                    a closing vertex equal to the first is dropped
+     * @param rasterCells cells per side of the raster cover, or 0 for none
+     * @throws IllegalArgumentException when a ring has fewer than three vertices,
+     *                                  a coordinate is out of range, or an edge
+     *                                  crosses the antimeridian
+     */
+    public GeoPolygon(List<double[]> rings, int rasterCells) {
+        if (rings.isEmpty()) {
+            throw new IllegalArgumentException("A polygon needs at least one ring");
+        }
+        this.rings = new ArrayList<>(rings.size());
+        double south = 90, west = 180, north = -90, east = -180;
+        int vertices = 0;
+        for (double[] ring : rings) {
+            double[] open = withoutClosingVertex(ring);
+            for (int i = 0; i < open.length; i += 2) {
+                double lon = open[i], lat = open[i + 1];
+                if (!(lon >= -180 && lon <= 180 && lat >= -90 && lat <= 90)) {
+                    throw new IllegalArgumentException("Vertex out of range: " + lon + ", " + lat);
+                }
+                double nextLon = open[(i + 2) % open.length];
+                if (Math.abs(nextLon - lon) > 180) {
+                    throw new IllegalArgumentException("Polygons crossing the antimeridian are not supported");
+                }
+                south = Math.min(south, lat);
+                north = Math.max(north, lat);
+                west = Math.min(west, lon);
+                east = Math.max(east, lon);
+            }
+            this.rings.add(open);
+            vertices += open.length / 2;
+        }
+        this.bounds = new GeoBox(south, west, north, east);
+        this.vertexCount = vertices;
+
+        this.rasterCells = rasterCells;
+        this.cellWidth = (east - west) / Math.max(1, rasterCells);
+        this.cellHeight = (north - south) / Math.max(1, rasterCells);
+        this.cells = rasterCells > 0 && cellWidth > 0 && cellHeight > 0 ? rasterize() : null;
+    }
+
+    /**
+     * A polygon with a raster cover when it has more than
+     * {@link #RASTER_MIN_VERTICES} vertices.
+     */
+    public static GeoPolygon of(List<double[]> rings) {
+        int vertices = rings.stream().mapToInt(ring -> ring.length / 2).sum();
+        return new GeoPolygon(rings, vertices > RASTER_MIN_VERTICES ? RASTER_CELLS : 0);
+    }
+
+    private static double[] withoutClosingVertex(double[] ring) {
+        int n = ring.length;
+        if (n % 2 != 0) {
+            throw new IllegalArgumentException("A ring needs a longitude and a latitude per vertex");
+        }
+        if (n >= 4 && ring[0] == ring[n - 2] && ring[1] == ring[n - 1]) {
+            n -= 2;
+        }
+        if (n < 6) {
+            throw new IllegalArgumentException("A ring needs at least three vertices");
+        }
+        return n == ring.length ? ring.clone() : Arrays.copyOf(ring, n);
+    }
+
+    public GeoBox bounds() {
+        return bounds;
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    public boolean hasRasterCover() {
+        return cells != null;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if (!bounds.contains(latitude, longitude)) {
+            return false;
+        }
+        if (cells != null) {
+            byte cell = cells[cellIndex(latitude, longitude)];
+            if (cell != CROSSED) {
+                return cell == INSIDE;
+            }
+        }
+        return containsExactly(latitude, longitude);
+    }
+
+    // Even-odd ray cast towards increasing longitude, over every ring
+    private boolean containsExactly(double latitude, double longitude) {
+        boolean inside = false;
+        for (double[] ring : rings) {
+            int n = ring.length;
+            for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+                double lonI = ring[i], latI = ring[i + 1];
+                double lonJ = ring[j], latJ = ring[j + 1];
+                if ((latI > latitude) != (latJ > latitude)
+                        && longitude < lonJ + (latitude - latJ) / (latI - latJ) * (lonI - lonJ)) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    private int cellIndex(double latitude, double longitude) {
+        return row(latitude) * rasterCells + column(longitude);
+    }
+
+    private int column(double longitude) {
+        return Math.max(0, Math.min(rasterCells - 1, (int) Math.floor((longitude - bounds.west()) / cellWidth)));
+    }
+
+    private int row(double latitude) {
+        return Math.max(0, Math.min(rasterCells - 1, (int) Math.floor((latitude - bounds.south()) / cellHeight)));
+    }
+
+    /**
+     * Mark every cell an edge passes through as crossed, then classify each
+     * other cell by its centre: no edge enters it, so all of it lies on the
+     * same side.
+     */
+    private byte[] rasterize() {
+        byte[] raster = new byte[rasterCells * rasterCells];
+        // Widen each edge's footprint a little, so rounding never leaves a touched cell unmarked
+        double padLon = cellWidth * 1e-6;
+        double padLat = cellHeight * 1e-6;
+        for (double[] ring : rings) {
+            int n = ring.length;
+            for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+                markEdge(raster, ring[j], ring[j + 1], ring[i], ring[i + 1], padLon, padLat);
+            }
+        }
+
+        for (int row = 0; row < rasterCells; row++) {
+            for (int column = 0; column < rasterCells; column++) {
+                int index = row * rasterCells + column;
+                if (raster[index] != CROSSED) {
+                    double latitude = bounds.south() + (row + 0.5) * cellHeight;
+                    double longitude = bounds.west() + (column + 0.5) * cellWidth;
+                    raster[index] = containsExactly(latitude, longitude) ? INSIDE : OUTSIDE;
+                }
+            }
+        }
+        return raster;
+    }
+
+    // Marks the cells of each column the edge spans, between the edge's latitudes at the column's sides
+    private void markEdge(byte[] raster, double lon1, double lat1, double lon2, double lat2, double padLon,
+            double padLat) {
+        double minLon = Math.min(lon1, lon2);
+        double maxLon = Math.max(lon1, lon2);
+        int firstColumn = column(minLon - padLon);
+        int lastColumn = column(maxLon + padLon);
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            double from = Math.max(minLon, bounds.west() + column * cellWidth);
+            double to = Math.min(maxLon, bounds.west() + (column + 1) * cellWidth);
+            // A meridian edge spans its whole latitude range within its column
+            double latFrom = lon1 == lon2 ? lat1 : latitudeAt(lon1, lat1, lon2, lat2, from);
+            double latTo = lon1 == lon2 ? lat2 : latitudeAt(lon1, lat1, lon2, lat2, to);
+            int firstRow = row(Math.min(latFrom, latTo) - padLat);
+            int lastRow = row(Math.max(latFrom, latTo) + padLat);
+            for (int row = firstRow; row <= lastRow; row++) {
+                raster[row * rasterCells + column] = CROSSED;
+            }
+        }
+    }
+
+    private static double latitudeAt(double lon1, double lat1, double lon2, double lat2, double longitude) {
+        double t = Math.max(0, Math.min(1, (longitude - lon1) / (lon2 - lon1)));
+        return lat1 + t * (lat2 - lat1);
+    }
+}
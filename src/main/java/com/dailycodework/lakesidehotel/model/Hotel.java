@@ -1,14 +1,18 @@
 package com.dailycodework.lakesidehotel.model;
 
+import com.dailycodework.lakesidehotel.config.HotelChangeListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.UpdateTimestamp;
 
+import java.time.Instant;
 import java.util.List;
 
 @Entity
+@EntityListeners(HotelChangeListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -37,6 +41,10 @@ public class Hotel {
     private Double latitude;
     private Double longitude;
 
+    // Set on every insert and update; spatial index snapshots replay hotels changed after theirs
+    @UpdateTimestamp
+    private Instant updatedAt;
+
     @OneToMany(mappedBy = "hotel", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Room> rooms;
 
@@ -0,0 +1,97 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.util.Collection;
+
+/**
+ * Id, price, type and amenities of each room of one hotel, as searched by room
+ * filters, with the hotel-wide lowest price and type and amenity masks that
+ * spatial indexes aggregate over subtrees. Immutable.
+ */
+public final class HotelRoomProfile {
+
+    private final long[] roomIds;
+    private final double[] prices;
+    private final int[] roomTypes;
+    private final long[] amenities;
+    private final double minPrice;
+    private final int roomTypeMask;
+    private final long amenityMask;
+
+    private HotelRoomProfile(long[] roomIds, double[] prices, int[] roomTypes, long[] amenities) {
+        this.roomIds = roomIds;
+        this.prices = prices;
+        this.roomTypes = roomTypes;
+        this.amenities = amenities;
+        double min = Double.POSITIVE_INFINITY;
+        int types = 0;
+        long amenityUnion = 0;
+        for (int i = 0; i < prices.length; i++) {
+            min = Math.min(min, prices[i]);
+            types |= roomTypes[i];
+            amenityUnion |= amenities[i];
+        }
+        this.minPrice = min;
+        this.roomTypeMask = types;
+        this.amenityMask = amenityUnion;
+    }
+
+    /**
+     * Profile of the given rooms. A room without a price never passes a price
+     * limit.
+     */
+    public static HotelRoomProfile of(Collection<Room> rooms, RoomAttributeCodes codes) {
+        long[] roomIds = new long[rooms.size()];
+        double[] prices = new double[rooms.size()];
+        int[] roomTypes = new int[rooms.size()];
+        long[] amenities = new long[rooms.size()];
+        int i = 0;
+        for (Room room : rooms) {
+            roomIds[i] = room.getId();
+            prices[i] = room.getRoomPrice() == null ? Double.POSITIVE_INFINITY : room.getRoomPrice().doubleValue();
+            roomTypes[i] = codes.roomTypeMask(room.getRoomType());
+            amenities[i] = codes.amenityMask(room.getAmenities());
+            i++;
+        }
+        return new HotelRoomProfile(roomIds, prices, roomTypes, amenities);
+    }
+
+    /**
+     * Profile of rooms given as parallel arrays of id, price, type mask and
+     * amenity mask. The arrays are not copied.
+     */
+    public static HotelRoomProfile of(long[] roomIds, double[] prices, int[] roomTypes, long[] amenities) {
+        return new HotelRoomProfile(roomIds, prices, roomTypes, amenities);
+    }
+
+    /**
+     * Whether one of the rooms passes the filter.
+     */
+    public boolean matches(RoomFilter filter) {
+        if (!filter.mayMatch(minPrice, roomTypeMask, amenityMask)) {
+            return false;
+        }
+        for (int i = 0; i < prices.length; i++) {
+            if (filter.mayMatch(prices[i], roomTypes[i], amenities[i])
+                    && (filter.roomCheck() == null || filter.roomCheck().test(roomIds[i]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int roomCount() {
+        return prices.length;
+    }
+
+    public double minPrice() {
+        return minPrice;
+    }
+
+    public int roomTypeMask() {
+        return roomTypeMask;
+    }
+
+    public long amenityMask() {
+        return amenityMask;
+    }
+}
@@ -0,0 +1,22 @@
+package com.dailycodework.lakesidehotel.model;
+
+/**
+ * The fields of a hotel that search results show, copied out of the entity.
+ * Spatial indexes cache these instead of {@link Hotel}, so they do not keep a
+ * hotel's rooms or persistence state reachable.
+ */
+public record HotelSummary(long id, String name, String address, String contact, String email, String imageUrl,
+        String description, Integer roomsCount) {
+
+    public static HotelSummary of(Hotel hotel) {
+        return new HotelSummary(
+                hotel.getId(),
+                hotel.getName(),
+                hotel.getAddress(),
+                hotel.getContact(),
+                hotel.getEmail(),
+                hotel.getImageUrl(),
+                hotel.getDescription(),
+                hotel.getRoomsCount());
+    }
+}
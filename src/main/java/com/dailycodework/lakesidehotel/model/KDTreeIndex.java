@@ -0,0 +1,272 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Array-backed K-D tree over hotel coordinates.
+ *
+ * Points are indexed as 3D unit vectors (x, y, z) on the sphere rather than as
+ * (latitude, longitude). Straight-line chord distance between unit vectors
+ * grows monotonically with great-circle distance, and the distance from a
+ * point to a split plane is a lower bound on its chord distance to anything
+ * across the plane. Pruning is therefore exact everywhere, including across
+ * the antimeridian and near the poles.
+ *
+ * Slots [0, treeSize) hold a balanced tree in implicit layout: the node for the
+ * slot range [lo, hi) sits at mid = (lo + hi) >>> 1, its left subtree is
+ * [lo, mid) and its right subtree is [mid + 1, hi). The split axis is
+ * depth % 3 (x, y, z).
+ *
+ * Slots [treeSize, size) hold points inserted since the last build. They are
+ * scanned linearly until the owner rebuilds the index.
+ *
+ * An index is never modified once published. {@link #withInserted} appends new
+ * points past {@code size} in the shared arrays, where no existing reader looks.
+ * Callers must only extend the latest index, and must publish the result
+ * through a volatile write.
+ */
+public class KDTreeIndex {
+
+    // Subtrees smaller than this are built on the calling thread
+    private static final int PARALLEL_BUILD_THRESHOLD = 10_000;
+
+    public static final KDTreeIndex EMPTY = new KDTreeIndex(new long[0], new double[0], new double[0], 0, 0);
+
+    public static final int DIMENSIONS = 3;
+
+    private final long[] ids;
+    // Latitude at 2 * slot, longitude at 2 * slot + 1
+    private final double[] coords;
+    // Unit vector at 3 * slot .. 3 * slot + 2
+    private final double[] xyz;
+    private final int size;
+    private final int treeSize;
+
+    private KDTreeIndex(long[] ids, double[] coords, double[] xyz, int size, int treeSize) {
+        this.ids = ids;
+        this.coords = coords;
+        this.xyz = xyz;
+        this.size = size;
+        this.treeSize = treeSize;
+    }
+
+    /**
+     * Build a balanced index over the first {@code count} given points. The
+     * arrays are copied.
+     */
+    public static KDTreeIndex build(long[] ids, double[] latitudes, double[] longitudes, int count) {
+        double[] coords = new double[2 * count];
+        double[] xyz = new double[3 * count];
+        for (int i = 0; i < count; i++) {
+            setPoint(coords, xyz, i, latitudes[i], longitudes[i]);
+        }
+        return buildTree(Arrays.copyOf(ids, count), coords, xyz, count);
+    }
+
+    public static KDTreeIndex build(long[] ids, double[] latitudes, double[] longitudes) {
+        return build(ids, latitudes, longitudes, ids.length);
+    }
+
+    /**
+     * Return an index that also contains the first {@code count} given points in
+     * slots [size, size + count). This index stays valid for readers that still
+     * hold it.
+     */
+    public KDTreeIndex withInserted(long[] newIds, double[] latitudes, double[] longitudes, int count) {
+        int newSize = size + count;
+        long[] targetIds = ids;
+        double[] targetCoords = coords;
+        double[] targetXyz = xyz;
+        if (newSize > ids.length) {
+            int capacity = Math.max(Math.max(16, newSize), size + (size >> 1));
+            targetIds = Arrays.copyOf(ids, capacity);
+            targetCoords = Arrays.copyOf(coords, 2 * capacity);
+            targetXyz = Arrays.copyOf(xyz, 3 * capacity);
+        }
+        for (int i = 0; i < count; i++) {
+            targetIds[size + i] = newIds[i];
+            setPoint(targetCoords, targetXyz, size + i, latitudes[i], longitudes[i]);
+        }
+        return new KDTreeIndex(targetIds, targetCoords, targetXyz, newSize, treeSize);
+    }
+
+    private static void setPoint(double[] coords, double[] xyz, int slot, double latitude, double longitude) {
+        coords[2 * slot] = latitude;
+        coords[2 * slot + 1] = longitude;
+
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        double cosLat = Math.cos(lat);
+        xyz[3 * slot] = cosLat * Math.cos(lon);
+        xyz[3 * slot + 1] = cosLat * Math.sin(lon);
+        xyz[3 * slot + 2] = Math.sin(lat);
+    }
+
+    /**
+     * Unit vector for the given coordinates, in the same space as
+     * {@link #coordinate}.
+     */
+    public static double[] toUnitVector(double latitude, double longitude) {
+        double[] point = new double[3];
+        setPoint(new double[2], point, 0, latitude, longitude);
+        return point;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int treeSize() {
+        return treeSize;
+    }
+
+    public long id(int slot) {
+        return ids[slot];
+    }
+
+    public double latitude(int slot) {
+        return coords[2 * slot];
+    }
+
+    public double longitude(int slot) {
+        return coords[2 * slot + 1];
+    }
+
+    /**
+     * Unit-vector component of the slot on the given axis (0 = x, 1 = y, 2 = z).
+     */
+    public double coordinate(int slot, int axis) {
+        return xyz[3 * slot + axis];
+    }
+
+    /**
+     * Squared chord distance between the slot and the given unit vector.
+     */
+    public double chordSquared(int slot, double x, double y, double z) {
+        double dx = xyz[3 * slot] - x;
+        double dy = xyz[3 * slot + 1] - y;
+        double dz = xyz[3 * slot + 2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Depth of the built part of the tree, which is always balanced.
+     */
+    public int depth() {
+        return balancedDepth(treeSize);
+    }
+
+    /**
+     * Approximate heap footprint of the index arrays in bytes.
+     */
+    public long memoryBytes() {
+        // 16-byte array headers with compressed oops, plus the object itself
+        return 32L + 16L + 8L * ids.length + 16L + 8L * coords.length + 16L + 8L * xyz.length;
+    }
+
+    // Depth of a perfectly balanced tree holding n nodes: ceil(log2(n + 1))
+    public static int balancedDepth(int n) {
+        return 32 - Integer.numberOfLeadingZeros(n);
+    }
+
+    private static KDTreeIndex buildTree(long[] ids, double[] coords, double[] xyz, int size) {
+        KDTreeIndex index = new KDTreeIndex(ids, coords, xyz, size, size);
+        if (size > PARALLEL_BUILD_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new BuildTask(index, 0, size, 0));
+        } else {
+            index.buildRange(0, size, 0);
+        }
+        return index;
+    }
+
+    private void buildRange(int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            selectMedian(lo, hi - 1, mid, depth % DIMENSIONS);
+            buildRange(lo, mid, depth + 1);
+            lo = mid + 1;
+            depth++;
+        }
+    }
+
+    private static class BuildTask extends RecursiveAction {
+        private final KDTreeIndex index;
+        private final int lo;
+        private final int hi;
+        private final int depth;
+
+        BuildTask(KDTreeIndex index, int lo, int hi, int depth) {
+            this.index = index;
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= PARALLEL_BUILD_THRESHOLD) {
+                index.buildRange(lo, hi, depth);
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            index.selectMedian(lo, hi - 1, mid, depth % DIMENSIONS);
+
+            // Both halves are disjoint slices of the arrays, so they can be built concurrently
+            invokeAll(new BuildTask(index, lo, mid, depth + 1),
+                    new BuildTask(index, mid + 1, hi, depth + 1));
+        }
+    }
+
+    /**
+     * Quickselect: reorder slots [lo..hi] so slot k holds the point that would be
+     * there if the range were sorted on the given axis. Uses a three-way
+     * partition so runs of equal coordinates do not go quadratic.
+     */
+    private void selectMedian(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = coordinate((lo + hi) >>> 1, axis);
+
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                double value = coordinate(i, axis);
+                if (value < pivot) {
+                    swap(lt++, i++);
+                } else if (value > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+
+            if (k < lt) {
+                hi = lt - 1;
+            } else if (k > gt) {
+                lo = gt + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+
+        for (int d = 0; d < 2; d++) {
+            double c = coords[2 * i + d];
+            coords[2 * i + d] = coords[2 * j + d];
+            coords[2 * j + d] = c;
+        }
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double c = xyz[3 * i + d];
+            xyz[3 * i + d] = xyz[3 * j + d];
+            xyz[3 * j + d] = c;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a nearest-first listing: the distance and id of the last hotel
+ * returned. The next page starts after it in (distance, id) order. Clients see
+ * it only as an opaque token.
+ */
+public record NearbyCursor(double distanceKm, long hotelId) {
+
+    /**
+     * Whether a hotel at this distance comes after the cursor.
+     */
+    public boolean isBefore(double distance, long id) {
+        return distance > distanceKm || (distance == distanceKm && id > hotelId);
+    }
+
+    public String encode() {
+        String raw = Long.toHexString(Double.doubleToLongBits(distanceKm)) + ":" + hotelId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not made by {@link #encode()}
+     */
+    public static NearbyCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+        int colon = raw.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        double distance = Double.longBitsToDouble(Long.parseUnsignedLong(raw.substring(0, colon), 16));
+        if (!(distance >= 0)) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new NearbyCursor(distance, Long.parseLong(raw.substring(colon + 1)));
+    }
+}
@@ -65,8 +65,9 @@ public class Room {
         }
 
         return bookings.stream()
-                .noneMatch(booking -> (checkInDate.isBefore(booking.getCheckOutDate()) &&
-                        checkOutDate.isAfter(booking.getCheckInDate())));
+                .filter(BookedRoom::holdsRoom)
+                .noneMatch(booking -> BookedRoom.overlaps(checkInDate, checkOutDate,
+                        booking.getCheckInDate(), booking.getCheckOutDate()));
     }
 
     /**
@@ -81,6 +82,7 @@ public class Room {
 
         LocalDate today = LocalDate.now();
         return bookings.stream()
+                .filter(BookedRoom::holdsRoom)
                 .anyMatch(booking -> booking.getCheckOutDate().isAfter(today) ||
                         booking.getCheckOutDate().isEqual(today));
     }
@@ -0,0 +1,94 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bit assigned to every room type and amenity name seen, so room filters and
+ * spatial index aggregates compare masks instead of strings. Names are matched
+ * ignoring case and surrounding blanks.
+ *
+ * Bits are handed out when a room first uses a name and are never reused. Up to
+ * 32 room types and 64 amenities get a bit; names seen after that cannot be
+ * filtered on, and filters asking for them match nothing.
+ */
+public class RoomAttributeCodes {
+
+    public static final int MAX_ROOM_TYPES = Integer.SIZE;
+    public static final int MAX_AMENITIES = Long.SIZE;
+
+    private final Map<String, Integer> roomTypeBits = new HashMap<>();
+    private final Map<String, Integer> amenityBits = new HashMap<>();
+
+    /**
+     * Mask with the room type's bit, assigning one to a new name; 0 for no
+     * type or when every bit is taken.
+     */
+    public synchronized int roomTypeMask(String roomType) {
+        Integer bit = bitOf(roomTypeBits, roomType, MAX_ROOM_TYPES);
+        return bit == null ? 0 : 1 << bit;
+    }
+
+    /**
+     * Mask of the amenities' bits, assigning bits to new names.
+     */
+    public synchronized long amenityMask(Iterable<String> amenities) {
+        long mask = 0;
+        if (amenities != null) {
+            for (String amenity : amenities) {
+                Integer bit = bitOf(amenityBits, amenity, MAX_AMENITIES);
+                if (bit != null) {
+                    mask |= 1L << bit;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Mask of known room types among the names, or -1 when none is known.
+     */
+    public synchronized int knownRoomTypeMask(Iterable<String> roomTypes) {
+        int mask = 0;
+        for (String roomType : roomTypes) {
+            Integer bit = roomTypeBits.get(normalize(roomType));
+            if (bit != null) {
+                mask |= 1 << bit;
+            }
+        }
+        return mask == 0 ? -1 : mask;
+    }
+
+    /**
+     * Mask of the amenities, or -1 when any of them is unknown.
+     */
+    public synchronized long knownAmenityMask(Iterable<String> amenities) {
+        long mask = 0;
+        for (String amenity : amenities) {
+            Integer bit = amenityBits.get(normalize(amenity));
+            if (bit == null) {
+                return -1;
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    private static Integer bitOf(Map<String, Integer> bits, String name, int limit) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        String key = normalize(name);
+        Integer bit = bits.get(key);
+        if (bit == null && bits.size() < limit) {
+            bit = bits.size();
+            bits.put(key, bit);
+        }
+        return bit;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
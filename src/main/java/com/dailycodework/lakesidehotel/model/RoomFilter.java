@@ -0,0 +1,37 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.util.function.LongPredicate;
+
+/**
+ * What a hotel must offer to pass a room filter: one room that is of any of
+ * the room types (every type when roomTypes is 0), costs at most maxPrice per
+ * night, has all of the amenities and, when roomCheck is set, passes it by
+ * room id. Types and amenities are masks from {@link RoomAttributeCodes}.
+ */
+public record RoomFilter(int roomTypes, double maxPrice, long amenities, LongPredicate roomCheck) {
+
+    /**
+     * Filter no hotel passes, for requests naming a type or amenity no room has.
+     */
+    public static final RoomFilter NOTHING = new RoomFilter(0, Double.NEGATIVE_INFINITY, 0, null);
+
+    /**
+     * This filter, also requiring the room to pass the check, such as being free
+     * for some dates.
+     */
+    public RoomFilter withRoomCheck(LongPredicate check) {
+        return new RoomFilter(roomTypes, maxPrice, amenities, roomCheck == null ? check : roomCheck.and(check));
+    }
+
+    /**
+     * Whether a room, or a group of rooms summarized by their lowest price and
+     * the union of their type and amenity masks, could pass. For a single room
+     * this is exact but for the room check; for a group it only rules groups
+     * out.
+     */
+    public boolean mayMatch(double minPrice, int roomTypeMask, long amenityMask) {
+        return minPrice <= maxPrice
+                && (roomTypes == 0 || (roomTypeMask & roomTypes) != 0)
+                && (amenityMask & amenities) == amenities;
+    }
+}
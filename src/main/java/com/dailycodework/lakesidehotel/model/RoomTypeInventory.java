@@ -0,0 +1,41 @@
+package com.dailycodework.lakesidehotel.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * How many rooms of one type a hotel has, and how many of them are booked,
+ * for one night. Kept up to date with every booking and cancellation, and
+ * rebuilt from the bookings by a nightly reconciliation.
+ */
+@Entity
+@Table(name = "room_type_inventory",
+        uniqueConstraints = @UniqueConstraint(columnNames = { "hotel_id", "room_type", "night" }))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomTypeInventory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "hotel_id", nullable = false)
+    private Long hotelId;
+
+    // Trimmed and lower-cased, so "Deluxe" and "deluxe " count together
+    @Column(name = "room_type", nullable = false)
+    private String roomType;
+
+    @Column(name = "night", nullable = false)
+    private LocalDate night;
+
+    private int total;
+    private int sold;
+}
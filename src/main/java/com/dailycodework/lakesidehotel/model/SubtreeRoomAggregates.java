@@ -0,0 +1,137 @@
+package com.dailycodework.lakesidehotel.model;
+
+import java.util.function.LongFunction;
+
+/**
+ * Room aggregates over every subtree of a {@link KDTreeIndex}: at the node for
+ * the slot range [lo, hi), the lowest room price and the union of the room
+ * type and amenity masks of all hotels in [lo, hi). A search with a
+ * {@link RoomFilter} skips subtrees whose aggregates rule the filter out.
+ *
+ * Instances are never changed once built, so searches can share them without
+ * locking. A room change makes a copy with the path from the root to the
+ * hotel recomputed ({@link #withProfiles}), exact again after room removals
+ * and price rises. Searches still check the hotels themselves.
+ */
+public final class SubtreeRoomAggregates {
+
+    public static final SubtreeRoomAggregates EMPTY = new SubtreeRoomAggregates(new double[0], new int[0], new long[0]);
+
+    private final double[] minPrices;
+    private final int[] roomTypes;
+    private final long[] amenities;
+
+    private SubtreeRoomAggregates(double[] minPrices, int[] roomTypes, long[] amenities) {
+        this.minPrices = minPrices;
+        this.roomTypes = roomTypes;
+        this.amenities = amenities;
+    }
+
+    /**
+     * Aggregate the profiles of the hotels in the index's tree. Hotels without
+     * a profile have no rooms.
+     */
+    public static SubtreeRoomAggregates build(KDTreeIndex index, LongFunction<HotelRoomProfile> profiles) {
+        int treeSize = index.treeSize();
+        SubtreeRoomAggregates aggregates = new SubtreeRoomAggregates(new double[treeSize], new int[treeSize],
+                new long[treeSize]);
+        for (int slot = 0; slot < treeSize; slot++) {
+            aggregates.set(slot, profiles.apply(index.id(slot)));
+        }
+        aggregates.combine(0, treeSize);
+        return aggregates;
+    }
+
+    // Fold each subtree into its node, children first
+    private void combine(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        combine(lo, mid);
+        combine(mid + 1, hi);
+        if (lo < mid) {
+            include(mid, (lo + mid) >>> 1);
+        }
+        if (mid + 1 < hi) {
+            include(mid, (mid + 1 + hi) >>> 1);
+        }
+    }
+
+    private void include(int node, int child) {
+        minPrices[node] = Math.min(minPrices[node], minPrices[child]);
+        roomTypes[node] |= roomTypes[child];
+        amenities[node] |= amenities[child];
+    }
+
+    /**
+     * Whether the subtree whose node is at the slot may hold a hotel passing
+     * the filter.
+     */
+    public boolean mayMatch(int node, RoomFilter filter) {
+        return filter.mayMatch(minPrices[node], roomTypes[node], amenities[node]);
+    }
+
+    /**
+     * A copy with the nodes above each given slot, up to the root, recomputed
+     * from the current profiles. The arrays are copied once for all slots;
+     * this instance is left as it is.
+     */
+    public SubtreeRoomAggregates withProfiles(KDTreeIndex index, int[] slots,
+            LongFunction<HotelRoomProfile> profiles) {
+        SubtreeRoomAggregates copy = new SubtreeRoomAggregates(minPrices.clone(), roomTypes.clone(),
+                amenities.clone());
+        int[] path = new int[3 * 64];
+        for (int slot : slots) {
+            if (slot < 0 || slot >= minPrices.length) {
+                continue;
+            }
+            // Root down to the slot, as (node, lo, hi)
+            int depth = 0;
+            int lo = 0;
+            int hi = minPrices.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                path[depth++] = mid;
+                path[depth++] = lo;
+                path[depth++] = hi;
+                if (slot == mid) {
+                    break;
+                }
+                if (slot < mid) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            // Children first, so each node folds in subtrees that are already exact
+            while (depth > 0) {
+                hi = path[--depth];
+                lo = path[--depth];
+                int mid = path[--depth];
+                copy.set(mid, profiles.apply(index.id(mid)));
+                if (lo < mid) {
+                    copy.include(mid, (lo + mid) >>> 1);
+                }
+                if (mid + 1 < hi) {
+                    copy.include(mid, (mid + 1 + hi) >>> 1);
+                }
+            }
+        }
+        return copy;
+    }
+
+    private void set(int node, HotelRoomProfile profile) {
+        minPrices[node] = profile == null ? Double.POSITIVE_INFINITY : profile.minPrice();
+        roomTypes[node] = profile == null ? 0 : profile.roomTypeMask();
+        amenities[node] = profile == null ? 0L : profile.amenityMask();
+    }
+
+    public int treeSize() {
+        return minPrices.length;
+    }
+
+    public long memoryBytes() {
+        return (long) minPrices.length * (Double.BYTES + Integer.BYTES + Long.BYTES);
+    }
+}
@@ -2,7 +2,10 @@ package com.dailycodework.lakesidehotel.repository;
 
 import com.dailycodework.lakesidehotel.model.BookedRoom;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,4 +16,16 @@ public interface BookingRepository extends JpaRepository<BookedRoom, Long> {
     Optional<BookedRoom> findByBookingConfirmationCode(String confirmationCode);
 
     List<BookedRoom> findByGuestEmail(String email);
+
+    // Same half-open rule as BookedRoom.overlaps; cancelled bookings do not count
+    @Query("SELECT COUNT(b) > 0 FROM BookedRoom b WHERE b.room.id = :roomId"
+            + " AND b.checkInDate < :checkOutDate AND b.checkOutDate > :checkInDate"
+            + " AND (b.status IS NULL OR b.status <> com.dailycodework.lakesidehotel.config.BookingStatus.CANCELLED)")
+    boolean existsOverlapping(Long roomId, LocalDate checkInDate, LocalDate checkOutDate);
+
+    // Bookings of the rooms holding any night of [from, to); cancelled bookings do not count
+    @Query("SELECT b FROM BookedRoom b WHERE b.room.id IN :roomIds"
+            + " AND b.checkInDate < :to AND b.checkOutDate > :from"
+            + " AND (b.status IS NULL OR b.status <> com.dailycodework.lakesidehotel.config.BookingStatus.CANCELLED)")
+    List<BookedRoom> findHoldingBetween(Collection<Long> roomIds, LocalDate from, LocalDate to);
 }
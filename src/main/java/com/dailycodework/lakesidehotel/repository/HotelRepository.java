@@ -2,9 +2,23 @@ package com.dailycodework.lakesidehotel.repository;
 
 import com.dailycodework.lakesidehotel.model.Hotel;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.List;
+
 @Repository
 public interface HotelRepository extends JpaRepository<Hotel, Long> {
     boolean existsByName(String name);
+
+    @Query("SELECT MAX(h.updatedAt) FROM Hotel h")
+    Instant findLatestUpdate();
+
+    // Rows written before updatedAt existed, or by SQL that does not set it, count as changed
+    @Query("SELECT h FROM Hotel h WHERE h.updatedAt >= :since OR h.updatedAt IS NULL")
+    List<Hotel> findChangedSince(Instant since);
+
+    @Query("SELECT h.id FROM Hotel h")
+    List<Long> findAllIds();
 }
@@ -1,23 +1,29 @@
 package com.dailycodework.lakesidehotel.repository;
 
 import com.dailycodework.lakesidehotel.model.Room;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 
-import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface RoomRepository extends JpaRepository<Room, Long> {
 
     @Query("SELECT DISTINCT r.roomType FROM Room r")
     List<String> findDistinctRoomTypes();
 
-    @Query(" SELECT r FROM Room r " +
-            " WHERE r.roomType LIKE %:roomType% " +
-            " AND r.id NOT IN (" +
-            "  SELECT br.room.id FROM BookedRoom br " +
-            "  WHERE ((br.checkInDate <= :checkOutDate) AND (br.checkOutDate >= :checkInDate))" +
-            ")")
+    List<Room> findByHotelId(Long hotelId);
 
-    List<Room> findAvailableRoomsByDatesAndType(LocalDate checkInDate, LocalDate checkOutDate, String roomType);
+    // SELECT ... FOR UPDATE: holds the room row until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Room r WHERE r.id = :roomId")
+    Optional<Room> findByIdForUpdate(Long roomId);
+
+    // Locks the rows in id order, so transactions locking overlapping sets wait rather than deadlock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Room r WHERE r.id IN :roomIds ORDER BY r.id")
+    List<Room> findAllByIdForUpdate(Collection<Long> roomIds);
 }
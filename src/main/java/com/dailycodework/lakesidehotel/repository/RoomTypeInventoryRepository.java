@@ -0,0 +1,41 @@
+package com.dailycodework.lakesidehotel.repository;
+
+import com.dailycodework.lakesidehotel.model.RoomTypeInventory;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface RoomTypeInventoryRepository extends JpaRepository<RoomTypeInventory, Long> {
+
+    List<RoomTypeInventory> findByHotelId(Long hotelId);
+
+    // SELECT ... FOR UPDATE: bookings' addSold on these rows waits until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM RoomTypeInventory i")
+    List<RoomTypeInventory> findAllForUpdate();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM RoomTypeInventory i WHERE i.hotelId = :hotelId")
+    List<RoomTypeInventory> findByHotelIdForUpdate(Long hotelId);
+
+    // One statement for the nights [from, to) of a stay; must run inside the booking's transaction
+    @Modifying
+    @Query("UPDATE RoomTypeInventory i SET i.sold = i.sold + :delta WHERE i.hotelId = :hotelId"
+            + " AND i.roomType = :roomType AND i.night >= :from AND i.night < :to")
+    int addSold(Long hotelId, String roomType, LocalDate from, LocalDate to, int delta);
+
+    // The nights of [from, to) the type has rows for
+    @Query("SELECT i.night FROM RoomTypeInventory i WHERE i.hotelId = :hotelId AND i.roomType = :roomType"
+            + " AND i.night >= :from AND i.night < :to")
+    List<LocalDate> findNights(Long hotelId, String roomType, LocalDate from, LocalDate to);
+
+    // Every stored night of the type, after one of its rooms was added or removed
+    @Modifying
+    @Query("UPDATE RoomTypeInventory i SET i.total = :total WHERE i.hotelId = :hotelId AND i.roomType = :roomType")
+    int setTotal(Long hotelId, String roomType, int total);
+}
@@ -0,0 +1,50 @@
+package com.dailycodework.lakesidehotel.request;
+
+import com.dailycodework.lakesidehotel.model.BookedRoom;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rooms booked together by one party, such as a tour operator: either every
+ * room is booked or none is.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GroupBookingRequest {
+    private List<Item> rooms = new ArrayList<>();
+
+    /**
+     * One room of the group, with its own dates and guest.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Long roomId;
+        private LocalDate checkInDate;
+        private LocalDate checkOutDate;
+        private String guestFullName;
+        private String guestEmail;
+        private String phoneNumber;
+        private int numOfAdults;
+        private int numOfChildren;
+
+        public BookedRoom toBooking() {
+            BookedRoom booking = new BookedRoom();
+            booking.setCheckInDate(checkInDate);
+            booking.setCheckOutDate(checkOutDate);
+            booking.setGuestFullName(guestFullName);
+            booking.setGuestEmail(guestEmail);
+            booking.setPhoneNumber(phoneNumber);
+            booking.setNumOfAdults(numOfAdults);
+            booking.setNumOfChildren(numOfChildren);
+            return booking;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.dailycodework.lakesidehotel.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One query of a batch nearby search: the k hotels nearest to (lat, lon).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyQueryRequest {
+    private double lat;
+    private double lon;
+    private int k = 5;
+}
@@ -1,5 +1,6 @@
 package com.dailycodework.lakesidehotel.response;
 
+import com.dailycodework.lakesidehotel.config.BookingStatus;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -35,7 +36,10 @@ public class BookingResponse {
 
     private RoomResponse room;
 
-    public BookingResponse(Long id, LocalDate checkInDate, LocalDate checkOutDate, String confirmationCode) {
+    private BookingStatus status;
+
+    public BookingResponse(Long id, LocalDate checkInDate, LocalDate checkOutDate, String confirmationCode,
+            BookingStatus status) {
         this.id = id;
         this.checkInDate = checkInDate;
         this.checkOutDate = checkOutDate;
@@ -48,5 +52,13 @@ public class BookingResponse {
         this.totalNumOfGuests = 0;
         this.numOfNights = 0;
         this.room = null;
+        this.status = status;
+    }
+
+    /**
+     * Same rule as {@link com.dailycodework.lakesidehotel.model.BookedRoom#holdsRoom()}.
+     */
+    public boolean holdsRoom() {
+        return status != BookingStatus.CANCELLED;
     }
 }
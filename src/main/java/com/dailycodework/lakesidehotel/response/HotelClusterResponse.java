@@ -0,0 +1,18 @@
+package com.dailycodework.lakesidehotel.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotelClusterResponse {
+    private Double latitude;
+    private Double longitude;
+    private Integer count;
+    // Set only when the cluster is a single hotel
+    private Long hotelId;
+}
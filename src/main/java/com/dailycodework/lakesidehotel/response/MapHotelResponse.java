@@ -0,0 +1,18 @@
+package com.dailycodework.lakesidehotel.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MapHotelResponse {
+    private Long id;
+    private String name;
+    private String imageUrl;
+    private Double latitude;
+    private Double longitude;
+}
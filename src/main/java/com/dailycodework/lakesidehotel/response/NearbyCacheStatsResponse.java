@@ -0,0 +1,24 @@
+package com.dailycodework.lakesidehotel.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyCacheStatsResponse {
+    private double cellMeters;
+    private int size;
+    private int maxEntries;
+    private long hits;
+    private long misses;
+    // Misses on an entry built before the index last changed
+    private long staleMisses;
+    private long evictions;
+    // Lookups in cells too dense to cache, answered by the index directly
+    private long bypassed;
+    private double hitRatio;
+}
@@ -0,0 +1,19 @@
+package com.dailycodework.lakesidehotel.response;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyPageResponse {
+    // Nearest first; ties in distance are ordered by id
+    private List<NearbyHotelResponse> hotels;
+    // Pass as cursor to get the next page; null once every hotel was listed
+    private String nextCursor;
+}
@@ -1,5 +1,6 @@
 package com.dailycodework.lakesidehotel.response;
 
+import com.dailycodework.lakesidehotel.model.BookedRoom;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -74,12 +75,11 @@ public class RoomResponse {
             return;
         }
 
+        // Cancelled bookings do not block, as in Room.isAvailableForDates and admission
         this.isAvailableForDates = bookings.stream()
-                .noneMatch(booking -> {
-                    LocalDate bookingCheckIn = booking.getCheckInDate();
-                    LocalDate bookingCheckOut = booking.getCheckOutDate();
-                    return (checkIn.isBefore(bookingCheckOut) && checkOut.isAfter(bookingCheckIn));
-                });
+                .filter(BookingResponse::holdsRoom)
+                .noneMatch(booking -> BookedRoom.overlaps(checkIn, checkOut,
+                        booking.getCheckInDate(), booking.getCheckOutDate()));
     }
 
     /**
@@ -93,6 +93,7 @@ public class RoomResponse {
 
         LocalDate today = LocalDate.now();
         this.hasCurrentBookings = bookings.stream()
+                .filter(BookingResponse::holdsRoom)
                 .anyMatch(booking -> {
                     LocalDate checkOut = booking.getCheckOutDate();
                     return checkOut.isAfter(today) || checkOut.isEqual(today);
@@ -0,0 +1,21 @@
+package com.dailycodework.lakesidehotel.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Availability of one room type of a hotel for a stay. freeRooms is the
+ * fewest unbooked rooms of the type on any night of the stay; available says
+ * whether one room is free for all of them. freeRooms is -1 when the stay
+ * reaches past the nights that are counted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomTypeAvailabilityResponse {
+    private String roomType;
+    private int totalRooms;
+    private int freeRooms;
+    private boolean available;
+}
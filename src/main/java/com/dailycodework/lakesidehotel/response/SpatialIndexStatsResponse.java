@@ -0,0 +1,24 @@
+package com.dailycodework.lakesidehotel.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpatialIndexStatsResponse {
+    // Value of spatial.index.type for the running index
+    private String type;
+    private int nodeCount;
+    private int liveCount;
+    private int deadCount;
+    // Tree depth; 0 for indexes that are not trees
+    private int depth;
+    private int balancedDepth;
+    private int unbuiltCount;
+    private int cachedHotels;
+    private long memoryBytes;
+}
@@ -0,0 +1,20 @@
+package com.dailycodework.lakesidehotel.response;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewportResponse {
+    private Integer zoom;
+    // True when the viewport is summarized as clusters instead of individual hotels
+    private Boolean clustered;
+    private List<HotelClusterResponse> clusters;
+    private List<MapHotelResponse> hotels;
+}
@@ -82,8 +82,9 @@ public class WebSecurityConfig {
                         .requestMatchers("/users/{email}", "/users/delete/{userId}").authenticated()
                         .requestMatchers("/roles/**").hasRole("ADMIN")
                         .requestMatchers("/api/v1/hotels/add", "/api/v1/hotels/update/{id}",
-                                "/api/v1/hotels/delete/{id}")
+                                "/api/v1/hotels/delete/{id}", "/api/v1/hotels/index/**")
                         .hasRole("ADMIN")
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .anyRequest().authenticated());
         http.authenticationProvider(authenticationProvider());
         http.addFilterBefore(authenticationTokenFilter(), UsernamePasswordAuthenticationFilter.class);
@@ -0,0 +1,157 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.BookedRoom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Serializes booking writes per room, so two guests can never both be given
+ * the same night, while bookings for different rooms go ahead in parallel.
+ *
+ * Rooms share a fixed set of lock stripes by id. Under a room's stripe the
+ * room calendar is checked, the booking is persisted, and only then is the
+ * calendar updated, so the next writer for the room sees the new booking and
+ * a failed write leaves no trace. The persist step should lock the room row
+ * too, which keeps other application instances out.
+ */
+@Service
+public class BookingAdmissionService {
+
+    private final RoomAvailabilityService roomAvailabilityService;
+    private final ReentrantLock[] stripes;
+
+    public BookingAdmissionService(RoomAvailabilityService roomAvailabilityService,
+            @Value("${booking.lockStripes:256}") int stripes) {
+        this.roomAvailabilityService = roomAvailabilityService;
+        // A power of two, so a stripe is picked with a mask
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Book the room for [checkIn, checkOut) if it is free, running persist
+     * while no other booking of the room can be admitted.
+     *
+     * @return false when the calendar has the room taken for any of those
+     *         nights; persist did not run. A room the calendar does not track
+     *         is left to persist, which must check the database itself
+     * @throws RuntimeException whatever persist throws; the calendar is then
+     *                          left as it was
+     */
+    public boolean admit(long roomId, LocalDate checkIn, LocalDate checkOut, Runnable persist) {
+        ReentrantLock lock = stripeOf(roomId);
+        lock.lock();
+        try {
+            if (roomAvailabilityService.isRoomBooked(roomId, checkIn, checkOut)) {
+                return false;
+            }
+            persist.run();
+            roomAvailabilityService.addBooking(roomId, checkIn, checkOut);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancel a booking of the room for [checkIn, checkOut), running remove while
+     * no other booking of the room can be admitted. The nights are freed in the
+     * calendar only when remove returns true: it deleted a booking that held the
+     * room, so nights owned by another booking are never cleared.
+     *
+     * @throws RuntimeException whatever remove throws; the calendar is then left
+     *                          as it was
+     */
+    public void release(long roomId, LocalDate checkIn, LocalDate checkOut, BooleanSupplier remove) {
+        ReentrantLock lock = stripeOf(roomId);
+        lock.lock();
+        try {
+            if (remove.getAsBoolean()) {
+                roomAvailabilityService.removeBooking(roomId, checkIn, checkOut);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Book every stay if all of them are free, running persist while no other
+     * booking of those rooms can be admitted. Nothing is booked otherwise.
+     *
+     * The rooms' stripes are taken in ascending order, so two groups sharing
+     * rooms cannot deadlock, and single-room admissions never hold more than one.
+     *
+     * @return the ids of the rooms taken for some of their nights, by other
+     *         bookings or by an earlier stay of the group, in the order of the
+     *         stays; empty when everything was booked
+     * @throws RuntimeException whatever persist throws; the calendar is then
+     *                          left as it was
+     */
+    public List<Long> admitAll(List<Stay> stays, Runnable persist) {
+        int[] stripeIndexes = stays.stream().mapToInt(stay -> stripeIndexOf(stay.roomId())).sorted().distinct()
+                .toArray();
+        for (int i = 0; i < stripeIndexes.length; i++) {
+            stripes[stripeIndexes[i]].lock();
+        }
+        try {
+            List<Long> taken = new ArrayList<>();
+            for (int i = 0; i < stays.size(); i++) {
+                Stay stay = stays.get(i);
+                if (roomAvailabilityService.isRoomBooked(stay.roomId(), stay.checkIn(), stay.checkOut())
+                        || clashesWithEarlierStay(stays, i)) {
+                    taken.add(stay.roomId());
+                }
+            }
+            if (!taken.isEmpty()) {
+                return taken;
+            }
+            persist.run();
+            for (Stay stay : stays) {
+                roomAvailabilityService.addBooking(stay.roomId(), stay.checkIn(), stay.checkOut());
+            }
+            return List.of();
+        } finally {
+            for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+                stripes[stripeIndexes[i]].unlock();
+            }
+        }
+    }
+
+    // Groups are tens of rooms, so comparing with every earlier stay is cheap
+    private static boolean clashesWithEarlierStay(List<Stay> stays, int i) {
+        Stay stay = stays.get(i);
+        for (int j = 0; j < i; j++) {
+            Stay earlier = stays.get(j);
+            if (earlier.roomId() == stay.roomId()
+                    && BookedRoom.overlaps(stay.checkIn(), stay.checkOut(), earlier.checkIn(), earlier.checkOut())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ReentrantLock stripeOf(long roomId) {
+        return stripes[stripeIndexOf(roomId)];
+    }
+
+    private int stripeIndexOf(long roomId) {
+        // Spread consecutive ids, which hot rooms of one hotel usually are
+        long mixed = roomId * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32) & (stripes.length - 1);
+    }
+
+    /**
+     * One room booked for the nights [checkIn, checkOut).
+     */
+    public record Stay(long roomId, LocalDate checkIn, LocalDate checkOut) {
+    }
+}
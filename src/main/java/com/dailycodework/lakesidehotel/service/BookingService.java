@@ -5,19 +5,34 @@ import com.dailycodework.lakesidehotel.exception.ResourceNotFoundException;
 import com.dailycodework.lakesidehotel.model.BookedRoom;
 import com.dailycodework.lakesidehotel.model.Room;
 import com.dailycodework.lakesidehotel.repository.BookingRepository;
+import com.dailycodework.lakesidehotel.repository.RoomRepository;
+import com.dailycodework.lakesidehotel.request.GroupBookingRequest;
 import com.dailycodework.lakesidehotel.response.DynamicPricingResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.List;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
 public class BookingService implements IBookingService {
+    private static final String ROOM_TAKEN = "Sorry, This room is not available for the selected dates;";
+    private static final String ROOMS_TAKEN = "Sorry, these rooms are not available for the selected dates: ";
+
     private final BookingRepository bookingRepository;
-    private final IRoomService roomService;
+    private final RoomRepository roomRepository;
+    private final BookingAdmissionService bookingAdmissionService;
+    private final TransactionTemplate transactionTemplate;
     private final IDynamicPricingService dynamicPricingService;
+    private final RoomTypeInventoryService roomTypeInventoryService;
+
+    // Most rooms one group booking may hold; each takes a lock stripe and a row lock until it commits
+    @Value("${booking.maxGroupRooms:50}")
+    private int maxGroupRooms = 50;
 
     @Override
     public List<BookedRoom> getAllBookings() {
@@ -31,7 +46,23 @@ public class BookingService implements IBookingService {
 
     @Override
     public void cancelBooking(Long bookingId) {
-        bookingRepository.deleteById(bookingId);
+        // Under the room's stripe, so no admission of the room sees the calendar half updated
+        bookingRepository.findById(bookingId).ifPresent(booking -> bookingAdmissionService.release(
+                booking.getRoom().getId(), booking.getCheckInDate(), booking.getCheckOutDate(),
+                () -> deleteBooking(bookingId)));
+    }
+
+    // Deletes the booking with its room type's sold counts; true when it held its room's nights
+    private boolean deleteBooking(Long bookingId) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> bookingRepository.findById(bookingId)
+                .map(booking -> {
+                    bookingRepository.deleteById(bookingId);
+                    if (booking.holdsRoom()) {
+                        roomTypeInventoryService.recordSold(booking, -1);
+                    }
+                    return booking.holdsRoom();
+                })
+                .orElse(false)));
     }
 
     @Override
@@ -41,62 +72,160 @@ public class BookingService implements IBookingService {
 
     @Override
     public String saveBooking(Long roomId, BookedRoom bookingRequest) {
-        if (bookingRequest.getCheckOutDate().isBefore(bookingRequest.getCheckInDate())) {
+        if (!bookingRequest.getCheckOutDate().isAfter(bookingRequest.getCheckInDate())) {
             throw new InvalidBookingRequestException("Check-in date must come before check-out date");
         }
 
-        Room room = roomService.getRoomById(roomId).get();
-        List<BookedRoom> existingBookings = room.getBookings();
-        boolean roomIsAvailable = roomIsAvailable(bookingRequest, existingBookings);
+        LocalDate checkIn = bookingRequest.getCheckInDate();
+        LocalDate checkOut = bookingRequest.getCheckOutDate();
+        Room room = roomRepository.findById(roomId)
+                .orElseThrow(() -> new ResourceNotFoundException("Room not found"));
+        // Calculate dynamic pricing and store it; done first so the room stays locked only briefly
+        calculateAndStorePricing(room, bookingRequest);
+
+        // Only one booking of this room at a time gets past the availability check
+        boolean admitted = bookingAdmissionService.admit(roomId, checkIn, checkOut,
+                () -> transactionTemplate.executeWithoutResult(status -> {
+                    // Locks the room row until commit, in case another instance books it too
+                    Room lockedRoom = roomRepository.findByIdForUpdate(roomId)
+                            .orElseThrow(() -> new ResourceNotFoundException("Room not found"));
+                    if (bookingRepository.existsOverlapping(roomId, checkIn, checkOut)) {
+                        throw new InvalidBookingRequestException(ROOM_TAKEN);
+                    }
+                    lockedRoom.addBooking(bookingRequest);
+                    bookingRepository.save(bookingRequest);
+                    roomTypeInventoryService.recordSold(bookingRequest, 1);
+                }));
+        if (!admitted) {
+            throw new InvalidBookingRequestException(ROOM_TAKEN);
+        }
+        return bookingRequest.getBookingConfirmationCode();
+    }
 
-        if (roomIsAvailable) {
-            // Calculate dynamic pricing and store it
-            calculateAndStorePricing(room, bookingRequest);
+    @Override
+    public List<String> saveGroupBooking(GroupBookingRequest groupRequest) {
+        List<GroupBookingRequest.Item> items = groupRequest.getRooms();
+        if (items == null || items.isEmpty()) {
+            throw new InvalidBookingRequestException("A group booking needs at least one room");
+        }
+        if (items.size() > maxGroupRooms) {
+            throw new InvalidBookingRequestException("A group booking may hold at most " + maxGroupRooms + " rooms");
+        }
+        List<BookingAdmissionService.Stay> stays = new ArrayList<>(items.size());
+        List<BookedRoom> bookings = new ArrayList<>(items.size());
+        for (GroupBookingRequest.Item item : items) {
+            if (item.getRoomId() == null || item.getCheckInDate() == null || item.getCheckOutDate() == null) {
+                throw new InvalidBookingRequestException("Every room needs a room id, a check-in and a check-out date");
+            }
+            if (!item.getCheckOutDate().isAfter(item.getCheckInDate())) {
+                throw new InvalidBookingRequestException("Check-in date must come before check-out date");
+            }
+            stays.add(new BookingAdmissionService.Stay(item.getRoomId(), item.getCheckInDate(),
+                    item.getCheckOutDate()));
+            bookings.add(item.toBooking());
+        }
 
-            room.addBooking(bookingRequest);
-            bookingRepository.save(bookingRequest);
-        } else {
-            throw new InvalidBookingRequestException("Sorry, This room is not available for the selected dates;");
+        Set<Long> roomIds = new TreeSet<>();
+        stays.forEach(stay -> roomIds.add(stay.roomId()));
+        Map<Long, Room> rooms = new HashMap<>();
+        roomRepository.findAllById(roomIds).forEach(room -> rooms.put(room.getId(), room));
+        if (rooms.size() != roomIds.size()) {
+            Set<Long> missing = new TreeSet<>(roomIds);
+            missing.removeAll(rooms.keySet());
+            throw new ResourceNotFoundException("Rooms not found: " + missing);
+        }
+        for (int i = 0; i < bookings.size(); i++) {
+            bookings.get(i).setRoom(rooms.get(stays.get(i).roomId()));
+        }
+        // Priced in one batch before any room is locked
+        calculateAndStorePricing(bookings);
+
+        LocalDate from = Collections.min(stays.stream().map(BookingAdmissionService.Stay::checkIn).toList());
+        LocalDate to = Collections.max(stays.stream().map(BookingAdmissionService.Stay::checkOut).toList());
+        List<Long> taken = bookingAdmissionService.admitAll(stays,
+                () -> transactionTemplate.executeWithoutResult(status -> {
+                    // Row locks in id order, as for the stripes, so overlapping groups cannot deadlock
+                    Map<Long, Room> lockedRooms = new HashMap<>();
+                    roomRepository.findAllByIdForUpdate(roomIds).forEach(room -> lockedRooms.put(room.getId(), room));
+                    List<BookedRoom> holding = bookingRepository.findHoldingBetween(roomIds, from, to);
+                    for (BookingAdmissionService.Stay stay : stays) {
+                        for (BookedRoom booking : holding) {
+                            if (booking.getRoom().getId() == stay.roomId() && BookedRoom.overlaps(stay.checkIn(),
+                                    stay.checkOut(), booking.getCheckInDate(), booking.getCheckOutDate())) {
+                                throw new InvalidBookingRequestException(ROOMS_TAKEN + stay.roomId());
+                            }
+                        }
+                    }
+                    for (int i = 0; i < bookings.size(); i++) {
+                        lockedRooms.get(stays.get(i).roomId()).addBooking(bookings.get(i));
+                    }
+                    bookingRepository.saveAll(bookings);
+                    for (BookedRoom booking : bookings) {
+                        roomTypeInventoryService.recordSold(booking, 1);
+                    }
+                }));
+        if (!taken.isEmpty()) {
+            throw new InvalidBookingRequestException(ROOMS_TAKEN + String.join(", ",
+                    taken.stream().distinct().map(String::valueOf).toList()));
+        }
+        return bookings.stream().map(BookedRoom::getBookingConfirmationCode).toList();
+    }
+
+    private void calculateAndStorePricing(List<BookedRoom> bookings) {
+        try {
+            List<DynamicPricingResponse> pricings = dynamicPricingService.calculatePrices(bookings);
+            for (int i = 0; i < bookings.size(); i++) {
+                storePricing(bookings.get(i).getRoom(), bookings.get(i), pricings.get(i));
+            }
+        } catch (Exception e) {
+            // Fallback to base pricing if dynamic pricing fails
+            bookings.forEach(booking -> storeBasePricing(booking.getRoom(), booking));
         }
-        return bookingRequest.getBookingConfirmationCode();
     }
 
     private void calculateAndStorePricing(Room room, BookedRoom bookingRequest) {
         try {
-            // Get dynamic pricing for the booking dates
+            // Get dynamic pricing for the booking dates, from the room already loaded
             DynamicPricingResponse pricing = dynamicPricingService.calculatePrice(
                     room.getId(),
                     bookingRequest.getCheckInDate(),
-                    bookingRequest.getCheckOutDate());
-
-            // Store the pricing information
-            bookingRequest.setBasePricePerNight(room.getRoomPrice());
-            bookingRequest.setFinalPricePerNight(pricing.getFinalPrice());
+                    bookingRequest.getCheckOutDate(),
+                    room.getRoomPrice());
+            storePricing(room, bookingRequest, pricing);
+        } catch (Exception e) {
+            // Fallback to base pricing if dynamic pricing fails
+            storeBasePricing(room, bookingRequest);
+        }
+    }
 
-            // Calculate number of nights
-            int nights = bookingRequest.getCheckOutDate().getDayOfYear() -
-                    bookingRequest.getCheckInDate().getDayOfYear();
-            if (nights == 0)
-                nights = 1; // Minimum 1 night
+    private void storePricing(Room room, BookedRoom bookingRequest, DynamicPricingResponse pricing) {
+        // Store the pricing information
+        bookingRequest.setBasePricePerNight(room.getRoomPrice());
+        bookingRequest.setFinalPricePerNight(pricing.getFinalPrice());
 
-            bookingRequest.setNumberOfNights(nights);
-            bookingRequest.setTotalAmount(pricing.getFinalPrice().multiply(BigDecimal.valueOf(nights)));
+        // Calculate number of nights
+        int nights = (int) ChronoUnit.DAYS.between(bookingRequest.getCheckInDate(),
+                bookingRequest.getCheckOutDate());
+        if (nights == 0)
+            nights = 1; // Minimum 1 night
 
-            // Store pricing adjustments as JSON string
-            if (pricing.getAdjustments() != null && !pricing.getAdjustments().isEmpty()) {
-                String adjustmentsJson = convertAdjustmentsToJson(pricing.getAdjustments());
-                bookingRequest.setPricingAdjustments(adjustmentsJson);
-            }
+        bookingRequest.setNumberOfNights(nights);
+        bookingRequest.setTotalAmount(pricing.getFinalPrice().multiply(BigDecimal.valueOf(nights)));
 
-        } catch (Exception e) {
-            // Fallback to base pricing if dynamic pricing fails
-            bookingRequest.setBasePricePerNight(room.getRoomPrice());
-            bookingRequest.setFinalPricePerNight(room.getRoomPrice());
-            bookingRequest.setNumberOfNights(1);
-            bookingRequest.setTotalAmount(room.getRoomPrice());
+        // Store pricing adjustments as JSON string
+        if (pricing.getAdjustments() != null && !pricing.getAdjustments().isEmpty()) {
+            String adjustmentsJson = convertAdjustmentsToJson(pricing.getAdjustments());
+            bookingRequest.setPricingAdjustments(adjustmentsJson);
         }
     }
 
+    private void storeBasePricing(Room room, BookedRoom bookingRequest) {
+        bookingRequest.setBasePricePerNight(room.getRoomPrice());
+        bookingRequest.setFinalPricePerNight(room.getRoomPrice());
+        bookingRequest.setNumberOfNights(1);
+        bookingRequest.setTotalAmount(room.getRoomPrice());
+    }
+
     private String convertAdjustmentsToJson(
             List<com.dailycodework.lakesidehotel.response.PricingAdjustment> adjustments) {
         // Simple JSON conversion - you might want to use Jackson ObjectMapper for
@@ -123,24 +252,4 @@ public class BookingService implements IBookingService {
                 .orElseThrow(
                         () -> new ResourceNotFoundException("No booking found with booking code :" + confirmationCode));
     }
-
-    private boolean roomIsAvailable(BookedRoom bookingRequest, List<BookedRoom> existingBookings) {
-        return existingBookings.stream()
-                .noneMatch(existingBooking -> bookingRequest.getCheckInDate().equals(existingBooking.getCheckInDate())
-                        || bookingRequest.getCheckOutDate().isBefore(existingBooking.getCheckOutDate())
-                        || (bookingRequest.getCheckInDate().isAfter(existingBooking.getCheckInDate())
-                                && bookingRequest.getCheckInDate().isBefore(existingBooking.getCheckOutDate()))
-                        || (bookingRequest.getCheckInDate().isBefore(existingBooking.getCheckInDate())
-
-                                && bookingRequest.getCheckOutDate().equals(existingBooking.getCheckOutDate()))
-                        || (bookingRequest.getCheckInDate().isBefore(existingBooking.getCheckInDate())
-
-                                && bookingRequest.getCheckOutDate().isAfter(existingBooking.getCheckOutDate()))
-
-                        || (bookingRequest.getCheckInDate().equals(existingBooking.getCheckOutDate())
-                                && bookingRequest.getCheckOutDate().equals(existingBooking.getCheckInDate()))
-
-                        || (bookingRequest.getCheckInDate().equals(existingBooking.getCheckOutDate())
-                                && bookingRequest.getCheckOutDate().equals(bookingRequest.getCheckInDate())));
-    }
 }
@@ -0,0 +1,136 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.GeoPolygon;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Named district outlines for polygon searches, read once at startup from the
+ * GeoJSON FeatureCollection at {@code spatial.districts.path}. Each feature
+ * needs a {@code name} property and a Polygon or MultiPolygon geometry; other
+ * features are skipped with a warning. Without a file the registry is empty.
+ */
+@Service
+@Slf4j
+public class DistrictRegistry {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, GeoPolygon> districts;
+
+    public DistrictRegistry(@Value("${spatial.districts.path:}") String path) {
+        this.districts = path.isBlank() ? Map.of() : load(Path.of(path));
+    }
+
+    private static Map<String, GeoPolygon> load(Path file) {
+        if (!Files.exists(file)) {
+            log.warn("District file {} not found; polygon searches will only take ad hoc polygons", file);
+            return Map.of();
+        }
+
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(file.toFile());
+        } catch (IOException e) {
+            log.warn("Ignoring district file {}: {}", file, e.getMessage());
+            return Map.of();
+        }
+
+        Map<String, GeoPolygon> loaded = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (JsonNode feature : root.path("features")) {
+            String name = feature.path("properties").path("name").asText("");
+            try {
+                if (name.isBlank()) {
+                    throw new IllegalArgumentException("no name property");
+                }
+                loaded.put(name, polygonOf(feature.path("geometry")));
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping district '{}' in {}: {}", name, file, e.getMessage());
+            }
+        }
+        log.info("Loaded {} districts from {}", loaded.size(), file);
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    /**
+     * The polygon of a GeoJSON Polygon or MultiPolygon geometry.
+     *
+     * @throws IllegalArgumentException for any other geometry, or a malformed one
+     */
+    public static GeoPolygon polygonOf(JsonNode geometry) {
+        return polygonOf(geometry, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The polygon of a GeoJSON Polygon or MultiPolygon geometry of at most
+     * maxRings rings and maxVertices vertices in all, checked before anything
+     * is built from it.
+     *
+     * @throws IllegalArgumentException for any other geometry, a malformed one,
+     * or one over either budget
+     */
+    public static GeoPolygon polygonOf(JsonNode geometry, int maxRings, int maxVertices) {
+        String type = geometry.path("type").asText();
+        JsonNode coordinates = geometry.path("coordinates");
+        List<JsonNode> polygons = new ArrayList<>();
+        switch (type) {
+            case "Polygon" -> polygons.add(coordinates);
+            case "MultiPolygon" -> coordinates.forEach(polygons::add);
+            default -> throw new IllegalArgumentException("Expected a Polygon or MultiPolygon, got '" + type + "'");
+        }
+        int ringCount = 0;
+        long vertexCount = 0;
+        for (JsonNode polygon : polygons) {
+            ringCount += polygon.size();
+            for (JsonNode ring : polygon) {
+                vertexCount += ring.size();
+            }
+        }
+        if (ringCount > maxRings || vertexCount > maxVertices) {
+            throw new IllegalArgumentException("At most " + maxRings + " rings and " + maxVertices
+                    + " vertices are allowed");
+        }
+        List<double[]> rings = new ArrayList<>();
+        for (JsonNode polygon : polygons) {
+            addRings(polygon, rings);
+        }
+        return GeoPolygon.of(rings);
+    }
+
+    private static void addRings(JsonNode polygon, List<double[]> rings) {
+        for (JsonNode ring : polygon) {
+            double[] coordinates = new double[2 * ring.size()];
+            for (int i = 0; i < ring.size(); i++) {
+                JsonNode position = ring.get(i);
+                if (!position.path(0).isNumber() || !position.path(1).isNumber()) {
+                    throw new IllegalArgumentException("Positions must be [longitude, latitude] numbers");
+                }
+                coordinates[2 * i] = position.get(0).asDouble();
+                coordinates[2 * i + 1] = position.get(1).asDouble();
+            }
+            rings.add(coordinates);
+        }
+    }
+
+    /**
+     * District names, in alphabetical order.
+     */
+    public List<String> names() {
+        return List.copyOf(districts.keySet());
+    }
+
+    /**
+     * The district of that name, ignoring case.
+     */
+    public Optional<GeoPolygon> find(String name) {
+        return Optional.ofNullable(districts.get(name));
+    }
+}
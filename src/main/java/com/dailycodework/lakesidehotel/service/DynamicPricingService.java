@@ -6,11 +6,14 @@ import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
 import com.dailycodework.lakesidehotel.exception.ResourceNotFoundException;
+import com.dailycodework.lakesidehotel.model.BookedRoom;
 import com.dailycodework.lakesidehotel.model.Room;
 import com.dailycodework.lakesidehotel.repository.RoomRepository;
 import com.dailycodework.lakesidehotel.response.DynamicPricingResponse;
@@ -90,6 +93,33 @@ public class DynamicPricingService implements IDynamicPricingService {
                 .build();
     }
 
+    @Override
+    public List<DynamicPricingResponse> calculatePrices(List<BookedRoom> bookings) {
+        // Rooms of a group mostly share dates and rates, so each distinct stay is priced once
+        Map<Stay, DynamicPricingResponse> pricedStays = new HashMap<>();
+        List<DynamicPricingResponse> responses = new ArrayList<>(bookings.size());
+        for (BookedRoom booking : bookings) {
+            Room room = booking.getRoom();
+            DynamicPricingResponse pricing = pricedStays.computeIfAbsent(
+                    new Stay(booking.getCheckInDate(), booking.getCheckOutDate(), room.getRoomPrice()),
+                    stay -> calculatePrice(room.getId(), booking.getCheckInDate(), booking.getCheckOutDate(),
+                            room.getRoomPrice()));
+            responses.add(DynamicPricingResponse.builder()
+                    .roomId(room.getId())
+                    .basePrice(pricing.getBasePrice())
+                    .finalPrice(pricing.getFinalPrice())
+                    .adjustments(pricing.getAdjustments())
+                    .totalAdjustmentAmount(pricing.getTotalAdjustmentAmount())
+                    .currency(pricing.getCurrency())
+                    .build());
+        }
+        return responses;
+    }
+
+    // Key of a priced stay; unlike List.of it takes a room without a price
+    private record Stay(LocalDate checkIn, LocalDate checkOut, BigDecimal price) {
+    }
+
     /**
      * Calculate pricing adjustments for a single night
      */
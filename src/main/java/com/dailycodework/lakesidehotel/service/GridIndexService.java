@@ -0,0 +1,575 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.ClusterPyramid;
+import com.dailycodework.lakesidehotel.model.GeoBox;
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.HotelRoomProfile;
+import com.dailycodework.lakesidehotel.model.HotelSummary;
+import com.dailycodework.lakesidehotel.model.NearbyCursor;
+import com.dailycodework.lakesidehotel.model.RoomFilter;
+import com.dailycodework.lakesidehotel.request.NearbyQueryRequest;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyPageResponse;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Spatial index that buckets hotels into a uniform latitude/longitude grid of
+ * {@code spatial.grid.cellDegrees} cells.
+ *
+ * Every write is O(1): a hotel is appended to its cell or swapped out of it,
+ * and nothing is ever rebuilt, so heavy insert/remove churn stays cheap.
+ * Queries visit cells outward from the query point. Reads share a read lock;
+ * writes take the write lock only for that O(1) update.
+ */
+@Service
+@ConditionalOnProperty(name = "spatial.index.type", havingValue = "grid")
+public class GridIndexService implements SpatialIndex {
+
+    // Max-heap order of the k best hotels so far; ties in distance go by id, so paging is exact
+    private static final Comparator<NearbyHotelResponse> FARTHEST_FIRST = Comparator
+            .comparingDouble(NearbyHotelResponse::getDistance)
+            .thenComparingLong(NearbyHotelResponse::getId)
+            .reversed();
+
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Cell> cells = new HashMap<>();
+    // Cell key of each indexed hotel
+    private final Map<Long, Long> cellById = new HashMap<>();
+    private final Map<Long, HotelSummary> hotels = new HashMap<>();
+    // Rooms of each hotel, for room filters; checked hotel by hotel, the grid keeps no aggregates
+    private final Map<Long, HotelRoomProfile> roomProfiles = new HashMap<>();
+    // Bumped on every write, so the cluster pyramid and cached results know when they are stale
+    private long version;
+    private final AtomicReference<ClusterCache> clusterCache = new AtomicReference<>();
+
+    public GridIndexService(@Value("${spatial.grid.cellDegrees:0.25}") double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.rows = (int) Math.ceil(180 / cellDegrees);
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+    }
+
+    /**
+     * Hotels of one grid cell in parallel growable arrays.
+     */
+    private static final class Cell {
+        long[] ids = new long[4];
+        double[] latitudes = new double[4];
+        double[] longitudes = new double[4];
+        int size;
+
+        void add(long id, double latitude, double longitude) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+            }
+            ids[size] = id;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+        }
+
+        // Move the last entry into the removed one's place
+        void remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    size--;
+                    ids[i] = ids[size];
+                    latitudes[i] = latitudes[size];
+                    longitudes[i] = longitudes[size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private record ClusterCache(long version, ClusterPyramid pyramid) {
+    }
+
+    @Override
+    public void insertHotel(Long hotelId, Double latitude, Double longitude) {
+        lock.writeLock().lock();
+        try {
+            locate(hotelId, latitude, longitude);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateHotelCache(Hotel hotel) {
+        lock.writeLock().lock();
+        try {
+            hotels.put(hotel.getId(), HotelSummary.of(hotel));
+            locate(hotel.getId(), hotel.getLatitude(), hotel.getLongitude());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeHotel(Long hotelId) {
+        lock.writeLock().lock();
+        try {
+            hotels.remove(hotelId);
+            locate(hotelId, null, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateHotels(Collection<Hotel> updated, Collection<Long> removedIds) {
+        lock.writeLock().lock();
+        try {
+            for (Hotel hotel : updated) {
+                hotels.put(hotel.getId(), HotelSummary.of(hotel));
+                locate(hotel.getId(), hotel.getLatitude(), hotel.getLongitude());
+            }
+            for (Long hotelId : removedIds) {
+                hotels.remove(hotelId);
+                locate(hotelId, null, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Move the hotel to the cell of the given coordinates; null coordinates unindex it. Caller holds the write lock.
+    private void locate(long hotelId, Double latitude, Double longitude) {
+        version++;
+        Long previous = cellById.remove(hotelId);
+        if (previous != null) {
+            Cell cell = cells.get(previous);
+            cell.remove(hotelId);
+            if (cell.size == 0) {
+                cells.remove(previous);
+            }
+        }
+
+        if (latitude != null && longitude != null) {
+            long key = cellKey(row(latitude), column(longitude));
+            cells.computeIfAbsent(key, k -> new Cell()).add(hotelId, latitude, longitude);
+            cellById.put(hotelId, key);
+        }
+    }
+
+    @Override
+    public void rebuild(List<HotelSummary> newHotels, double[] latitudes, double[] longitudes) {
+        lock.writeLock().lock();
+        try {
+            cells.clear();
+            cellById.clear();
+            hotels.clear();
+            version++;
+            for (int i = 0; i < newHotels.size(); i++) {
+                HotelSummary hotel = newHotels.get(i);
+                boolean located = !Double.isNaN(latitudes[i]) && !Double.isNaN(longitudes[i]);
+                hotels.put(hotel.id(), hotel);
+                locate(hotel.id(), located ? latitudes[i] : null, located ? longitudes[i] : null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachHotel(HotelVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (Cell cell : cells.values()) {
+                for (int i = 0; i < cell.size; i++) {
+                    HotelSummary hotel = hotels.get(cell.ids[i]);
+                    if (hotel != null) {
+                        visitor.visit(hotel, cell.latitudes[i], cell.longitudes[i]);
+                    }
+                }
+            }
+            for (HotelSummary hotel : hotels.values()) {
+                if (!cellById.containsKey(hotel.id())) {
+                    visitor.visit(hotel, Double.NaN, Double.NaN);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SpatialIndexStatsResponse getStats() {
+        lock.readLock().lock();
+        try {
+            long memoryBytes = 0;
+            for (Cell cell : cells.values()) {
+                // Cell object plus three arrays with 16-byte headers
+                memoryBytes += 32 + 3 * 16 + 24L * cell.ids.length;
+            }
+            return new SpatialIndexStatsResponse("grid", cellById.size(), cellById.size(), 0, 0, 0, 0,
+                    hotels.size(), memoryBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k) {
+        lock.readLock().lock();
+        try {
+            return nearest(userLat, userLon, k, null, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k, RoomFilter roomFilter,
+            LongPredicate hotelFilter) {
+        LongPredicate filter = hotelFilter;
+        if (roomFilter != null) {
+            LongPredicate hasRoom = hotelId -> {
+                HotelRoomProfile profile = roomProfiles.get(hotelId);
+                return profile != null && profile.matches(roomFilter);
+            };
+            filter = hotelFilter == null ? hasRoom : hasRoom.and(hotelFilter);
+        }
+        lock.readLock().lock();
+        try {
+            return nearest(userLat, userLon, k, filter, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateRoomProfile(long hotelId, HotelRoomProfile profile) {
+        lock.writeLock().lock();
+        try {
+            if (profile == null) {
+                roomProfiles.remove(hotelId);
+            } else {
+                roomProfiles.put(hotelId, profile);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebuildRoomProfiles(Map<Long, HotelRoomProfile> profiles) {
+        lock.writeLock().lock();
+        try {
+            roomProfiles.clear();
+            roomProfiles.putAll(profiles);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public NearbyPageResponse findNearestPage(double userLat, double userLon, int pageSize, NearbyCursor after) {
+        lock.readLock().lock();
+        try {
+            List<NearbyHotelResponse> hotels = nearest(userLat, userLon, pageSize, null, after);
+            if (hotels.size() < pageSize) {
+                return new NearbyPageResponse(hotels, null);
+            }
+            NearbyHotelResponse last = hotels.get(hotels.size() - 1);
+            return new NearbyPageResponse(hotels, new NearbyCursor(last.getDistance(), last.getId()).encode());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<List<NearbyHotelResponse>> findNearestHotels(List<NearbyQueryRequest> queries) {
+        // Workers search under this thread's read lock; taking it again could queue them behind a writer
+        lock.readLock().lock();
+        try {
+            return ParallelBatch.map(queries.size(), i -> {
+                NearbyQueryRequest query = queries.get(i);
+                return nearest(query.getLat(), query.getLon(), query.getK(), null, null);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The k hotels nearest to the point that pass the filter and come after the
+     * cursor, in (distance, id) order; null filter and cursor accept every
+     * hotel. Caller holds the read lock.
+     */
+    private List<NearbyHotelResponse> nearest(double userLat, double userLon, int k, LongPredicate hotelFilter,
+            NearbyCursor after) {
+        PriorityQueue<NearbyHotelResponse> pq = new PriorityQueue<>(FARTHEST_FIRST);
+        int queryRow = row(userLat);
+        int queryColumn = column(userLon);
+
+        // Visit rings of cells at growing Chebyshev distance until no unvisited cell can hold a closer hotel
+        for (int ring = 0; ring <= rows + columns; ring++) {
+            if ((long) (2 * ring + 1) * (2 * ring + 1) > cells.size()) {
+                // The rings now cost more than scanning every non-empty cell once
+                pq.clear();
+                for (Cell cell : cells.values()) {
+                    offerCell(cell, userLat, userLon, Double.POSITIVE_INFINITY, k, hotelFilter, after, pq);
+                }
+                break;
+            }
+
+            int minColumn = Math.max(-ring, -(columns - 1) / 2);
+            int maxColumn = Math.min(ring, columns / 2);
+            for (int dr = -ring; dr <= ring; dr++) {
+                int r = queryRow + dr;
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                // Top and bottom rows of the ring are visited whole, the rows between only at both ends
+                int step = Math.abs(dr) == ring ? 1 : 2 * ring;
+                for (int dc = -ring; dc <= ring; dc += step) {
+                    if (dc >= minColumn && dc <= maxColumn) {
+                        offerCell(cells.get(cellKey(r, Math.floorMod(queryColumn + dc, columns))),
+                                userLat, userLon, Double.POSITIVE_INFINITY, k, hotelFilter, after, pq);
+                    }
+                }
+            }
+
+            // Strictly nearer, so a tie beyond the ring cannot have the smaller id
+            if (pq.size() == k && pq.peek().getDistance() < distanceBeyondRing(userLat, userLon, ring)) {
+                break;
+            }
+        }
+        return sorted(pq);
+    }
+
+    /**
+     * Lower bound on the distance from the query to any cell outside the square
+     * of rings 0..ring. Leaving the square means crossing its northern or
+     * southern edge, or one of the meridians bounding its columns.
+     */
+    private double distanceBeyondRing(double userLat, double userLon, int ring) {
+        int queryRow = row(userLat);
+        int queryColumn = column(userLon);
+
+        double bound = Double.POSITIVE_INFINITY;
+        if (queryRow + ring + 1 < rows) {
+            bound = Math.min(bound, Math.toRadians(-90 + (queryRow + ring + 1) * cellDegrees - userLat));
+        }
+        if (queryRow - ring > 0) {
+            bound = Math.min(bound, Math.toRadians(userLat - (-90 + (queryRow - ring) * cellDegrees)));
+        }
+        if (2 * ring + 1 < columns) {
+            double west = userLon - (-180 + (queryColumn - ring) * cellDegrees);
+            double east = -180 + (queryColumn + ring + 1) * cellDegrees - userLon;
+            double halfWidth = Math.toRadians(Math.min(west, east));
+            double latitude = Math.toRadians(userLat);
+            // Distance to a meridian halfWidth away; past 90 degrees the nearest point of it is a pole
+            bound = Math.min(bound, halfWidth >= Math.PI / 2
+                    ? Math.PI / 2 - Math.abs(latitude)
+                    : Math.asin(Math.sin(halfWidth) * Math.cos(latitude)));
+        }
+        return bound * EARTH_RADIUS_KM;
+    }
+
+    @Override
+    public List<NearbyHotelResponse> findHotelsWithin(double userLat, double userLon, double radiusKm, int limit) {
+        lock.readLock().lock();
+        try {
+            PriorityQueue<NearbyHotelResponse> pq = new PriorityQueue<>(FARTHEST_FIRST);
+
+            double radiusDegrees = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+            double south = userLat - radiusDegrees;
+            double north = userLat + radiusDegrees;
+            double west = -180;
+            double east = 180;
+            if (south > -90 && north < 90) {
+                // Widest longitude offset of the circle, reached away from the query's latitude
+                double ratio = Math.sin(radiusKm / EARTH_RADIUS_KM) / Math.cos(Math.toRadians(userLat));
+                if (ratio < 1) {
+                    double halfWidth = Math.toDegrees(Math.asin(ratio));
+                    west = normalizeLongitude(userLon - halfWidth);
+                    east = normalizeLongitude(userLon + halfWidth);
+                }
+            }
+
+            forEachCell(new GeoBox(Math.max(-90, south), west, Math.min(90, north), east),
+                    cell -> offerCell(cell, userLat, userLon, radiusKm, limit, null, null, pq));
+            return sorted(pq);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MapHotelResponse> findHotelsInBox(double south, double west, double north, double east) {
+        lock.readLock().lock();
+        try {
+            GeoBox box = new GeoBox(south, west, north, east);
+            List<MapHotelResponse> result = new ArrayList<>();
+            forEachCell(box, cell -> {
+                for (int i = 0; i < cell.size; i++) {
+                    HotelSummary hotel = hotels.get(cell.ids[i]);
+                    if (hotel != null && box.contains(cell.latitudes[i], cell.longitudes[i])) {
+                        result.add(new MapHotelResponse(hotel.id(), hotel.name(), hotel.imageUrl(),
+                                cell.latitudes[i], cell.longitudes[i]));
+                    }
+                }
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ClusterPyramid clusterPyramid() {
+        lock.readLock().lock();
+        try {
+            ClusterCache cached = clusterCache.get();
+            if (cached != null && cached.version() == version) {
+                return cached.pyramid();
+            }
+
+            int count = cellById.size();
+            long[] ids = new long[count];
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+            int n = 0;
+            for (Cell cell : cells.values()) {
+                System.arraycopy(cell.ids, 0, ids, n, cell.size);
+                System.arraycopy(cell.latitudes, 0, latitudes, n, cell.size);
+                System.arraycopy(cell.longitudes, 0, longitudes, n, cell.size);
+                n += cell.size;
+            }
+
+            ClusterPyramid pyramid = ClusterPyramid.build(ids, latitudes, longitudes, n);
+            clusterCache.set(new ClusterCache(version, pyramid));
+            return pyramid;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visit every non-empty cell overlapping the box. Scans the non-empty cells
+     * directly when there are fewer of them than cells in the box.
+     */
+    private void forEachCell(GeoBox box, Consumer<Cell> action) {
+        int firstRow = row(box.south());
+        int lastRow = row(box.north());
+        int firstColumn = column(box.west());
+        int columnCount = box.width() >= 360 - cellDegrees ? columns
+                : Math.floorMod(column(box.east()) - firstColumn, columns) + 1;
+
+        if ((long) (lastRow - firstRow + 1) * columnCount > cells.size()) {
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                int r = (int) (entry.getKey() / columns);
+                int c = (int) (entry.getKey() % columns);
+                if (r >= firstRow && r <= lastRow && Math.floorMod(c - firstColumn, columns) < columnCount) {
+                    action.accept(entry.getValue());
+                }
+            }
+            return;
+        }
+
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int i = 0; i < columnCount; i++) {
+                Cell cell = cells.get(cellKey(r, (firstColumn + i) % columns));
+                if (cell != null) {
+                    action.accept(cell);
+                }
+            }
+        }
+    }
+
+    private void offerCell(Cell cell, double userLat, double userLon, double maxDistance, int k,
+            LongPredicate hotelFilter, NearbyCursor after, PriorityQueue<NearbyHotelResponse> pq) {
+        if (cell == null) {
+            return;
+        }
+        for (int i = 0; i < cell.size; i++) {
+            double latitude = cell.latitudes[i];
+            double longitude = cell.longitudes[i];
+            double distance = SpatialIndex.calculateDistance(userLat, userLon, latitude, longitude);
+            if (distance > maxDistance || (after != null && !after.isBefore(distance, cell.ids[i]))) {
+                continue;
+            }
+            if (pq.size() == k && !isNearer(distance, cell.ids[i], pq.peek())) {
+                continue;
+            }
+            if (hotelFilter != null && !hotelFilter.test(cell.ids[i])) {
+                continue;
+            }
+            HotelSummary hotel = hotels.get(cell.ids[i]);
+            if (hotel == null) {
+                continue;
+            }
+
+            if (pq.size() == k) {
+                pq.poll();
+            }
+            pq.offer(new NearbyHotelResponse(
+                    hotel.id(),
+                    hotel.name(),
+                    hotel.address(),
+                    hotel.contact(),
+                    hotel.email(),
+                    hotel.imageUrl(),
+                    hotel.description(),
+                    hotel.roomsCount(),
+                    latitude,
+                    longitude,
+                    distance));
+        }
+    }
+
+    private static boolean isNearer(double distance, long id, NearbyHotelResponse than) {
+        return distance < than.getDistance() || (distance == than.getDistance() && id < than.getId());
+    }
+
+    private static List<NearbyHotelResponse> sorted(PriorityQueue<NearbyHotelResponse> pq) {
+        List<NearbyHotelResponse> result = new ArrayList<>(pq);
+        result.sort(FARTHEST_FIRST.reversed());
+        return result;
+    }
+
+    private int row(double latitude) {
+        return Math.min(rows - 1, Math.max(0, (int) ((latitude + 90) / cellDegrees)));
+    }
+
+    private int column(double longitude) {
+        return Math.min(columns - 1, Math.max(0, (int) ((longitude + 180) / cellDegrees)));
+    }
+
+    private long cellKey(int row, int column) {
+        return (long) row * columns + column;
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+    }
+}
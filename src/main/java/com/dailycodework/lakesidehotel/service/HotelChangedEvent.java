@@ -0,0 +1,8 @@
+package com.dailycodework.lakesidehotel.service;
+
+/**
+ * Published when a hotel row is inserted, updated or deleted through JPA.
+ * Only the id is carried: listeners read the committed row back.
+ */
+public record HotelChangedEvent(long hotelId) {
+}
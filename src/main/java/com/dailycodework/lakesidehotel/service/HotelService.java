@@ -1,15 +1,19 @@
 package com.dailycodework.lakesidehotel.service;
 
 import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.RoomFilter;
 import com.dailycodework.lakesidehotel.repository.HotelRepository;
 import com.dailycodework.lakesidehotel.response.BookingResponse;
 import com.dailycodework.lakesidehotel.response.HotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
 import com.dailycodework.lakesidehotel.response.RoomResponse;
-import com.dailycodework.lakesidehotel.service.KDTreeService;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -18,14 +22,24 @@ import java.util.stream.Collectors;
 public class HotelService implements IHotelService {
 
     private final HotelRepository hotelRepository;
-    private final KDTreeService kdTreeService;
+    private final SpatialIndex spatialIndex;
+    private final RoomAvailabilityService roomAvailabilityService;
+    private final RoomAttributeService roomAttributeService;
+    private final RoomTypeInventoryService roomTypeInventoryService;
 
     @Override
     public HotelResponse createHotel(Hotel hotel) {
+        // Rooms sent with the hotel are saved with it, so they must point back at it
+        if (hotel.getRooms() != null) {
+            hotel.getRooms().forEach(room -> room.setHotel(hotel));
+        }
+        // The spatial index picks the new hotel up once it commits (SpatialIndexSyncService)
         Hotel saved = hotelRepository.save(hotel);
-        // Update K-D Tree if coordinates are available
-        if (saved.getLatitude() != null && saved.getLongitude() != null) {
-            kdTreeService.updateHotelCache(saved);
+        // save has committed; its rooms are tracked like rooms added one by one
+        if (saved.getRooms() != null && !saved.getRooms().isEmpty()) {
+            saved.getRooms().forEach(roomAvailabilityService::addRoom);
+            roomAttributeService.hotelRoomsChanged(saved.getId());
+            roomTypeInventoryService.hotelRoomsChanged(saved.getId());
         }
         return mapToResponse(saved);
     }
@@ -63,12 +77,6 @@ public class HotelService implements IHotelService {
         existing.setLongitude(updatedHotel.getLongitude());
 
         Hotel saved = hotelRepository.save(existing);
-
-        // Update K-D Tree if coordinates are available
-        if (saved.getLatitude() != null && saved.getLongitude() != null) {
-            kdTreeService.updateHotelCache(saved);
-        }
-
         return mapToResponse(saved);
     }
 
@@ -77,10 +85,34 @@ public class HotelService implements IHotelService {
         if (!hotelRepository.existsById(id)) {
             throw new EntityNotFoundException("Hotel not found with id " + id);
         }
-        kdTreeService.removeHotel(id);
+        // Its rooms go with it
+        roomAvailabilityService.removeHotel(id);
+        roomAttributeService.hotelRemoved(id);
+        roomTypeInventoryService.hotelRemoved(id);
         hotelRepository.deleteById(id);
     }
 
+    @Override
+    public List<NearbyHotelResponse> findNearestHotels(double lat, double lon, int k, LocalDate checkIn,
+            LocalDate checkOut, List<String> roomTypes, BigDecimal maxPrice, List<String> amenities) {
+        RoomFilter roomFilter = roomAttributeService.filterFor(roomTypes, maxPrice, amenities);
+        if (checkIn == null) {
+            return spatialIndex.findNearestHotels(lat, lon, k, roomFilter, null);
+        }
+        if (roomFilter == null) {
+            return spatialIndex.findNearestHotels(lat, lon, k, roomAvailabilityService.availableFor(checkIn, checkOut));
+        }
+        // The room passing the filter must be the one that is free
+        return spatialIndex.findNearestHotels(lat, lon, k,
+                roomFilter.withRoomCheck(roomAvailabilityService.roomAvailableFor(checkIn, checkOut)), null);
+    }
+
+    @Override
+    public SpatialIndexStatsResponse rebuildSpatialIndex() {
+        spatialIndex.rebuild(hotelRepository.findAll());
+        return spatialIndex.getStats();
+    }
+
     private HotelResponse mapToResponse(Hotel hotel) {
         List<RoomResponse> roomResponses = hotel.getRooms() == null ? List.of()
                 : hotel.getRooms().stream().map(room -> {
@@ -93,7 +125,8 @@ public class HotelService implements IHotelService {
                             room.getBookings().stream()
                                     .map(booking -> new BookingResponse(booking.getBookingId(),
                                             booking.getCheckInDate(),
-                                            booking.getCheckOutDate(), booking.getBookingConfirmationCode()))
+                                            booking.getCheckOutDate(), booking.getBookingConfirmationCode(),
+                                            booking.getStatus()))
                                     .collect(Collectors.toList()));
 
                     // Set availability status
@@ -1,6 +1,7 @@
 package com.dailycodework.lakesidehotel.service;
 
 import com.dailycodework.lakesidehotel.model.BookedRoom;
+import com.dailycodework.lakesidehotel.request.GroupBookingRequest;
 
 import java.util.List;
 
@@ -11,6 +12,8 @@ public interface IBookingService {
 
     String saveBooking(Long roomId, BookedRoom bookingRequest);
 
+    List<String> saveGroupBooking(GroupBookingRequest groupRequest);
+
     BookedRoom findByBookingConfirmationCode(String confirmationCode);
 
     List<BookedRoom> getAllBookings();
@@ -1,9 +1,11 @@
 package com.dailycodework.lakesidehotel.service;
 
+import com.dailycodework.lakesidehotel.model.BookedRoom;
 import com.dailycodework.lakesidehotel.response.DynamicPricingResponse;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 
 /**
  * Service interface for dynamic pricing calculations
@@ -31,6 +33,15 @@ public interface IDynamicPricingService {
      */
     DynamicPricingResponse calculatePrice(Long roomId, LocalDate checkIn, LocalDate checkOut, BigDecimal basePrice);
 
+    /**
+     * Calculate dynamic pricing for several bookings at once, from rooms the
+     * caller has already loaded
+     * 
+     * @param bookings Bookings with their room and dates set
+     * @return One DynamicPricingResponse per booking, in the same order
+     */
+    List<DynamicPricingResponse> calculatePrices(List<BookedRoom> bookings);
+
     /**
      * Apply timing-based adjustments (last-minute, early-bird) to a pricing
      * response
@@ -2,7 +2,11 @@ package com.dailycodework.lakesidehotel.service;
 
 import com.dailycodework.lakesidehotel.model.Hotel;
 import com.dailycodework.lakesidehotel.response.HotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 
 public interface IHotelService {
@@ -15,4 +19,16 @@ public interface IHotelService {
     HotelResponse updateHotel(Long id, Hotel updatedHotel);
 
     void deleteHotel(Long id);
+
+    SpatialIndexStatsResponse rebuildSpatialIndex();
+
+    /**
+     * The k hotels nearest to (lat, lon) with at least one room that is of any
+     * of the room types, costs at most maxPrice a night, has all of the
+     * amenities and is free for every night from checkIn up to checkOut. Every
+     * condition is optional: null or empty lists, a null price and null dates
+     * leave it out.
+     */
+    List<NearbyHotelResponse> findNearestHotels(double lat, double lon, int k, LocalDate checkIn,
+            LocalDate checkOut, List<String> roomTypes, BigDecimal maxPrice, List<String> amenities);
 }
@@ -0,0 +1,69 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer meters of a {@link KDTreeService}, served at
+ * {@code /actuator/metrics/kdtree.*}.
+ *
+ * Searches record their time and the nodes they visited, and writers the time
+ * they waited for the write lock. Recording adds a long to the meters'
+ * preallocated counters, so it allocates nothing on the query path. The shape
+ * of the tree is read by gauges only when metrics are scraped.
+ */
+final class KDTreeMetrics {
+
+    private final Timer searchTime;
+    private final DistributionSummary nodesVisited;
+    private final Timer writeLockWait;
+
+    KDTreeMetrics(MeterRegistry registry, KDTreeService index) {
+        searchTime = Timer.builder("kdtree.search.time")
+                .description("Time of each nearest and radius search, before its responses are built")
+                .publishPercentileHistogram()
+                .register(registry);
+        nodesVisited = DistributionSummary.builder("kdtree.search.nodes")
+                .description("Tree and unbuilt nodes visited by each search")
+                .baseUnit("nodes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(10_000_000.0)
+                .register(registry);
+        writeLockWait = Timer.builder("kdtree.write.lock.wait")
+                .description("Time writers waited for the write lock; searches never lock")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        gauge(registry, index, "kdtree.nodes", "Nodes in the index, dead ones included",
+                SpatialIndexStatsResponse::getNodeCount);
+        gauge(registry, index, "kdtree.nodes.dead", "Nodes of removed or moved hotels, until the next rebuild",
+                SpatialIndexStatsResponse::getDeadCount);
+        gauge(registry, index, "kdtree.nodes.unbuilt", "Nodes inserted since the last build, scanned by every search",
+                SpatialIndexStatsResponse::getUnbuiltCount);
+        gauge(registry, index, "kdtree.depth", "Depth of the built tree",
+                SpatialIndexStatsResponse::getDepth);
+    }
+
+    private static void gauge(MeterRegistry registry, KDTreeService index, String name, String description,
+            ToDoubleFunction<SpatialIndexStatsResponse> stat) {
+        Gauge.builder(name, index, i -> stat.applyAsDouble(i.getStats()))
+                .description(description)
+                .register(registry);
+    }
+
+    void searched(long nanos, int nodes) {
+        searchTime.record(nanos, TimeUnit.NANOSECONDS);
+        nodesVisited.record(nodes);
+    }
+
+    void waitedForWriteLock(long nanos) {
+        writeLockWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,182 +1,1030 @@
 package com.dailycodework.lakesidehotel.service;
 
+import com.dailycodework.lakesidehotel.model.ClusterPyramid;
+import com.dailycodework.lakesidehotel.model.GeoBox;
 import com.dailycodework.lakesidehotel.model.Hotel;
-import com.dailycodework.lakesidehotel.model.KDTreeNode;
+import com.dailycodework.lakesidehotel.model.HotelRoomProfile;
+import com.dailycodework.lakesidehotel.model.HotelSummary;
+import com.dailycodework.lakesidehotel.model.KDTreeIndex;
+import com.dailycodework.lakesidehotel.model.NearbyCursor;
+import com.dailycodework.lakesidehotel.model.RoomFilter;
+import com.dailycodework.lakesidehotel.model.SubtreeRoomAggregates;
+import com.dailycodework.lakesidehotel.request.NearbyQueryRequest;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
 import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyPageResponse;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
 
+/**
+ * Nearest-hotel search over an in-memory K-D tree.
+ *
+ * Readers never lock: each query works on the {@link Snapshot} current when it
+ * starts. Writers queue their change, then one writer at a time drains the
+ * queue and publishes a new snapshot, so concurrent updates are applied and
+ * published as one batch.
+ *
+ * Each hotel has at most one live node. Moving or removing a hotel marks its
+ * old node dead, and the tree is rebuilt from the live nodes once the dead
+ * ratio passes {@code kdtree.index.maxDeadRatio}.
+ *
+ * Every tree node also carries room aggregates of its subtree (see
+ * {@link SubtreeRoomAggregates}), so a search with a {@link RoomFilter} skips
+ * subtrees without a matching room.
+ *
+ * With a {@link MeterRegistry} in the context, searches and writers are
+ * measured through {@link KDTreeMetrics}.
+ */
 @Service
-public class KDTreeService {
+@ConditionalOnProperty(name = "spatial.index.type", havingValue = "kdtree", matchIfMissing = true)
+public class KDTreeService implements SpatialIndex {
 
-    private KDTreeNode root;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Map<Long, Hotel> hotelCache = new HashMap<>();
+    // Overlay size below which changes are never folded into the base hotel map
+    private static final int MIN_COMPACTION = 1024;
+    // Rebuild once the unbuilt tail exceeds max(MIN_UNBUILT, treeSize / 8)
+    private static final int MIN_UNBUILT = 64;
 
+    @Value("${kdtree.index.maxDeadRatio:0.25}")
+    private double maxDeadRatio = 0.25;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    // Bumped after each snapshot is published, so cached results can tell they are stale
+    private final AtomicLong version = new AtomicLong();
+    private final Queue<Change> pendingChanges = new ConcurrentLinkedQueue<>();
+    // Room profile changes, published with the next batch of changes
+    private final Queue<RoomChange> pendingRoomChanges = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Slot of each hotel's live node; only used by writers, under writeLock
+    private Map<Long, Integer> slotById = new HashMap<>();
+    // Cluster pyramid of the snapshot it was built from, built on first use
+    private final AtomicReference<ClusterCache> clusterCache = new AtomicReference<>();
+    // Rooms of each hotel, for room filters; replaced under writeLock
+    private final Map<Long, HotelRoomProfile> roomProfiles = new ConcurrentHashMap<>();
+    // Scratch state of the searches run on each thread
+    private final ThreadLocal<NearestSearch> scratchSearch = ThreadLocal.withInitial(NearestSearch::new);
+    // Null without a meter registry, as in tests and benchmarks
+    private KDTreeMetrics metrics;
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry registry) {
+        metrics = new KDTreeMetrics(registry, this);
+    }
+
+    /**
+     * Immutable view of the tree and the hotel cache. Hotel changes since the
+     * last compaction live in a small overlay, so publishing a change does not
+     * copy the whole cache.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(KDTreeIndex.EMPTY, SubtreeRoomAggregates.EMPTY, new long[0], 0,
+                Map.of(), Map.of(), 0);
+
+        final KDTreeIndex index;
+        // Room aggregates of the index's tree; room changes publish a new copy
+        final SubtreeRoomAggregates aggregates;
+        // Bit per slot, set when the node was removed or its hotel moved
+        final long[] dead;
+        final int deadCount;
+        final Map<Long, HotelSummary> hotels;
+        // Changes on top of hotels; a null value means the hotel was removed
+        final Map<Long, HotelSummary> changes;
+        final int hotelCount;
+
+        Snapshot(KDTreeIndex index, SubtreeRoomAggregates aggregates, long[] dead, int deadCount,
+                Map<Long, HotelSummary> hotels, Map<Long, HotelSummary> changes, int hotelCount) {
+            this.index = index;
+            this.aggregates = aggregates;
+            this.dead = dead;
+            this.deadCount = deadCount;
+            this.hotels = hotels;
+            this.changes = changes;
+            this.hotelCount = hotelCount;
+        }
+
+        boolean isDead(int slot) {
+            return KDTreeService.isDead(dead, slot);
+        }
+
+        HotelSummary hotel(long hotelId) {
+            // Boxed once: this runs for every candidate that makes the heap
+            Long id = hotelId;
+            if (!changes.isEmpty()) {
+                HotelSummary changed = changes.get(id);
+                if (changed != null || changes.containsKey(id)) {
+                    return changed;
+                }
+            }
+            return hotels.get(id);
+        }
+    }
+
+    /**
+     * A queued write. Every change sets where the hotel is indexed (null
+     * coordinates take it out of the tree); cache changes also replace or, when
+     * hotel is null, evict the cached hotel.
+     */
+    private record Change(long hotelId, Double latitude, Double longitude, boolean updatesCache,
+            HotelSummary hotel) {
+        boolean hasLocation() {
+            return latitude != null && longitude != null;
+        }
+    }
+
+    // A hotel's new room profile; null when it has no rooms left
+    private record RoomChange(long hotelId, HotelRoomProfile profile) {
+    }
+
+    private record ClusterCache(Snapshot snapshot, ClusterPyramid pyramid) {
+    }
+
+    @Override
     public void insertHotel(Long hotelId, Double latitude, Double longitude) {
-        lock.writeLock().lock();
+        pendingChanges.add(new Change(hotelId, latitude, longitude, false, null));
+        publishPendingChanges();
+    }
+
+    @Override
+    public void updateHotelCache(Hotel hotel) {
+        pendingChanges.add(new Change(hotel.getId(), hotel.getLatitude(), hotel.getLongitude(), true,
+                HotelSummary.of(hotel)));
+        publishPendingChanges();
+    }
+
+    @Override
+    public void removeHotel(Long hotelId) {
+        pendingChanges.add(new Change(hotelId, null, null, true, null));
+        publishPendingChanges();
+    }
+
+    @Override
+    public void updateHotels(Collection<Hotel> updated, Collection<Long> removedIds) {
+        // Holding the lock while queueing keeps other writers from publishing part of the batch
+        lockForWrite();
         try {
-            root = insertRecursive(root, hotelId, latitude, longitude, 0);
+            for (Hotel hotel : updated) {
+                pendingChanges.add(new Change(hotel.getId(), hotel.getLatitude(), hotel.getLongitude(), true,
+                        HotelSummary.of(hotel)));
+            }
+            for (Long hotelId : removedIds) {
+                pendingChanges.add(new Change(hotelId, null, null, true, null));
+            }
+            publishPendingChanges();
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
-    private KDTreeNode insertRecursive(KDTreeNode node, Long hotelId, Double latitude, Double longitude, int depth) {
-        if (node == null) {
-            return new KDTreeNode(hotelId, latitude, longitude);
+    /**
+     * Apply every queued change to the current snapshot and publish the result.
+     * When this returns, the caller's own change is visible: either this thread
+     * applied it, or another writer did before releasing the lock.
+     */
+    private void publishPendingChanges() {
+        lockForWrite();
+        try {
+            if (pendingChanges.isEmpty() && pendingRoomChanges.isEmpty()) {
+                return;
+            }
+
+            // Profiles first, so a rebuild below aggregates the new ones
+            Set<Long> roomsChanged = new HashSet<>();
+            RoomChange roomChange;
+            while ((roomChange = pendingRoomChanges.poll()) != null) {
+                if (roomChange.profile() == null) {
+                    roomProfiles.remove(roomChange.hotelId());
+                } else {
+                    roomProfiles.put(roomChange.hotelId(), roomChange.profile());
+                }
+                roomsChanged.add(roomChange.hotelId());
+            }
+
+            Snapshot current = snapshot.get();
+            KDTreeIndex index = current.index;
+            SubtreeRoomAggregates aggregates = current.aggregates;
+            Map<Long, HotelSummary> changes = new HashMap<>(current.changes);
+            int hotelCount = current.hotelCount;
+            long[] dead = current.dead;
+            int deadCount = current.deadCount;
+            // Points to append, in arrival order; a later change to the same hotel replaces its entry
+            Map<Long, double[]> newPoints = new LinkedHashMap<>();
+
+            Change change;
+            while ((change = pendingChanges.poll()) != null) {
+                long hotelId = change.hotelId();
+
+                if (change.updatesCache()) {
+                    HotelSummary previous = changes.containsKey(hotelId) ? changes.get(hotelId) : current.hotels.get(hotelId);
+                    hotelCount += (change.hotel() != null ? 1 : 0) - (previous != null ? 1 : 0);
+                    changes.put(hotelId, change.hotel());
+                }
+
+                if (newPoints.remove(hotelId) == null) {
+                    Integer slot = slotById.get(hotelId);
+                    if (slot != null) {
+                        if (change.hasLocation() && index.latitude(slot) == change.latitude()
+                                && index.longitude(slot) == change.longitude()) {
+                            // Same coordinates: the existing node stays as it is
+                            continue;
+                        }
+                        if (dead == current.dead) {
+                            dead = Arrays.copyOf(dead, (index.size() + 63) >>> 6);
+                        }
+                        dead[slot >>> 6] |= 1L << slot;
+                        deadCount++;
+                        slotById.remove(hotelId);
+                    }
+                }
+
+                if (change.hasLocation()) {
+                    newPoints.put(hotelId, new double[] { change.latitude(), change.longitude() });
+                }
+            }
+
+            if (!newPoints.isEmpty()) {
+                int count = newPoints.size();
+                long[] ids = new long[count];
+                double[] latitudes = new double[count];
+                double[] longitudes = new double[count];
+                int i = 0;
+                for (Map.Entry<Long, double[]> point : newPoints.entrySet()) {
+                    ids[i] = point.getKey();
+                    latitudes[i] = point.getValue()[0];
+                    longitudes[i] = point.getValue()[1];
+                    slotById.put(ids[i], index.size() + i);
+                    i++;
+                }
+                index = index.withInserted(ids, latitudes, longitudes, count);
+            }
+
+            if (index.size() - index.treeSize() > Math.max(MIN_UNBUILT, index.treeSize() >> 3)
+                    || deadCount > maxDeadRatio * index.size()) {
+                index = rebuildLive(index, dead);
+                aggregates = aggregatesOf(index);
+                dead = new long[0];
+                deadCount = 0;
+            } else if (!roomsChanged.isEmpty()) {
+                int[] slots = roomsChanged.stream().map(slotById::get).filter(Objects::nonNull)
+                        .mapToInt(Integer::intValue).toArray();
+                aggregates = aggregates.withProfiles(index, slots, roomProfiles::get);
+            }
+
+            Map<Long, HotelSummary> hotels = current.hotels;
+            if (changes.size() > Math.max(MIN_COMPACTION, hotels.size() >> 3)) {
+                // Fold the overlay into a new base map once it stops being small
+                Map<Long, HotelSummary> merged = new HashMap<>(hotels);
+                changes.forEach((id, hotel) -> {
+                    if (hotel == null) {
+                        merged.remove(id);
+                    } else {
+                        merged.put(id, hotel);
+                    }
+                });
+                hotels = merged;
+                changes = Map.of();
+            }
+
+            snapshot.set(new Snapshot(index, aggregates, dead, deadCount, hotels, changes, hotelCount));
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        int cd = depth % 2; // 0 for latitude, 1 for longitude
+    private void lockForWrite() {
+        if (metrics == null) {
+            writeLock.lock();
+            return;
+        }
+        long started = System.nanoTime();
+        writeLock.lock();
+        metrics.waitedForWriteLock(System.nanoTime() - started);
+    }
 
-        if (cd == 0) {
-            if (latitude < node.getLatitude()) {
-                node.setLeft(insertRecursive(node.getLeft(), hotelId, latitude, longitude, depth + 1));
-            } else {
-                node.setRight(insertRecursive(node.getRight(), hotelId, latitude, longitude, depth + 1));
+    /**
+     * Build a balanced index over the live nodes only and re-point slotById at
+     * their new slots. Caller holds writeLock.
+     */
+    private KDTreeIndex rebuildLive(KDTreeIndex index, long[] dead) {
+        long[] ids = new long[index.size()];
+        double[] latitudes = new double[index.size()];
+        double[] longitudes = new double[index.size()];
+        int n = 0;
+        for (int slot = 0; slot < index.size(); slot++) {
+            if (isDead(dead, slot)) {
+                continue;
             }
-        } else {
-            if (longitude < node.getLongitude()) {
-                node.setLeft(insertRecursive(node.getLeft(), hotelId, latitude, longitude, depth + 1));
-            } else {
-                node.setRight(insertRecursive(node.getRight(), hotelId, latitude, longitude, depth + 1));
+            ids[n] = index.id(slot);
+            latitudes[n] = index.latitude(slot);
+            longitudes[n] = index.longitude(slot);
+            n++;
+        }
+
+        KDTreeIndex rebuilt = KDTreeIndex.build(ids, latitudes, longitudes, n);
+        slotById = slotsOf(rebuilt);
+        return rebuilt;
+    }
+
+    // Caller holds writeLock, so no room profile changes while the aggregates are built
+    private SubtreeRoomAggregates aggregatesOf(KDTreeIndex index) {
+        return SubtreeRoomAggregates.build(index, roomProfiles::get);
+    }
+
+    @Override
+    public void updateRoomProfile(long hotelId, HotelRoomProfile profile) {
+        pendingRoomChanges.add(new RoomChange(hotelId, profile));
+        publishPendingChanges();
+    }
+
+    @Override
+    public void rebuildRoomProfiles(Map<Long, HotelRoomProfile> profiles) {
+        lockForWrite();
+        try {
+            roomProfiles.clear();
+            roomProfiles.putAll(profiles);
+            Snapshot current = snapshot.get();
+            snapshot.set(new Snapshot(current.index, aggregatesOf(current.index), current.dead, current.deadCount,
+                    current.hotels, current.changes, current.hotelCount));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static boolean isDead(long[] dead, int slot) {
+        int word = slot >>> 6;
+        return word < dead.length && (dead[word] & (1L << slot)) != 0;
+    }
+
+    private static Map<Long, Integer> slotsOf(KDTreeIndex index) {
+        Map<Long, Integer> slots = new HashMap<>(index.size() * 2);
+        for (int slot = 0; slot < index.size(); slot++) {
+            slots.put(index.id(slot), slot);
+        }
+        return slots;
+    }
+
+    /**
+     * Replace the whole tree and hotel cache with a balanced tree built from the
+     * given hotels. The tree is built outside the lock and published at once, so
+     * readers see either the old tree or the new one.
+     */
+    @Override
+    public void rebuild(List<HotelSummary> hotels, double[] latitudes, double[] longitudes) {
+        Map<Long, HotelSummary> newCache = new HashMap<>(hotels.size() * 2);
+        // Position of each hotel's last entry
+        Map<Long, Integer> latest = new HashMap<>(hotels.size() * 2);
+        for (int i = 0; i < hotels.size(); i++) {
+            newCache.put(hotels.get(i).id(), hotels.get(i));
+            latest.put(hotels.get(i).id(), i);
+        }
+
+        long[] ids = new long[latest.size()];
+        double[] treeLatitudes = new double[latest.size()];
+        double[] treeLongitudes = new double[latest.size()];
+        int n = 0;
+        for (Map.Entry<Long, Integer> entry : latest.entrySet()) {
+            int i = entry.getValue();
+            if (!Double.isNaN(latitudes[i]) && !Double.isNaN(longitudes[i])) {
+                ids[n] = entry.getKey();
+                treeLatitudes[n] = latitudes[i];
+                treeLongitudes[n] = longitudes[i];
+                n++;
             }
         }
 
-        return node;
+        KDTreeIndex newIndex = KDTreeIndex.build(ids, treeLatitudes, treeLongitudes, n);
+        Map<Long, Integer> newSlots = slotsOf(newIndex);
+
+        lockForWrite();
+        try {
+            slotById = newSlots;
+            snapshot.set(new Snapshot(newIndex, aggregatesOf(newIndex), new long[0], 0, newCache, Map.of(),
+                    newCache.size()));
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
+        }
     }
 
+    @Override
+    public void forEachHotel(HotelVisitor visitor) {
+        Snapshot current = snapshot.get();
+        KDTreeIndex index = current.index;
+        Map<Long, Integer> slots = new HashMap<>(index.size() * 2);
+        for (int slot = 0; slot < index.size(); slot++) {
+            if (!current.isDead(slot)) {
+                slots.put(index.id(slot), slot);
+            }
+        }
+
+        current.hotels.forEach((id, hotel) -> {
+            if (!current.changes.containsKey(id)) {
+                visit(visitor, index, hotel, slots.get(id));
+            }
+        });
+        current.changes.forEach((id, hotel) -> {
+            if (hotel != null) {
+                visit(visitor, index, hotel, slots.get(id));
+            }
+        });
+    }
+
+    private static void visit(HotelVisitor visitor, KDTreeIndex index, HotelSummary hotel, Integer slot) {
+        if (slot == null) {
+            visitor.visit(hotel, Double.NaN, Double.NaN);
+        } else {
+            visitor.visit(hotel, index.latitude(slot), index.longitude(slot));
+        }
+    }
+
+    @Override
+    public SpatialIndexStatsResponse getStats() {
+        Snapshot current = snapshot.get();
+        KDTreeIndex index = current.index;
+        return new SpatialIndexStatsResponse("kdtree", index.size(), index.size() - current.deadCount, current.deadCount,
+                index.depth(), KDTreeIndex.balancedDepth(index.size()), index.size() - index.treeSize(),
+                current.hotelCount, index.memoryBytes() + current.aggregates.memoryBytes());
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    @Override
     public List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k) {
-        lock.readLock().lock();
-        try {
-            PriorityQueue<NearbyHotelResponse> pq = new PriorityQueue<>(
-                    (a, b) -> Double.compare(b.getDistance(), a.getDistance()));
+        return findNearest(userLat, userLon, k, Double.POSITIVE_INFINITY).results();
+    }
+
+    @Override
+    public List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k, RoomFilter roomFilter,
+            LongPredicate hotelFilter) {
+        return search(snapshot.get(), userLat, userLon, k, Double.POSITIVE_INFINITY, roomFilter, hotelFilter)
+                .results();
+    }
 
-            findNearestRecursive(root, userLat, userLon, k, pq, 0);
+    @Override
+    public List<List<NearbyHotelResponse>> findNearestHotels(List<NearbyQueryRequest> queries) {
+        Snapshot current = snapshot.get();
+        return ParallelBatch.map(queries.size(), i -> {
+            NearbyQueryRequest query = queries.get(i);
+            return search(current, query.getLat(), query.getLon(), query.getK(), Double.POSITIVE_INFINITY, null, null)
+                    .results();
+        });
+    }
 
-            List<NearbyHotelResponse> result = new ArrayList<>();
-            while (!pq.isEmpty()) {
-                result.add(0, pq.poll());
+    @Override
+    public List<NearbyHotelResponse> findHotelsWithin(double userLat, double userLon, double radiusKm, int limit) {
+        return findNearest(userLat, userLon, limit, radiusKm).results();
+    }
+
+    /**
+     * Run a search for the k nearest hotels no farther than {@code maxDistanceKm}
+     * and keep its bookkeeping. Package-private so tests can check how many nodes
+     * a search visited.
+     */
+    NearestSearch findNearest(double userLat, double userLon, int k, double maxDistanceKm) {
+        return search(snapshot.get(), userLat, userLon, k, maxDistanceKm, null, null);
+    }
+
+    /**
+     * As {@link #findNearest}, keeping only hotels with a room passing the filter.
+     */
+    NearestSearch findNearest(double userLat, double userLon, int k, RoomFilter roomFilter) {
+        return search(snapshot.get(), userLat, userLon, k, Double.POSITIVE_INFINITY, roomFilter, null);
+    }
+
+    // Runs on this thread's scratch search, which stays valid until the thread's next search
+    private NearestSearch search(Snapshot current, double userLat, double userLon, int k, double maxDistanceKm,
+            RoomFilter roomFilter, LongPredicate hotelFilter) {
+        long started = metrics == null ? 0 : System.nanoTime();
+        NearestSearch search = scratchSearch.get().reset(current, userLat, userLon, k, maxDistanceKm, roomFilter,
+                hotelFilter);
+        traverse(search);
+        int nodesVisited = search.nodesVisited;
+        if (!search.resolveHotels()) {
+            // A hotel located with insertHotel but never cached made the heap; search again without such hotels
+            search.reset(current, userLat, userLon, k, maxDistanceKm, roomFilter, hotelFilter).skipUncached = true;
+            traverse(search);
+            search.resolveHotels();
+            nodesVisited += search.nodesVisited;
+        }
+        if (metrics != null) {
+            metrics.searched(System.nanoTime() - started, nodesVisited);
+        }
+        return search;
+    }
+
+    private void traverse(NearestSearch search) {
+        KDTreeIndex index = search.current.index;
+        findNearestRecursive(search, 0, index.treeSize(), 0);
+
+        // Points inserted since the last build are not in the tree yet
+        for (int slot = index.treeSize(); slot < index.size(); slot++) {
+            offer(search, slot);
+        }
+    }
+
+    /**
+     * State of one k-nearest search: the query point both as coordinates and as a
+     * unit vector, the search radius, and a max-heap of the slots and squared
+     * chords of the best k hotels found so far. Each thread reuses one instance
+     * and its heap arrays, so the traversal allocates nothing; haversine
+     * distances and responses are computed only for the final k.
+     */
+    static final class NearestSearch {
+        private Snapshot current;
+        private double userLat;
+        private double userLon;
+        private double x;
+        private double y;
+        private double z;
+        private int k;
+        private double maxDistance;
+        // Chord of maxDistance: the half-width of the cube around the query that bounds the search
+        private double maxChord;
+        // Hotels without a room passing it are skipped, and so are subtrees whose aggregates rule it out; null
+        // accepts every hotel
+        private RoomFilter roomFilter;
+        // Hotels failing it are skipped; null accepts every hotel
+        private LongPredicate hotelFilter;
+        // Whether to look up each candidate's cache entry and skip hotels that have none
+        private boolean skipUncached;
+        // Binary max-heap on squared chord, as parallel arrays grown on demand and kept across searches
+        private int[] heapSlots = new int[16];
+        private double[] heapKeys = new double[16];
+        private int heapSize;
+        // Cache entries of the heap's hotels, filled in once the traversal is done
+        private HotelSummary[] heapHotels = new HotelSummary[16];
+        private int nodesVisited;
+
+        private NearestSearch reset(Snapshot current, double userLat, double userLon, int k, double maxDistance,
+                RoomFilter roomFilter, LongPredicate hotelFilter) {
+            this.current = current;
+            this.userLat = userLat;
+            this.userLon = userLon;
+            double[] point = KDTreeIndex.toUnitVector(userLat, userLon);
+            this.x = point[0];
+            this.y = point[1];
+            this.z = point[2];
+            this.k = k;
+            this.maxDistance = maxDistance;
+            this.maxChord = Double.isInfinite(maxDistance) ? Double.POSITIVE_INFINITY : chordLength(maxDistance);
+            this.roomFilter = roomFilter;
+            this.hotelFilter = hotelFilter;
+            this.skipUncached = false;
+            this.heapSize = 0;
+            this.nodesVisited = 0;
+            return this;
+        }
+
+        int nodesVisited() {
+            return nodesVisited;
+        }
+
+        /**
+         * Look up the cached hotel of every heap entry. False when one of them was
+         * located but never cached.
+         */
+        private boolean resolveHotels() {
+            if (heapHotels.length < heapSize) {
+                heapHotels = new HotelSummary[heapSlots.length];
+            }
+            for (int i = 0; i < heapSize; i++) {
+                heapHotels[i] = current.hotel(current.index.id(heapSlots[i]));
+                if (heapHotels[i] == null) {
+                    return false;
+                }
             }
+            return true;
+        }
 
+        /**
+         * The hotels found, nearest first. Releases the snapshot and the hotel
+         * entries so an idle thread does not keep them reachable.
+         */
+        List<NearbyHotelResponse> results() {
+            KDTreeIndex index = current.index;
+            List<NearbyHotelResponse> result = new ArrayList<>(heapSize);
+            for (int i = 0; i < heapSize; i++) {
+                int slot = heapSlots[i];
+                double latitude = index.latitude(slot);
+                double longitude = index.longitude(slot);
+                // Only the winners pay for the haversine distance
+                result.add(nearbyResponse(heapHotels[i], latitude, longitude,
+                        SpatialIndex.calculateDistance(userLat, userLon, latitude, longitude)));
+            }
+            result.sort(Comparator.comparingDouble(NearbyHotelResponse::getDistance));
+            Arrays.fill(heapHotels, 0, heapSize, null);
+            heapSize = 0;
+            current = null;
+            hotelFilter = null;
             return result;
-        } finally {
-            lock.readLock().unlock();
+        }
+
+        private double axisValue(int axis) {
+            return axis == 0 ? x : axis == 1 ? y : z;
+        }
+
+        private boolean isFull() {
+            return heapSize >= k;
+        }
+
+        private double worstKey() {
+            return heapKeys[0];
+        }
+
+        private void add(int slot, double key) {
+            if (heapSize == heapSlots.length) {
+                heapSlots = Arrays.copyOf(heapSlots, heapSize * 2);
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            }
+            // Sift up from the new leaf
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heapKeys[parent] >= key) {
+                    break;
+                }
+                heapSlots[i] = heapSlots[parent];
+                heapKeys[i] = heapKeys[parent];
+                i = parent;
+            }
+            heapSlots[i] = slot;
+            heapKeys[i] = key;
+        }
+
+        private void replaceWorst(int slot, double key) {
+            // Sift down from the root
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heapKeys[child + 1] > heapKeys[child]) {
+                    child++;
+                }
+                if (heapKeys[child] <= key) {
+                    break;
+                }
+                heapSlots[i] = heapSlots[child];
+                heapKeys[i] = heapKeys[child];
+                i = child;
+            }
+            heapSlots[i] = slot;
+            heapKeys[i] = key;
         }
     }
 
-    private void findNearestRecursive(KDTreeNode node, double userLat, double userLon, int k,
-            PriorityQueue<NearbyHotelResponse> pq, int depth) {
-        if (node == null)
+    private void findNearestRecursive(NearestSearch search, int lo, int hi, int depth) {
+        if (lo >= hi)
             return;
 
-        double distance = calculateDistance(userLat, userLon, node.getLatitude(), node.getLongitude());
-        Hotel hotel = hotelCache.get(node.getHotelId());
+        int mid = (lo + hi) >>> 1;
+        if (search.roomFilter != null && !search.current.aggregates.mayMatch(mid, search.roomFilter)) {
+            // No hotel in this subtree has a matching room
+            return;
+        }
+        offer(search, mid);
 
-        if (hotel != null) {
-            NearbyHotelResponse response = new NearbyHotelResponse(
-                    node.getHotelId(),
-                    hotel.getName(),
-                    hotel.getAddress(),
-                    hotel.getContact(),
-                    hotel.getEmail(),
-                    hotel.getImageUrl(),
-                    hotel.getDescription(),
-                    hotel.getRoomsCount(),
-                    node.getLatitude(),
-                    node.getLongitude(),
-                    distance);
-
-            if (pq.size() < k) {
-                pq.offer(response);
-            } else if (distance < pq.peek().getDistance()) {
-                pq.poll();
-                pq.offer(response);
-            }
-        }
-
-        int cd = depth % 2;
-        KDTreeNode first, second;
-
-        if (cd == 0) {
-            if (userLat < node.getLatitude()) {
-                first = node.getLeft();
-                second = node.getRight();
-            } else {
-                first = node.getRight();
-                second = node.getLeft();
+        int axis = depth % KDTreeIndex.DIMENSIONS;
+        double target = search.axisValue(axis);
+        double split = search.current.index.coordinate(mid, axis);
+
+        if (target < split) {
+            findNearestRecursive(search, lo, mid, depth + 1);
+            // Check if we need to explore the other branch
+            if (shouldExploreOtherBranch(search, target - split)) {
+                findNearestRecursive(search, mid + 1, hi, depth + 1);
             }
         } else {
-            if (userLon < node.getLongitude()) {
-                first = node.getLeft();
-                second = node.getRight();
-            } else {
-                first = node.getRight();
-                second = node.getLeft();
+            findNearestRecursive(search, mid + 1, hi, depth + 1);
+            if (shouldExploreOtherBranch(search, target - split)) {
+                findNearestRecursive(search, lo, mid, depth + 1);
+            }
+        }
+    }
+
+    private void offer(NearestSearch search, int slot) {
+        search.nodesVisited++;
+        if (search.current.isDead(slot)) {
+            return;
+        }
+
+        KDTreeIndex index = search.current.index;
+        // Squared chord orders hotels exactly like great-circle distance, for a few multiplications
+        double key = index.chordSquared(slot, search.x, search.y, search.z);
+        if (search.isFull() && key >= search.worstKey()) {
+            return;
+        }
+        double maxChordSquared = search.maxChord * search.maxChord;
+        if (key >= maxChordSquared * (1 - 1e-9)) {
+            // At the edge of the search radius rounding could go either way, so ask haversine
+            if (key > maxChordSquared * (1 + 1e-9) || SpatialIndex.calculateDistance(search.userLat, search.userLon,
+                    index.latitude(slot), index.longitude(slot)) > search.maxDistance) {
+                return;
             }
         }
+        long hotelId = index.id(slot);
+        if (search.roomFilter != null && !hasMatchingRoom(hotelId, search.roomFilter)) {
+            return;
+        }
+        if (search.hotelFilter != null && !search.hotelFilter.test(hotelId)) {
+            return;
+        }
+        if (search.skipUncached && search.current.hotel(hotelId) == null) {
+            return;
+        }
 
-        findNearestRecursive(first, userLat, userLon, k, pq, depth + 1);
+        if (search.isFull()) {
+            search.replaceWorst(slot, key);
+        } else {
+            search.add(slot, key);
+        }
+    }
+
+    private boolean hasMatchingRoom(long hotelId, RoomFilter roomFilter) {
+        HotelRoomProfile profile = roomProfiles.get(hotelId);
+        return profile != null && profile.matches(roomFilter);
+    }
 
-        // Check if we need to explore the other branch
-        if (pq.size() < k || shouldExploreOtherBranch(node, userLat, userLon, depth, pq.peek().getDistance())) {
-            findNearestRecursive(second, userLat, userLon, k, pq, depth + 1);
+    /**
+     * Every point across the split plane is at least |planeOffset| away from the
+     * query in chord distance, so that side can only hold a candidate if the
+     * plane is nearer than the chord of the search radius and, once k hotels are
+     * found, than the current k-th best chord.
+     */
+    private boolean shouldExploreOtherBranch(NearestSearch search, double planeOffset) {
+        double boundSquared = search.maxChord * search.maxChord;
+        if (search.isFull()) {
+            boundSquared = Math.min(boundSquared, search.worstKey());
         }
+        return planeOffset * planeOffset < boundSquared;
     }
 
-    private boolean shouldExploreOtherBranch(KDTreeNode node, double userLat, double userLon, int depth,
-            double bestDistance) {
-        int cd = depth % 2;
-        double axisDistance;
+    // Straight-line distance through the unit sphere for a great-circle distance in km
+    private static double chordLength(double distanceKm) {
+        double angle = Math.min(distanceKm / EARTH_RADIUS_KM, Math.PI);
+        return 2 * Math.sin(angle / 2);
+    }
 
-        if (cd == 0) {
-            axisDistance = Math.abs(userLat - node.getLatitude());
-        } else {
-            axisDistance = Math.abs(userLon - node.getLongitude());
+    // Great-circle distance in km for a straight-line distance through the unit sphere
+    private static double arcLength(double chord) {
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, chord / 2));
+    }
+
+    @Override
+    public NearbyPageResponse findNearestPage(double userLat, double userLon, int pageSize, NearbyCursor after) {
+        BestFirstSearch search = bestFirst(userLat, userLon, after);
+        List<NearbyHotelResponse> hotels = new ArrayList<>(pageSize);
+        while (hotels.size() < pageSize) {
+            NearbyHotelResponse next = search.next();
+            if (next == null) {
+                return new NearbyPageResponse(hotels, null);
+            }
+            hotels.add(next);
         }
+        NearbyHotelResponse last = hotels.get(hotels.size() - 1);
+        return new NearbyPageResponse(hotels, new NearbyCursor(last.getDistance(), last.getId()).encode());
+    }
 
-        return axisDistance < bestDistance;
+    /**
+     * Start listing hotels nearest first, after the cursor if one is given.
+     * Package-private so tests can check how much of the tree a page expands.
+     */
+    BestFirstSearch bestFirst(double userLat, double userLon, NearbyCursor after) {
+        return new BestFirstSearch(snapshot.get(), userLat, userLon, after);
     }
 
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        // Haversine formula for more accurate distance calculation
-        final double R = 6371; // Earth's radius in kilometers
+    /**
+     * Incremental nearest-neighbour search. A priority queue holds subtrees,
+     * keyed by a lower bound on the distance of anything inside their bounding
+     * box, and hotels, keyed by their distance. Whatever is popped next is
+     * either expanded or, for a hotel, is the next nearest one, so each result
+     * costs O(log n) queue operations.
+     *
+     * Resuming after a cursor skips subtrees whose farthest corner is nearer
+     * than the cursor, so only the shell around the cursor distance is walked
+     * again.
+     */
+    static final class BestFirstSearch {
+        // Subtree bounds are loosened by this much so rounding never lets a bound pass a hotel inside
+        private static final double BOUND_SLACK = 1e-9;
+        private static final double BOUND_SLACK_KM = 1e-6;
+
+        /**
+         * A subtree [lo, hi) with its box as min x, y, z then max x, y, z, or,
+         * when slot >= 0, one hotel.
+         */
+        private record Pending(double distance, int slot, long hotelId, int lo, int hi, int depth, double[] box) {
+        }
+
+        // Nearest first; on equal keys subtrees before hotels, which may hide a hotel with a smaller id
+        private static final Comparator<Pending> ORDER = Comparator.comparingDouble(Pending::distance)
+                .thenComparingInt(pending -> pending.slot() < 0 ? 0 : 1)
+                .thenComparingLong(Pending::hotelId);
 
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
+        private final Snapshot current;
+        private final double userLat;
+        private final double userLon;
+        private final double[] point;
+        private final NearbyCursor after;
+        private final PriorityQueue<Pending> queue = new PriorityQueue<>(ORDER);
+        private int expanded;
 
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                        * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        private BestFirstSearch(Snapshot current, double userLat, double userLon, NearbyCursor after) {
+            this.current = current;
+            this.userLat = userLat;
+            this.userLon = userLon;
+            this.point = KDTreeIndex.toUnitVector(userLat, userLon);
+            this.after = after;
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+            KDTreeIndex index = current.index;
+            pushSubtree(0, index.treeSize(), 0, new double[] { -1, -1, -1, 1, 1, 1 });
+            // Points inserted since the last build are not in the tree yet
+            for (int slot = index.treeSize(); slot < index.size(); slot++) {
+                pushHotel(slot);
+            }
+        }
+
+        int expanded() {
+            return expanded;
+        }
 
-        return R * c;
+        /**
+         * The next nearest hotel, or null when there are no more.
+         */
+        NearbyHotelResponse next() {
+            KDTreeIndex index = current.index;
+            Pending pending;
+            while ((pending = queue.poll()) != null) {
+                if (pending.slot() >= 0) {
+                    HotelSummary hotel = current.hotel(pending.hotelId());
+                    if (hotel != null) {
+                        return nearbyResponse(hotel, index.latitude(pending.slot()), index.longitude(pending.slot()),
+                                pending.distance());
+                    }
+                    continue;
+                }
+
+                expanded++;
+                int mid = (pending.lo() + pending.hi()) >>> 1;
+                int axis = pending.depth() % KDTreeIndex.DIMENSIONS;
+                double split = index.coordinate(mid, axis);
+                pushHotel(mid);
+
+                // The left subtree holds values <= split, the right one values >= split
+                double[] left = pending.box().clone();
+                left[axis + KDTreeIndex.DIMENSIONS] = split;
+                pushSubtree(pending.lo(), mid, pending.depth() + 1, left);
+                double[] right = pending.box().clone();
+                right[axis] = split;
+                pushSubtree(mid + 1, pending.hi(), pending.depth() + 1, right);
+            }
+            return null;
+        }
+
+        private void pushHotel(int slot) {
+            if (current.isDead(slot)) {
+                return;
+            }
+            KDTreeIndex index = current.index;
+            double distance = SpatialIndex.calculateDistance(userLat, userLon, index.latitude(slot),
+                    index.longitude(slot));
+            long hotelId = index.id(slot);
+            if (after == null || after.isBefore(distance, hotelId)) {
+                queue.add(new Pending(distance, slot, hotelId, 0, 0, 0, null));
+            }
+        }
+
+        private void pushSubtree(int lo, int hi, int depth, double[] box) {
+            if (lo >= hi) {
+                return;
+            }
+            double nearSquared = 0;
+            double farSquared = 0;
+            for (int axis = 0; axis < KDTreeIndex.DIMENSIONS; axis++) {
+                double min = box[axis];
+                double max = box[axis + KDTreeIndex.DIMENSIONS];
+                double gap = Math.max(0, Math.max(min - point[axis], point[axis] - max));
+                nearSquared += gap * gap;
+                double reach = Math.max(point[axis] - min, max - point[axis]);
+                farSquared += reach * reach;
+            }
+            if (after != null
+                    && arcLength(Math.sqrt(farSquared)) * (1 + BOUND_SLACK) + BOUND_SLACK_KM < after.distanceKm()) {
+                // Everything in here was listed before the cursor
+                return;
+            }
+            double nearest = Math.max(0, arcLength(Math.sqrt(nearSquared)) * (1 - BOUND_SLACK) - BOUND_SLACK_KM);
+            queue.add(new Pending(nearest, -1, 0, lo, hi, depth, box));
+        }
     }
 
-    public void updateHotelCache(Hotel hotel) {
-        lock.writeLock().lock();
-        try {
-            hotelCache.put(hotel.getId(), hotel);
-            if (hotel.getLatitude() != null && hotel.getLongitude() != null) {
-                insertHotel(hotel.getId(), hotel.getLatitude(), hotel.getLongitude());
+    private static NearbyHotelResponse nearbyResponse(HotelSummary hotel, double latitude, double longitude,
+            double distance) {
+        return new NearbyHotelResponse(
+                hotel.id(),
+                hotel.name(),
+                hotel.address(),
+                hotel.contact(),
+                hotel.email(),
+                hotel.imageUrl(),
+                hotel.description(),
+                hotel.roomsCount(),
+                latitude,
+                longitude,
+                distance);
+    }
+
+    @Override
+    public List<MapHotelResponse> findHotelsInBox(double south, double west, double north, double east) {
+        return findHotelsInBox(snapshot.get(), new GeoBox(south, west, north, east));
+    }
+
+    private List<MapHotelResponse> findHotelsInBox(Snapshot current, GeoBox box) {
+        List<MapHotelResponse> result = new ArrayList<>();
+        KDTreeIndex index = current.index;
+
+        findInBoxRecursive(current, box, box.unitVectorBounds(), 0, index.treeSize(), 0, result);
+        for (int slot = index.treeSize(); slot < index.size(); slot++) {
+            offerInBox(current, box, slot, result);
+        }
+        return result;
+    }
+
+    @Override
+    public ClusterPyramid clusterPyramid() {
+        Snapshot current = snapshot.get();
+        ClusterCache cached = clusterCache.get();
+        if (cached != null && cached.snapshot() == current) {
+            return cached.pyramid();
+        }
+
+        KDTreeIndex index = current.index;
+        long[] ids = new long[index.size()];
+        double[] latitudes = new double[index.size()];
+        double[] longitudes = new double[index.size()];
+        int n = 0;
+        for (int slot = 0; slot < index.size(); slot++) {
+            if (current.isDead(slot)) {
+                continue;
             }
-        } finally {
-            lock.writeLock().unlock();
+            ids[n] = index.id(slot);
+            latitudes[n] = index.latitude(slot);
+            longitudes[n] = index.longitude(slot);
+            n++;
         }
+
+        ClusterPyramid pyramid = ClusterPyramid.build(ids, latitudes, longitudes, n);
+        clusterCache.set(new ClusterCache(current, pyramid));
+        return pyramid;
     }
 
-    public void removeHotel(Long hotelId) {
-        lock.writeLock().lock();
-        try {
-            hotelCache.remove(hotelId);
-            // Note: Removing from K-D tree is complex, so we'll rebuild when needed
-            // For production, consider implementing proper removal or periodic rebuilds
-        } finally {
-            lock.writeLock().unlock();
+    private void findInBoxRecursive(Snapshot current, GeoBox box, double[] bounds, int lo, int hi, int depth,
+            List<MapHotelResponse> result) {
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        offerInBox(current, box, mid, result);
+
+        // The left subtree holds values <= split on this axis, the right subtree values >= split
+        int axis = depth % KDTreeIndex.DIMENSIONS;
+        double split = current.index.coordinate(mid, axis);
+        if (bounds[axis] <= split) {
+            findInBoxRecursive(current, box, bounds, lo, mid, depth + 1, result);
+        }
+        if (bounds[axis + KDTreeIndex.DIMENSIONS] >= split) {
+            findInBoxRecursive(current, box, bounds, mid + 1, hi, depth + 1, result);
+        }
+    }
+
+    private void offerInBox(Snapshot current, GeoBox box, int slot, List<MapHotelResponse> result) {
+        if (current.isDead(slot)) {
+            return;
+        }
+        KDTreeIndex index = current.index;
+        double latitude = index.latitude(slot);
+        double longitude = index.longitude(slot);
+        if (!box.contains(latitude, longitude)) {
+            return;
+        }
+        HotelSummary hotel = current.hotel(index.id(slot));
+        if (hotel != null) {
+            result.add(new MapHotelResponse(hotel.id(), hotel.name(), hotel.imageUrl(), latitude, longitude));
         }
     }
 }
@@ -0,0 +1,252 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.KDTreeIndex;
+import com.dailycodework.lakesidehotel.response.NearbyCacheStatsResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache in front of {@link SpatialIndex#findNearestHotels} for the hot spots
+ * of nearby traffic: airports, stations, city centres.
+ *
+ * Query points are snapped to cells about {@code spatial.cache.cellMeters}
+ * wide. For each (cell, k) the cache keeps every hotel that can be among the k
+ * nearest to some point of the cell: those within d + 2h of the cell centre,
+ * where d is the centre's k-th nearest distance and h is the distance from the
+ * centre to the cell's farthest corner. A hit ranks those candidates for the
+ * actual query point, so cached answers are exact, not approximate.
+ *
+ * Entries remember the {@link SpatialIndex#version()} they were built at and
+ * are dropped once it moves on. At most {@code spatial.cache.maxEntries} are
+ * kept, evicting the least recently used.
+ */
+@Service
+public class NearbyResultCache {
+
+    private static final double METERS_PER_DEGREE = Math.PI * SpatialIndex.EARTH_RADIUS_KM * 1000 / 180;
+    // Independently locked LRU maps; a key's segment is picked by its hash
+    private static final int SEGMENTS = 16;
+    // Cells holding more than this many candidates per requested hotel are served uncached
+    private static final int MAX_CANDIDATES_PER_RESULT = 32;
+
+    private final SpatialIndex spatialIndex;
+    private final double cellMeters;
+    private final int maxEntries;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    public NearbyResultCache(SpatialIndex spatialIndex,
+            @Value("${spatial.cache.cellMeters:100}") double cellMeters,
+            @Value("${spatial.cache.maxEntries:10000}") int maxEntries) {
+        this.spatialIndex = spatialIndex;
+        this.cellMeters = cellMeters;
+        this.maxEntries = maxEntries;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS));
+        }
+    }
+
+    private record CellKey(long row, long column, int k) {
+    }
+
+    /**
+     * Hotels that may be among the k nearest from anywhere in the cell, with
+     * their unit vectors at 3*i .. 3*i + 2. Null candidates mark a cell too dense
+     * to be worth caching.
+     */
+    private record Entry(long version, NearbyHotelResponse[] candidates, double[] xyz) {
+    }
+
+    private final class Segment extends LinkedHashMap<CellKey, Entry> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CellKey, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k) {
+        if (cellMeters <= 0 || maxEntries <= 0) {
+            return spatialIndex.findNearestHotels(userLat, userLon, k);
+        }
+
+        double latitudeStep = cellMeters / METERS_PER_DEGREE;
+        long row = (long) Math.floor((userLat + 90) / latitudeStep);
+        double longitudeStep = longitudeStep(row, latitudeStep);
+        long column = (long) Math.floor((userLon + 180) / longitudeStep);
+        CellKey key = new CellKey(row, column, k);
+        Segment segment = segments[Math.floorMod(key.hashCode(), SEGMENTS)];
+
+        long version = spatialIndex.version();
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null && entry.version() == version) {
+            if (entry.candidates() == null) {
+                bypassed.increment();
+                return spatialIndex.findNearestHotels(userLat, userLon, k);
+            }
+            hits.increment();
+            return rank(entry, userLat, userLon, k);
+        }
+
+        misses.increment();
+        if (entry != null) {
+            staleMisses.increment();
+        }
+        entry = load(version, row, column, latitudeStep, longitudeStep, k);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+        if (entry.candidates() == null) {
+            return spatialIndex.findNearestHotels(userLat, userLon, k);
+        }
+        return rank(entry, userLat, userLon, k);
+    }
+
+    // Cells keep roughly square on the ground: fewer, wider columns towards the poles
+    private static double longitudeStep(long row, double latitudeStep) {
+        double centreLatitude = Math.min(90, -90 + (row + 0.5) * latitudeStep);
+        double columns = Math.max(1, Math.floor(360 * Math.cos(Math.toRadians(centreLatitude)) / latitudeStep));
+        return 360 / columns;
+    }
+
+    private Entry load(long version, long row, long column, double latitudeStep, double longitudeStep, int k) {
+        double south = Math.max(-90, -90 + row * latitudeStep);
+        double north = Math.min(90, -90 + (row + 1) * latitudeStep);
+        double west = -180 + column * longitudeStep;
+        double east = Math.min(180, west + longitudeStep);
+        double centreLat = (south + north) / 2;
+        double centreLon = (west + east) / 2;
+        double halfDiagonal = 0;
+        for (double latitude : new double[] { south, north }) {
+            for (double longitude : new double[] { west, east }) {
+                halfDiagonal = Math.max(halfDiagonal,
+                        SpatialIndex.calculateDistance(centreLat, centreLon, latitude, longitude));
+            }
+        }
+
+        List<NearbyHotelResponse> nearest = spatialIndex.findNearestHotels(centreLat, centreLon, k);
+        List<NearbyHotelResponse> candidates = nearest;
+        if (nearest.size() == k) {
+            // Slack keeps a hotel exactly on the bound from being lost to rounding
+            double radius = nearest.get(k - 1).getDistance() + 2 * halfDiagonal + 1e-6;
+            int limit = MAX_CANDIDATES_PER_RESULT * k;
+            candidates = spatialIndex.findHotelsWithin(centreLat, centreLon, radius, limit + 1);
+            if (candidates.size() > limit) {
+                return new Entry(version, null, null);
+            }
+        }
+
+        NearbyHotelResponse[] hotels = candidates.toArray(new NearbyHotelResponse[0]);
+        double[] xyz = new double[3 * hotels.length];
+        for (int i = 0; i < hotels.length; i++) {
+            double[] point = KDTreeIndex.toUnitVector(hotels[i].getLatitude(), hotels[i].getLongitude());
+            System.arraycopy(point, 0, xyz, 3 * i, 3);
+        }
+        return new Entry(version, hotels, xyz);
+    }
+
+    /**
+     * The k candidates nearest to the query. Candidates are compared by squared
+     * chord, which orders them like great-circle distance; only the winners get
+     * the haversine distance.
+     */
+    private static List<NearbyHotelResponse> rank(Entry entry, double userLat, double userLon, int k) {
+        double[] point = KDTreeIndex.toUnitVector(userLat, userLon);
+        double[] xyz = entry.xyz();
+        int count = entry.candidates().length;
+        int size = Math.min(k, count);
+
+        // Max-heap of the best candidates so far, by squared chord
+        int[] heap = new int[size];
+        double[] keys = new double[size];
+        int heapSize = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = xyz[3 * i] - point[0];
+            double dy = xyz[3 * i + 1] - point[1];
+            double dz = xyz[3 * i + 2] - point[2];
+            double key = dx * dx + dy * dy + dz * dz;
+            if (heapSize < size) {
+                int at = heapSize++;
+                while (at > 0 && keys[(at - 1) >>> 1] < key) {
+                    heap[at] = heap[(at - 1) >>> 1];
+                    keys[at] = keys[(at - 1) >>> 1];
+                    at = (at - 1) >>> 1;
+                }
+                heap[at] = i;
+                keys[at] = key;
+            } else if (key < keys[0]) {
+                int at = 0;
+                while (2 * at + 1 < heapSize) {
+                    int child = 2 * at + 1;
+                    if (child + 1 < heapSize && keys[child + 1] > keys[child]) {
+                        child++;
+                    }
+                    if (keys[child] <= key) {
+                        break;
+                    }
+                    heap[at] = heap[child];
+                    keys[at] = keys[child];
+                    at = child;
+                }
+                heap[at] = i;
+                keys[at] = key;
+            }
+        }
+
+        List<NearbyHotelResponse> result = new ArrayList<>(size);
+        for (int i = 0; i < heapSize; i++) {
+            NearbyHotelResponse hotel = entry.candidates()[heap[i]];
+            result.add(new NearbyHotelResponse(
+                    hotel.getId(),
+                    hotel.getName(),
+                    hotel.getAddress(),
+                    hotel.getContact(),
+                    hotel.getEmail(),
+                    hotel.getImageUrl(),
+                    hotel.getDescription(),
+                    hotel.getRoomsCount(),
+                    hotel.getLatitude(),
+                    hotel.getLongitude(),
+                    SpatialIndex.calculateDistance(userLat, userLon, hotel.getLatitude(), hotel.getLongitude())));
+        }
+        result.sort(Comparator.comparingDouble(NearbyHotelResponse::getDistance));
+        return result;
+    }
+
+    public NearbyCacheStatsResponse getStats() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long bypassCount = bypassed.sum();
+        long lookups = hitCount + missCount + bypassCount;
+        return new NearbyCacheStatsResponse(cellMeters, size, maxEntries, hitCount, missCount, staleMisses.sum(),
+                evictions.sum(), bypassCount, lookups == 0 ? 0 : (double) hitCount / lookups);
+    }
+}
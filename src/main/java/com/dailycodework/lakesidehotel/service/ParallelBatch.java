@@ -0,0 +1,64 @@
+package com.dailycodework.lakesidehotel.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * Evaluates independent queries of a batch on the common fork-join pool and
+ * returns their results in query order.
+ */
+final class ParallelBatch {
+
+    // Queries per fork-join leaf task; smaller batches run on the calling thread
+    static final int QUERIES_PER_TASK = 8;
+
+    private ParallelBatch() {
+    }
+
+    static <T> List<T> map(int count, IntFunction<T> query) {
+        Object[] results = new Object[count];
+        if (count <= QUERIES_PER_TASK) {
+            for (int i = 0; i < count; i++) {
+                results[i] = query.apply(i);
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new BatchTask(query, results, 0, count));
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> list = (List<T>) Arrays.asList(results);
+        return list;
+    }
+
+    private static class BatchTask extends RecursiveAction {
+        private final IntFunction<?> query;
+        private final Object[] results;
+        private final int lo;
+        private final int hi;
+
+        BatchTask(IntFunction<?> query, Object[] results, int lo, int hi) {
+            this.query = query;
+            this.results = results;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= QUERIES_PER_TASK) {
+                for (int i = lo; i < hi; i++) {
+                    results[i] = query.apply(i);
+                }
+                return;
+            }
+
+            // Each half writes its own slice of results
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new BatchTask(query, results, lo, mid),
+                    new BatchTask(query, results, mid, hi));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.HotelRoomProfile;
+import com.dailycodework.lakesidehotel.model.Room;
+import com.dailycodework.lakesidehotel.model.RoomAttributeCodes;
+import com.dailycodework.lakesidehotel.model.RoomFilter;
+import com.dailycodework.lakesidehotel.repository.RoomRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Keeps the room profiles the spatial index filters on (price, type and
+ * amenities of every room) in step with the rooms, and turns the room filter
+ * of a nearby request into a {@link RoomFilter}.
+ */
+@Service
+@RequiredArgsConstructor
+public class RoomAttributeService {
+
+    private final RoomRepository roomRepository;
+    private final SpatialIndex spatialIndex;
+    private final RoomAttributeCodes codes = new RoomAttributeCodes();
+
+    /**
+     * Replace the profiles of every hotel with the given rooms. Rooms without a
+     * hotel are left out.
+     */
+    public void rebuild(Collection<Room> rooms) {
+        Map<Long, List<Room>> byHotel = new HashMap<>();
+        for (Room room : rooms) {
+            if (room.getHotel() != null && room.getHotel().getId() != null) {
+                byHotel.computeIfAbsent(room.getHotel().getId(), id -> new ArrayList<>()).add(room);
+            }
+        }
+        Map<Long, HotelRoomProfile> profiles = new HashMap<>(byHotel.size() * 2);
+        byHotel.forEach((hotelId, hotelRooms) -> profiles.put(hotelId, HotelRoomProfile.of(hotelRooms, codes)));
+        spatialIndex.rebuildRoomProfiles(profiles);
+    }
+
+    /**
+     * Read the rooms of the hotel again after one of them was added, changed or
+     * removed.
+     */
+    public void hotelRoomsChanged(Long hotelId) {
+        if (hotelId == null) {
+            return;
+        }
+        List<Room> rooms = roomRepository.findByHotelId(hotelId);
+        spatialIndex.updateRoomProfile(hotelId, rooms.isEmpty() ? null : HotelRoomProfile.of(rooms, codes));
+    }
+
+    public void hotelRemoved(Long hotelId) {
+        spatialIndex.updateRoomProfile(hotelId, null);
+    }
+
+    /**
+     * Filter for rooms of any of the types, at most maxPrice a night and with
+     * all of the amenities; null when no condition is given. Names no room uses
+     * yield a filter nothing passes.
+     */
+    public RoomFilter filterFor(List<String> roomTypes, BigDecimal maxPrice, List<String> amenities) {
+        boolean anyType = roomTypes == null || roomTypes.isEmpty();
+        boolean anyAmenity = amenities == null || amenities.isEmpty();
+        if (anyType && maxPrice == null && anyAmenity) {
+            return null;
+        }
+        int typeMask = anyType ? 0 : codes.knownRoomTypeMask(roomTypes);
+        long amenityMask = anyAmenity ? 0 : codes.knownAmenityMask(amenities);
+        if (typeMask == -1 || amenityMask == -1) {
+            return RoomFilter.NOTHING;
+        }
+        return new RoomFilter(typeMask, maxPrice == null ? Double.POSITIVE_INFINITY : maxPrice.doubleValue(),
+                amenityMask, null);
+    }
+}
@@ -0,0 +1,496 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.BookedRoom;
+import com.dailycodework.lakesidehotel.model.Room;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory booking calendar of every room, so "is this room free", "does
+ * this hotel have a free room" and "which rooms are free" for some dates are
+ * answered without a database query.
+ *
+ * A stay occupies the nights [checkIn, checkOut): a booking ending on a day
+ * does not conflict with one starting that day. Each room keeps a bitmap of
+ * its booked nights over a rolling window of {@code availability.calendarDays}
+ * from today, so a stay inside the window is checked with a masked test of a
+ * few words. Stays reaching outside it fall back to the room's bookings,
+ * sorted by check-in with a running maximum of check-out days, and one binary
+ * search. Room entries are immutable and replaced on every change, so readers
+ * never lock. Rebuilds and window moves fill new maps and publish them in one
+ * volatile write, so a reader sees every room in the old calendar or every
+ * room in the new one.
+ *
+ * Cancelled bookings are left out, and stays that are over are dropped when
+ * the window rolls, so booking admission costs O(log n) in the room's
+ * current bookings rather than a scan of its history.
+ */
+@Service
+public class RoomAvailabilityService {
+
+    private static final HotelRooms NO_ROOMS = new HotelRooms(new RoomBookings[0]);
+
+    // Replaced whole by rebuilds and window moves; single room changes update its maps in place
+    private volatile Calendar calendar = new Calendar(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+    // Nights covered by the bitmaps, from the window start; rounded up to whole words
+    @Value("${availability.calendarDays:365}")
+    private int calendarDays = 365;
+    // Epoch day of the first night in the bitmaps; only changed by writers
+    private int windowStart = day(LocalDate.now());
+
+    /**
+     * Bookings of one room as epoch days, sorted by check-in. maxCheckOuts[i] is
+     * the latest check-out among bookings 0..i. Bit n of nights is set when
+     * night windowStart + n is booked.
+     */
+    private record RoomBookings(long roomId, Long hotelId, String roomType, int[] checkIns, int[] checkOuts,
+            int[] maxCheckOuts, int windowStart, long[] nights) {
+
+        static RoomBookings of(long roomId, Long hotelId, String roomType, int[] checkIns, int[] checkOuts,
+                int windowStart, int windowDays) {
+            int[] maxCheckOuts = new int[checkOuts.length];
+            int max = Integer.MIN_VALUE;
+            long[] nights = new long[(windowDays + 63) >>> 6];
+            int windowEnd = windowStart + (nights.length << 6);
+            for (int i = 0; i < checkOuts.length; i++) {
+                max = Math.max(max, checkOuts[i]);
+                maxCheckOuts[i] = max;
+                int from = Math.max(checkIns[i], windowStart);
+                int to = Math.min(checkOuts[i], windowEnd);
+                if (from < to) {
+                    setRange(nights, from - windowStart, to - windowStart);
+                }
+            }
+            return new RoomBookings(roomId, hotelId, typeKey(roomType),
+                    checkIns, checkOuts, maxCheckOuts, windowStart, nights);
+        }
+
+        boolean isFree(int checkIn, int checkOut) {
+            int from = checkIn - windowStart;
+            int to = checkOut - windowStart;
+            if (from >= 0 && to <= nights.length << 6) {
+                return isClear(nights, from, to);
+            }
+            // Bookings starting before our check-out are [0, starting); one of them must end after our check-in
+            int starting = firstCheckInFrom(checkOut);
+            return starting == 0 || maxCheckOuts[starting - 1] <= checkIn;
+        }
+
+        // Index of the first booking checking in on or after the day
+        int firstCheckInFrom(int day) {
+            int lo = 0;
+            int hi = checkIns.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (checkIns[mid] < day) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        RoomBookings with(int checkIn, int checkOut) {
+            int at = firstCheckInFrom(checkIn);
+            return withBookings(insert(checkIns, at, checkIn), insert(checkOuts, at, checkOut));
+        }
+
+        RoomBookings without(int checkIn, int checkOut) {
+            for (int i = firstCheckInFrom(checkIn); i < checkIns.length && checkIns[i] == checkIn; i++) {
+                if (checkOuts[i] == checkOut) {
+                    return withBookings(remove(checkIns, i), remove(checkOuts, i));
+                }
+            }
+            return this;
+        }
+
+        private RoomBookings withBookings(int[] newCheckIns, int[] newCheckOuts) {
+            return of(roomId, hotelId, roomType, newCheckIns, newCheckOuts, windowStart, nights.length << 6);
+        }
+
+        RoomBookings in(Long newHotelId, String newRoomType) {
+            return of(roomId, newHotelId, newRoomType, checkIns, checkOuts, windowStart, nights.length << 6);
+        }
+
+        RoomBookings inWindow(int newWindowStart, int windowDays) {
+            return of(roomId, hotelId, roomType, checkIns, checkOuts, newWindowStart, windowDays);
+        }
+
+        // Without the bookings that checked out on or before the day, which no later stay can clash with
+        RoomBookings endingAfter(int day) {
+            int kept = 0;
+            for (int checkOut : checkOuts) {
+                if (checkOut > day) {
+                    kept++;
+                }
+            }
+            if (kept == checkOuts.length) {
+                return this;
+            }
+            int[] keptCheckIns = new int[kept];
+            int[] keptCheckOuts = new int[kept];
+            for (int i = 0, k = 0; i < checkOuts.length; i++) {
+                if (checkOuts[i] > day) {
+                    keptCheckIns[k] = checkIns[i];
+                    keptCheckOuts[k++] = checkOuts[i];
+                }
+            }
+            return withBookings(keptCheckIns, keptCheckOuts);
+        }
+    }
+
+    /**
+     * Every tracked room, with or without a hotel, and the rooms of each hotel
+     * for the hotel-level checks of spatial searches.
+     */
+    private record Calendar(Map<Long, RoomBookings> roomsById, Map<Long, HotelRooms> roomsByHotel) {
+    }
+
+    private record HotelRooms(RoomBookings[] rooms) {
+
+        int indexOf(long roomId) {
+            for (int i = 0; i < rooms.length; i++) {
+                if (rooms[i].roomId() == roomId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        HotelRooms with(RoomBookings room) {
+            int i = indexOf(room.roomId());
+            RoomBookings[] newRooms = Arrays.copyOf(rooms, i < 0 ? rooms.length + 1 : rooms.length);
+            newRooms[i < 0 ? rooms.length : i] = room;
+            return new HotelRooms(newRooms);
+        }
+
+        HotelRooms without(long roomId) {
+            int i = indexOf(roomId);
+            if (i < 0) {
+                return this;
+            }
+            RoomBookings[] newRooms = new RoomBookings[rooms.length - 1];
+            System.arraycopy(rooms, 0, newRooms, 0, i);
+            System.arraycopy(rooms, i + 1, newRooms, i, rooms.length - i - 1);
+            return new HotelRooms(newRooms);
+        }
+    }
+
+    /**
+     * Replace every calendar with the given rooms and bookings.
+     */
+    public synchronized void rebuild(Collection<Room> rooms, Collection<BookedRoom> bookings) {
+        Map<Long, List<BookedRoom>> bookingsByRoom = new HashMap<>();
+        for (BookedRoom booking : bookings) {
+            if (booking.getRoom() != null && booking.getCheckInDate() != null && booking.getCheckOutDate() != null
+                    && booking.holdsRoom()) {
+                bookingsByRoom.computeIfAbsent(booking.getRoom().getId(), id -> new ArrayList<>()).add(booking);
+            }
+        }
+
+        Map<Long, RoomBookings> byId = new HashMap<>();
+        for (Room room : rooms) {
+            List<BookedRoom> roomBookings = bookingsByRoom.getOrDefault(room.getId(), List.of()).stream()
+                    .sorted(Comparator.comparing(BookedRoom::getCheckInDate))
+                    .toList();
+            int[] checkIns = new int[roomBookings.size()];
+            int[] checkOuts = new int[roomBookings.size()];
+            for (int i = 0; i < roomBookings.size(); i++) {
+                checkIns[i] = day(roomBookings.get(i).getCheckInDate());
+                checkOuts[i] = day(roomBookings.get(i).getCheckOutDate());
+            }
+            byId.put(room.getId(), RoomBookings.of(room.getId(), hotelIdOf(room), room.getRoomType(), checkIns,
+                    checkOuts, windowStart, calendarDays));
+        }
+        replaceAll(byId.values());
+    }
+
+    private void replaceAll(Collection<RoomBookings> rooms) {
+        Map<Long, List<RoomBookings>> byHotel = new HashMap<>();
+        for (RoomBookings room : rooms) {
+            if (room.hotelId() != null) {
+                byHotel.computeIfAbsent(room.hotelId(), id -> new ArrayList<>()).add(room);
+            }
+        }
+
+        Map<Long, RoomBookings> roomsById = new ConcurrentHashMap<>();
+        Map<Long, HotelRooms> roomsByHotel = new ConcurrentHashMap<>();
+        for (RoomBookings room : rooms) {
+            roomsById.put(room.roomId(), room);
+        }
+        byHotel.forEach((hotelId, hotelRooms) -> roomsByHotel.put(hotelId,
+                new HotelRooms(hotelRooms.toArray(new RoomBookings[0]))));
+        calendar = new Calendar(roomsById, roomsByHotel);
+    }
+
+    /**
+     * Start the bitmaps at today's night, so they keep covering the next
+     * {@code availability.calendarDays} nights, and forget the stays that are
+     * over, so the booking arrays only hold stays new ones can clash with.
+     */
+    @Scheduled(cron = "${availability.rollCron:0 5 0 * * *}")
+    public synchronized void rollWindow() {
+        windowStart = day(LocalDate.now());
+        Collection<RoomBookings> rooms = calendar.roomsById().values();
+        List<RoomBookings> current = new ArrayList<>(rooms.size());
+        for (RoomBookings room : rooms) {
+            current.add(room.inWindow(windowStart, calendarDays).endingAfter(windowStart));
+        }
+        replaceAll(current);
+    }
+
+    /**
+     * Rebuild every bitmap over the window starting at the given night.
+     */
+    synchronized void moveWindow(LocalDate start, int days) {
+        windowStart = day(start);
+        calendarDays = days;
+        Collection<RoomBookings> rooms = calendar.roomsById().values();
+        List<RoomBookings> moved = new ArrayList<>(rooms.size());
+        for (RoomBookings room : rooms) {
+            moved.add(room.inWindow(windowStart, calendarDays));
+        }
+        replaceAll(moved);
+    }
+
+    /**
+     * Track a new room, or follow a room's change of hotel or type with its
+     * bookings.
+     */
+    public synchronized void addRoom(Room room) {
+        Long hotelId = hotelIdOf(room);
+        RoomBookings previous = calendar.roomsById().get(room.getId());
+        RoomBookings bookings = previous == null
+                ? RoomBookings.of(room.getId(), hotelId, room.getRoomType(), new int[0], new int[0], windowStart,
+                        calendarDays)
+                : previous.in(hotelId, room.getRoomType());
+        if (previous != null && !Objects.equals(previous.hotelId(), hotelId)) {
+            removeFromHotel(previous);
+        }
+        put(bookings);
+    }
+
+    public synchronized void removeRoom(Long roomId) {
+        RoomBookings removed = calendar.roomsById().remove(roomId);
+        if (removed != null) {
+            removeFromHotel(removed);
+        }
+    }
+
+    public synchronized void removeHotel(Long hotelId) {
+        HotelRooms removed = calendar.roomsByHotel().remove(hotelId);
+        if (removed != null) {
+            for (RoomBookings room : removed.rooms()) {
+                calendar.roomsById().remove(room.roomId());
+            }
+        }
+    }
+
+    public synchronized void addBooking(Long roomId, LocalDate checkIn, LocalDate checkOut) {
+        updateRoom(roomId, room -> room.with(day(checkIn), day(checkOut)));
+    }
+
+    public synchronized void removeBooking(Long roomId, LocalDate checkIn, LocalDate checkOut) {
+        updateRoom(roomId, room -> room.without(day(checkIn), day(checkOut)));
+    }
+
+    private void updateRoom(Long roomId, UnaryOperator<RoomBookings> change) {
+        RoomBookings room = calendar.roomsById().get(roomId);
+        if (room != null) {
+            put(change.apply(room));
+        }
+    }
+
+    private void put(RoomBookings room) {
+        Map<Long, HotelRooms> roomsByHotel = calendar.roomsByHotel();
+        calendar.roomsById().put(room.roomId(), room);
+        if (room.hotelId() != null) {
+            roomsByHotel.put(room.hotelId(), roomsByHotel.getOrDefault(room.hotelId(), NO_ROOMS).with(room));
+        }
+    }
+
+    private void removeFromHotel(RoomBookings room) {
+        if (room.hotelId() == null) {
+            return;
+        }
+        Map<Long, HotelRooms> roomsByHotel = calendar.roomsByHotel();
+        HotelRooms remaining = roomsByHotel.getOrDefault(room.hotelId(), NO_ROOMS).without(room.roomId());
+        if (remaining.rooms().length == 0) {
+            roomsByHotel.remove(room.hotelId());
+        } else {
+            roomsByHotel.put(room.hotelId(), remaining);
+        }
+    }
+
+    /**
+     * Whether at least one room of the hotel is free for every night of
+     * [checkIn, checkOut). Stops at the first free room.
+     */
+    public boolean hasAvailableRoom(long hotelId, LocalDate checkIn, LocalDate checkOut) {
+        HotelRooms hotel = calendar.roomsByHotel().get(hotelId);
+        if (hotel == null) {
+            return false;
+        }
+        int from = day(checkIn);
+        int to = day(checkOut);
+        for (RoomBookings room : hotel.rooms()) {
+            if (room.isFree(from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether at least one room of the type, ignoring case, is free for every
+     * night of [checkIn, checkOut) at the hotel.
+     */
+    public boolean hasAvailableRoomOfType(long hotelId, String roomType, LocalDate checkIn, LocalDate checkOut) {
+        HotelRooms hotel = calendar.roomsByHotel().get(hotelId);
+        if (hotel == null) {
+            return false;
+        }
+        String type = typeKey(roomType);
+        int from = day(checkIn);
+        int to = day(checkOut);
+        for (RoomBookings room : hotel.rooms()) {
+            if (room.roomType().equals(type) && room.isFree(from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Filter for spatial searches that keeps hotels with a free room for the
+     * dates.
+     */
+    public LongPredicate availableFor(LocalDate checkIn, LocalDate checkOut) {
+        return hotelId -> hasAvailableRoom(hotelId, checkIn, checkOut);
+    }
+
+    /**
+     * Whether the room is free for every night of [checkIn, checkOut). Rooms
+     * not tracked are never free.
+     */
+    public boolean isRoomAvailable(long roomId, LocalDate checkIn, LocalDate checkOut) {
+        RoomBookings room = calendar.roomsById().get(roomId);
+        return room != null && room.isFree(day(checkIn), day(checkOut));
+    }
+
+    /**
+     * Whether the calendar shows the room booked on a night of [checkIn,
+     * checkOut). Rooms it does not track, such as rooms created while it was
+     * being loaded, are not ruled out: booking admission leaves them to the
+     * database check it runs under the room's lock.
+     */
+    public boolean isRoomBooked(long roomId, LocalDate checkIn, LocalDate checkOut) {
+        RoomBookings room = calendar.roomsById().get(roomId);
+        return room != null && !room.isFree(day(checkIn), day(checkOut));
+    }
+
+    /**
+     * Room filter check that keeps rooms free for the dates.
+     */
+    public LongPredicate roomAvailableFor(LocalDate checkIn, LocalDate checkOut) {
+        return roomId -> isRoomAvailable(roomId, checkIn, checkOut);
+    }
+
+    /**
+     * Ids of the rooms free for every night of [checkIn, checkOut) whose type
+     * contains roomType, ignoring case, in ascending order. A null or blank
+     * roomType matches every room.
+     */
+    public List<Long> findAvailableRoomIds(LocalDate checkIn, LocalDate checkOut, String roomType) {
+        String type = typeKey(roomType);
+        int from = day(checkIn);
+        int to = day(checkOut);
+        List<Long> roomIds = new ArrayList<>();
+        for (RoomBookings room : calendar.roomsById().values()) {
+            if (room.roomType().contains(type) && room.isFree(from, to)) {
+                roomIds.add(room.roomId());
+            }
+        }
+        Collections.sort(roomIds);
+        return roomIds;
+    }
+
+    /**
+     * A room type as compared by the availability code: trimmed and lower-cased.
+     */
+    static String typeKey(String roomType) {
+        return roomType == null ? "" : roomType.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Long hotelIdOf(Room room) {
+        return room.getHotel() == null ? null : room.getHotel().getId();
+    }
+
+    private static int day(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+
+    // Whether bits [from, to) are all clear
+    private static boolean isClear(long[] words, int from, int to) {
+        if (from >= to) {
+            return true;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        // Shifts take their distance mod 64, so these keep bits from..63 and 0..(to - 1) of their word
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            return (words[first] & firstMask & lastMask) == 0;
+        }
+        if ((words[first] & firstMask) != 0) {
+            return false;
+        }
+        for (int w = first + 1; w < last; w++) {
+            if (words[w] != 0) {
+                return false;
+            }
+        }
+        return (words[last] & lastMask) == 0;
+    }
+
+    private static void setRange(long[] words, int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+            return;
+        }
+        words[first] |= firstMask;
+        for (int w = first + 1; w < last; w++) {
+            words[w] = -1L;
+        }
+        words[last] |= lastMask;
+    }
+
+    private static int[] insert(int[] values, int at, int value) {
+        int[] result = new int[values.length + 1];
+        System.arraycopy(values, 0, result, 0, at);
+        result[at] = value;
+        System.arraycopy(values, at, result, at + 1, values.length - at);
+        return result;
+    }
+
+    private static int[] remove(int[] values, int at) {
+        int[] result = new int[values.length - 1];
+        System.arraycopy(values, 0, result, 0, at);
+        System.arraycopy(values, at + 1, result, at, values.length - at - 1);
+        return result;
+    }
+}
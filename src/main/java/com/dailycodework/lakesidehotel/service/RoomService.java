@@ -11,13 +11,18 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class RoomService implements IRoomService {
     private final RoomRepository roomRepository;
+    private final RoomAvailabilityService roomAvailabilityService;
+    private final RoomAttributeService roomAttributeService;
+    private final RoomTypeInventoryService roomTypeInventoryService;
 
     @Override
     public Room addNewRoom(String photoUrl, String roomType, BigDecimal roomPrice) {
@@ -27,7 +32,9 @@ public class RoomService implements IRoomService {
         if (photoUrl != null && !photoUrl.trim().isEmpty()) {
             room.setPhotoUrl(photoUrl);
         }
-        return roomRepository.save(room);
+        Room saved = roomRepository.save(room);
+        roomAvailabilityService.addRoom(saved);
+        return saved;
     }
 
     @Override
@@ -57,7 +64,11 @@ public class RoomService implements IRoomService {
             room.setPhotoUrl(photoUrl);
         }
 
-        return roomRepository.save(room);
+        Room saved = roomRepository.save(room);
+        roomAvailabilityService.addRoom(saved);
+        roomAttributeService.hotelRoomsChanged(hotelId);
+        roomTypeInventoryService.hotelRoomsChanged(hotelId);
+        return saved;
     }
 
     @Override
@@ -75,6 +86,9 @@ public class RoomService implements IRoomService {
         Optional<Room> theRoom = roomRepository.findById(roomId);
         if (theRoom.isPresent()) {
             roomRepository.deleteById(roomId);
+            roomAvailabilityService.removeRoom(roomId);
+            roomAttributeService.hotelRoomsChanged(hotelIdOf(theRoom.get()));
+            roomTypeInventoryService.hotelRoomsChanged(hotelIdOf(theRoom.get()));
         }
     }
 
@@ -88,7 +102,11 @@ public class RoomService implements IRoomService {
         if (photoUrl != null && !photoUrl.trim().isEmpty()) {
             room.setPhotoUrl(photoUrl);
         }
-        return roomRepository.save(room);
+        Room saved = roomRepository.save(room);
+        roomAvailabilityService.addRoom(saved);
+        roomAttributeService.hotelRoomsChanged(hotelIdOf(saved));
+        roomTypeInventoryService.hotelRoomsChanged(hotelIdOf(saved));
+        return saved;
     }
 
     @Override
@@ -98,7 +116,11 @@ public class RoomService implements IRoomService {
 
     @Override
     public List<Room> getAvailableRooms(LocalDate checkInDate, LocalDate checkOutDate, String roomType) {
-        return roomRepository.findAvailableRoomsByDatesAndType(checkInDate, checkOutDate, roomType);
+        // Availability comes from the in-memory calendars; only the matching rooms are read
+        List<Long> roomIds = roomAvailabilityService.findAvailableRoomIds(checkInDate, checkOutDate, roomType);
+        List<Room> rooms = new ArrayList<>(roomRepository.findAllById(roomIds));
+        rooms.sort(Comparator.comparing(Room::getId));
+        return rooms;
     }
 
     @Override
@@ -111,7 +133,11 @@ public class RoomService implements IRoomService {
             room.setBookings(new ArrayList<>());
         }
 
-        return roomRepository.save(room);
+        Room saved = roomRepository.save(room);
+        roomAvailabilityService.addRoom(saved);
+        roomAttributeService.hotelRoomsChanged(hotelIdOf(saved));
+        roomTypeInventoryService.hotelRoomsChanged(hotelIdOf(saved));
+        return saved;
     }
 
     @Override
@@ -144,10 +170,24 @@ public class RoomService implements IRoomService {
         if (roomUpdate.getPhotoUrl() != null && !roomUpdate.getPhotoUrl().trim().isEmpty()) {
             existingRoom.setPhotoUrl(roomUpdate.getPhotoUrl());
         }
+        Long previousHotelId = hotelIdOf(existingRoom);
         if (roomUpdate.getHotel() != null) {
             existingRoom.setHotel(roomUpdate.getHotel());
         }
 
-        return roomRepository.save(existingRoom);
+        Room saved = roomRepository.save(existingRoom);
+        // Follows the room if it moved to another hotel
+        roomAvailabilityService.addRoom(saved);
+        roomAttributeService.hotelRoomsChanged(hotelIdOf(saved));
+        roomTypeInventoryService.hotelRoomsChanged(hotelIdOf(saved));
+        if (!Objects.equals(previousHotelId, hotelIdOf(saved))) {
+            roomAttributeService.hotelRoomsChanged(previousHotelId);
+            roomTypeInventoryService.hotelRoomsChanged(previousHotelId);
+        }
+        return saved;
+    }
+
+    private static Long hotelIdOf(Room room) {
+        return room.getHotel() == null ? null : room.getHotel().getId();
     }
 }
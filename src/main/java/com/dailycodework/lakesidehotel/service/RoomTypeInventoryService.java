@@ -0,0 +1,404 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.BookedRoom;
+import com.dailycodework.lakesidehotel.model.Room;
+import com.dailycodework.lakesidehotel.model.RoomTypeInventory;
+import com.dailycodework.lakesidehotel.repository.BookingRepository;
+import com.dailycodework.lakesidehotel.repository.RoomRepository;
+import com.dailycodework.lakesidehotel.repository.RoomTypeInventoryRepository;
+import com.dailycodework.lakesidehotel.response.RoomTypeAvailabilityResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * How many rooms of each type every hotel has and how many are booked, per
+ * night, so "is there a Deluxe free at hotel X" starts from a few counters
+ * instead of every Deluxe room and its bookings.
+ *
+ * The counters are kept in the room_type_inventory table and mirrored in
+ * memory, over {@code inventory.days} nights from the last reconciliation.
+ * Bookings and cancellations update the table inside their own transaction
+ * and the mirror once that commits, for the nights inside the window only;
+ * a night whose row is missing is counted from the bookings and inserted.
+ * Room changes recount their hotel. A
+ * nightly job recounts everything from the rooms and bookings, fixes rows
+ * that drifted, and moves the window on to today.
+ *
+ * A recount locks the rows it rewrites before reading the bookings, so a sale
+ * committing meanwhile either is read or lands on the rewritten rows. Sales
+ * reaching the mirror while it runs are replayed onto the new counters before
+ * they are published; each type's counters know which bookings they hold, so
+ * a sale the recount already read is not counted twice.
+ *
+ * Counts alone overstate: two rooms each booked on one of two nights leave a
+ * room free every night, yet neither is free for both. So a zero answers
+ * "full" outright, and anything else is confirmed against the room calendars.
+ */
+@Service
+@Slf4j
+public class RoomTypeInventoryService {
+
+    private final RoomTypeInventoryRepository inventoryRepository;
+    private final RoomRepository roomRepository;
+    private final BookingRepository bookingRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RoomAvailabilityService roomAvailabilityService;
+    private final int days;
+
+    private volatile Window window;
+
+    // Guards the held bookings and pending; held while sales are applied and recounts published
+    private final Object soldLock = new Object();
+    // Sales applied while a recount runs, null when none does
+    private List<Sale> pending;
+
+    /**
+     * One hotel's rooms of one type: how many there are, how many are booked
+     * on each night of the window, and the bookings counted in sold.
+     */
+    private record TypeCounters(String name, int total, AtomicIntegerArray sold, Set<Long> held) {
+    }
+
+    /**
+     * Counters by hotel and type key from the night start on. A hotel's map is
+     * replaced whole; sold counts change in place.
+     */
+    private record Window(int start, int days, Map<Long, Map<String, TypeCounters>> hotels) {
+    }
+
+    // Counters from one recount, and how many stored nights it had to fix
+    private record Recount(Window counted, int drifted) {
+    }
+
+    // One stored row's identity
+    private record RowKey(Long hotelId, String type, LocalDate night) {
+    }
+
+    // One booking taking (delta 1) or giving back (delta -1) the window nights [checkIn, checkOut), as epoch days
+    private record Sale(long bookingId, long hotelId, String type, int checkIn, int checkOut, int delta) {
+    }
+
+    public RoomTypeInventoryService(RoomTypeInventoryRepository inventoryRepository, RoomRepository roomRepository,
+            BookingRepository bookingRepository, TransactionTemplate transactionTemplate,
+            RoomAvailabilityService roomAvailabilityService, @Value("${inventory.days:365}") int days) {
+        this.inventoryRepository = inventoryRepository;
+        this.roomRepository = roomRepository;
+        this.bookingRepository = bookingRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.roomAvailabilityService = roomAvailabilityService;
+        this.days = days;
+        this.window = new Window(day(LocalDate.now()), days, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Recount every hotel from the database, fix the table rows that drifted
+     * from the bookings, and move the window on to today.
+     */
+    @Scheduled(cron = "${inventory.reconcileCron:0 30 3 * * *}")
+    public synchronized void reconcile() {
+        int start = day(LocalDate.now());
+        int drifted = recount(() -> {
+            List<RoomTypeInventory> stored = inventoryRepository.findAllForUpdate();
+            Window counted = new Window(start, days,
+                    count(roomRepository.findAll(), bookingRepository.findAll(), start, days));
+            return new Recount(counted, store(counted, stored));
+        }, counted -> window = counted);
+        if (drifted > 0) {
+            log.warn("Room type inventory: fixed {} nights that had drifted from the bookings", drifted);
+        }
+    }
+
+    /**
+     * Recount the hotel after one of its rooms was added, changed or removed.
+     */
+    public synchronized void hotelRoomsChanged(Long hotelId) {
+        if (hotelId == null) {
+            return;
+        }
+        Window current = window;
+        recount(() -> {
+            List<RoomTypeInventory> stored = inventoryRepository.findByHotelIdForUpdate(hotelId);
+            List<Room> rooms = roomRepository.findByHotelId(hotelId);
+            List<BookedRoom> bookings = rooms.isEmpty() ? List.of()
+                    : bookingRepository.findHoldingBetween(rooms.stream().map(Room::getId).toList(),
+                            LocalDate.ofEpochDay(current.start()),
+                            LocalDate.ofEpochDay(current.start() + current.days()));
+            Window counted = new Window(current.start(), current.days(),
+                    count(rooms, bookings, current.start(), current.days()));
+            return new Recount(counted, store(counted, stored));
+        }, counted -> {
+            Map<String, TypeCounters> types = counted.hotels().get(hotelId);
+            if (types == null) {
+                current.hotels().remove(hotelId);
+            } else {
+                current.hotels().put(hotelId, types);
+            }
+        });
+    }
+
+    public synchronized void hotelRemoved(Long hotelId) {
+        window.hotels().remove(hotelId);
+        transactionTemplate.executeWithoutResult(
+                status -> inventoryRepository.deleteAllInBatch(inventoryRepository.findByHotelId(hotelId)));
+    }
+
+    // Recount in one transaction, then publish the counters with the sales applied meanwhile replayed onto them
+    private int recount(Supplier<Recount> recount, Consumer<Window> publish) {
+        synchronized (soldLock) {
+            pending = new ArrayList<>();
+        }
+        try {
+            Recount result = transactionTemplate.execute(status -> recount.get());
+            synchronized (soldLock) {
+                for (Sale sale : pending) {
+                    apply(result.counted(), sale);
+                }
+                publish.accept(result.counted());
+            }
+            return result.drifted();
+        } finally {
+            synchronized (soldLock) {
+                pending = null;
+            }
+        }
+    }
+
+    /**
+     * Count the booking's room as sold (delta 1) or released (delta -1) for
+     * its nights inside the window. Call inside the transaction that books or
+     * cancels, after the booking has its id and has been saved or deleted: the
+     * table changes with it, and the mirror once it commits.
+     */
+    public void recordSold(BookedRoom booking, int delta) {
+        Room room = booking.getRoom();
+        if (room == null || room.getHotel() == null || room.getHotel().getId() == null) {
+            return;
+        }
+        // Nights outside the window have no rows and no counters; the recount that reaches them counts them
+        Window current = window;
+        int from = Math.max(day(booking.getCheckInDate()), current.start());
+        int to = Math.min(day(booking.getCheckOutDate()), current.start() + current.days());
+        if (from >= to) {
+            return;
+        }
+        Sale sale = new Sale(booking.getBookingId(), room.getHotel().getId(),
+                RoomAvailabilityService.typeKey(room.getRoomType()), from, to, delta);
+        int updated = inventoryRepository.addSold(sale.hotelId(), sale.type(), LocalDate.ofEpochDay(from),
+                LocalDate.ofEpochDay(to), delta);
+        if (updated < to - from) {
+            storeMissingNights(sale);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applySold(sale);
+                }
+            });
+        } else {
+            applySold(sale);
+        }
+    }
+
+    // Counts the nights of the sale that had no row to update, with the booking already saved or deleted
+    private void storeMissingNights(Sale sale) {
+        LocalDate from = LocalDate.ofEpochDay(sale.checkIn());
+        LocalDate to = LocalDate.ofEpochDay(sale.checkOut());
+        Set<LocalDate> stored = new HashSet<>(inventoryRepository.findNights(sale.hotelId(), sale.type(), from, to));
+        List<Room> rooms = roomRepository.findByHotelId(sale.hotelId());
+        List<BookedRoom> bookings = rooms.isEmpty() ? List.of()
+                : bookingRepository.findHoldingBetween(rooms.stream().map(Room::getId).toList(), from, to);
+        TypeCounters counted = count(rooms, bookings, sale.checkIn(), sale.checkOut() - sale.checkIn())
+                .getOrDefault(sale.hotelId(), Map.of()).get(sale.type());
+        if (counted == null) {
+            return;
+        }
+        List<RoomTypeInventory> missing = new ArrayList<>();
+        for (int night = sale.checkIn(); night < sale.checkOut(); night++) {
+            LocalDate date = LocalDate.ofEpochDay(night);
+            if (!stored.contains(date)) {
+                missing.add(new RoomTypeInventory(null, sale.hotelId(), sale.type(), date, counted.total(),
+                        counted.sold().get(night - sale.checkIn())));
+            }
+        }
+        inventoryRepository.saveAll(missing);
+    }
+
+    private void applySold(Sale sale) {
+        synchronized (soldLock) {
+            apply(window, sale);
+            if (pending != null) {
+                pending.add(sale);
+            }
+        }
+    }
+
+    // Skips a sale the counters already hold (or a release of a booking they do not)
+    private static void apply(Window counters, Sale sale) {
+        TypeCounters type = counters.hotels().getOrDefault(sale.hotelId(), Map.of()).get(sale.type());
+        int from = Math.max(0, sale.checkIn() - counters.start());
+        int to = Math.min(counters.days(), sale.checkOut() - counters.start());
+        if (type == null || from >= to) {
+            return;
+        }
+        boolean changed = sale.delta() > 0 ? type.held().add(sale.bookingId())
+                : type.held().remove(sale.bookingId());
+        if (!changed) {
+            return;
+        }
+        for (int night = from; night < to; night++) {
+            type.sold().addAndGet(night, sale.delta());
+        }
+    }
+
+    /**
+     * The fewest unbooked rooms of the type on any night of [checkIn,
+     * checkOut): the minimum of total - sold over those nights. Empty when the
+     * stay reaches outside the counted nights.
+     */
+    public OptionalInt freeRooms(long hotelId, String roomType, LocalDate checkIn, LocalDate checkOut) {
+        Window current = window;
+        int from = day(checkIn) - current.start();
+        int to = day(checkOut) - current.start();
+        if (from < 0 || to > current.days()) {
+            return OptionalInt.empty();
+        }
+        TypeCounters counters = current.hotels().getOrDefault(hotelId, Map.of())
+                .get(RoomAvailabilityService.typeKey(roomType));
+        return OptionalInt.of(counters == null ? 0 : freeRooms(counters, from, to));
+    }
+
+    private static int freeRooms(TypeCounters counters, int from, int to) {
+        int free = counters.total();
+        for (int night = from; night < to; night++) {
+            free = Math.min(free, counters.total() - counters.sold().get(night));
+        }
+        return Math.max(0, free);
+    }
+
+    /**
+     * Availability of each room type of the hotel for [checkIn, checkOut), by
+     * type name. freeRooms is -1 when the stay reaches outside the counted
+     * nights. The counters rule types out; available is confirmed on the room
+     * calendars.
+     */
+    public List<RoomTypeAvailabilityResponse> availabilityByType(long hotelId, LocalDate checkIn,
+            LocalDate checkOut) {
+        List<RoomTypeAvailabilityResponse> availability = new ArrayList<>();
+        for (TypeCounters counters : window.hotels().getOrDefault(hotelId, Map.of()).values()) {
+            int free = freeRooms(hotelId, counters.name(), checkIn, checkOut).orElse(-1);
+            boolean available = free != 0
+                    && roomAvailabilityService.hasAvailableRoomOfType(hotelId, counters.name(), checkIn, checkOut);
+            availability.add(new RoomTypeAvailabilityResponse(counters.name(), counters.total(), free, available));
+        }
+        availability.sort(Comparator.comparing(RoomTypeAvailabilityResponse::getRoomType));
+        return availability;
+    }
+
+    private static Map<Long, Map<String, TypeCounters>> count(Collection<Room> rooms,
+            Collection<BookedRoom> bookings, int start, int days) {
+        Map<Long, Map<String, Integer>> totals = new HashMap<>();
+        Map<Long, Map<String, String>> names = new HashMap<>();
+        Map<Long, Room> roomsById = new HashMap<>();
+        for (Room room : rooms) {
+            if (room.getHotel() == null || room.getHotel().getId() == null) {
+                continue;
+            }
+            Long hotelId = room.getHotel().getId();
+            String type = RoomAvailabilityService.typeKey(room.getRoomType());
+            totals.computeIfAbsent(hotelId, id -> new HashMap<>()).merge(type, 1, Integer::sum);
+            names.computeIfAbsent(hotelId, id -> new HashMap<>()).putIfAbsent(type,
+                    room.getRoomType() == null ? "" : room.getRoomType().trim());
+            roomsById.put(room.getId(), room);
+        }
+
+        Map<Long, Map<String, TypeCounters>> hotels = new ConcurrentHashMap<>();
+        totals.forEach((hotelId, types) -> {
+            Map<String, TypeCounters> counters = new HashMap<>();
+            types.forEach((type, total) -> counters.put(type,
+                    new TypeCounters(names.get(hotelId).get(type), total, new AtomicIntegerArray(days),
+                            new HashSet<>())));
+            hotels.put(hotelId, counters);
+        });
+
+        for (BookedRoom booking : bookings) {
+            Room room = booking.getRoom() == null ? null : roomsById.get(booking.getRoom().getId());
+            if (room == null || !booking.holdsRoom() || booking.getCheckInDate() == null
+                    || booking.getCheckOutDate() == null) {
+                continue;
+            }
+            TypeCounters counters = hotels.get(room.getHotel().getId())
+                    .get(RoomAvailabilityService.typeKey(room.getRoomType()));
+            int from = Math.max(0, day(booking.getCheckInDate()) - start);
+            int to = Math.min(days, day(booking.getCheckOutDate()) - start);
+            if (from < to) {
+                counters.held().add(booking.getBookingId());
+            }
+            for (int night = from; night < to; night++) {
+                counters.sold().incrementAndGet(night);
+            }
+        }
+        return hotels;
+    }
+
+    // Make the stored rows match the counts; returns how many existing rows were wrong
+    private int store(Window counted, List<RoomTypeInventory> stored) {
+        Map<RowKey, RoomTypeInventory> existing = new HashMap<>();
+        for (RoomTypeInventory row : stored) {
+            existing.put(new RowKey(row.getHotelId(), row.getRoomType(), row.getNight()), row);
+        }
+
+        List<RoomTypeInventory> changed = new ArrayList<>();
+        int drifted = 0;
+        for (Map.Entry<Long, Map<String, TypeCounters>> hotel : counted.hotels().entrySet()) {
+            for (Map.Entry<String, TypeCounters> type : hotel.getValue().entrySet()) {
+                TypeCounters counters = type.getValue();
+                boolean totalChanged = false;
+                for (int night = 0; night < counted.days(); night++) {
+                    LocalDate date = LocalDate.ofEpochDay(counted.start() + night);
+                    int sold = counters.sold().get(night);
+                    RoomTypeInventory row = existing.remove(new RowKey(hotel.getKey(), type.getKey(), date));
+                    if (row == null) {
+                        changed.add(new RoomTypeInventory(null, hotel.getKey(), type.getKey(), date,
+                                counters.total(), sold));
+                        continue;
+                    }
+                    if (row.getTotal() != counters.total() || row.getSold() != sold) {
+                        drifted++;
+                    }
+                    totalChanged |= row.getTotal() != counters.total();
+                    if (row.getSold() != sold) {
+                        // The whole row is written back, so it must not carry the old total
+                        row.setTotal(counters.total());
+                        row.setSold(sold);
+                        changed.add(row);
+                    }
+                }
+                // A room added or removed changes every night of its type: one UPDATE, not a row each
+                if (totalChanged) {
+                    inventoryRepository.setTotal(hotel.getKey(), type.getKey(), counters.total());
+                }
+            }
+        }
+        inventoryRepository.saveAll(changed);
+        // Past nights, and types or hotels that have no rooms any more
+        inventoryRepository.deleteAllInBatch(existing.values());
+        return drifted;
+    }
+
+    private static int day(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+}
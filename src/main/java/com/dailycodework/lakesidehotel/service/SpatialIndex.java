@@ -0,0 +1,222 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.ClusterPyramid;
+import com.dailycodework.lakesidehotel.model.GeoBox;
+import com.dailycodework.lakesidehotel.model.GeoPolygon;
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.HotelRoomProfile;
+import com.dailycodework.lakesidehotel.model.HotelSummary;
+import com.dailycodework.lakesidehotel.model.NearbyCursor;
+import com.dailycodework.lakesidehotel.model.RoomFilter;
+import com.dailycodework.lakesidehotel.request.NearbyQueryRequest;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyPageResponse;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * In-memory index of hotel locations behind the nearby, radius and map
+ * endpoints. The implementation is picked with {@code spatial.index.type}:
+ * {@code kdtree} ({@link KDTreeService}, the default) or {@code grid}
+ * ({@link GridIndexService}).
+ *
+ * Implementations are thread-safe, and a query never sees a write half
+ * applied.
+ */
+public interface SpatialIndex {
+
+    double EARTH_RADIUS_KM = 6371;
+
+    /**
+     * Index a hotel location without caching the hotel itself. Null coordinates
+     * take the hotel out of the index.
+     */
+    void insertHotel(Long hotelId, Double latitude, Double longitude);
+
+    /**
+     * Cache the hotel and index it at its current coordinates, replacing any
+     * previous location.
+     */
+    void updateHotelCache(Hotel hotel);
+
+    void removeHotel(Long hotelId);
+
+    /**
+     * Cache and index the updated hotels and drop the removed ones as a single
+     * write, so queries see either none of the batch or all of it. An id must
+     * not be in both.
+     */
+    void updateHotels(Collection<Hotel> updated, Collection<Long> removedIds);
+
+    /**
+     * Replace the whole index and hotel cache with the given hotels.
+     */
+    default void rebuild(Collection<Hotel> hotels) {
+        List<HotelSummary> summaries = new ArrayList<>(hotels.size());
+        double[] latitudes = new double[hotels.size()];
+        double[] longitudes = new double[hotels.size()];
+        int i = 0;
+        for (Hotel hotel : hotels) {
+            summaries.add(HotelSummary.of(hotel));
+            boolean located = hotel.getLatitude() != null && hotel.getLongitude() != null;
+            latitudes[i] = located ? hotel.getLatitude() : Double.NaN;
+            longitudes[i] = located ? hotel.getLongitude() : Double.NaN;
+            i++;
+        }
+        rebuild(summaries, latitudes, longitudes);
+    }
+
+    /**
+     * Replace the whole index and hotel cache with the given hotel summaries,
+     * each indexed at latitudes[i], longitudes[i]. NaN coordinates cache a hotel
+     * without indexing it. When an id repeats, the last entry wins.
+     */
+    void rebuild(List<HotelSummary> hotels, double[] latitudes, double[] longitudes);
+
+    /**
+     * Replace the rooms of one hotel as seen by room filters; null when it has
+     * none left.
+     */
+    void updateRoomProfile(long hotelId, HotelRoomProfile profile);
+
+    /**
+     * Replace the rooms of every hotel as seen by room filters.
+     */
+    void rebuildRoomProfiles(Map<Long, HotelRoomProfile> profiles);
+
+    /**
+     * Visit every cached hotel with the coordinates it is indexed at, NaN when it
+     * is not indexed. The visit sees one state of the index.
+     */
+    void forEachHotel(HotelVisitor visitor);
+
+    @FunctionalInterface
+    interface HotelVisitor {
+        void visit(HotelSummary hotel, double latitude, double longitude);
+    }
+
+    /**
+     * The k hotels nearest to the given point, nearest first.
+     */
+    List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k);
+
+    /**
+     * The k hotels nearest to the given point that pass the filter, nearest
+     * first. The filter is only asked about hotels near enough to make the
+     * result, so an expensive check runs on a handful of candidates.
+     */
+    default List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k,
+            LongPredicate hotelFilter) {
+        return findNearestHotels(userLat, userLon, k, null, hotelFilter);
+    }
+
+    /**
+     * The k hotels nearest to the given point that have a room passing the room
+     * filter and pass the hotel filter, nearest first. Either filter may be
+     * null. The room filter is checked first.
+     */
+    List<NearbyHotelResponse> findNearestHotels(double userLat, double userLon, int k, RoomFilter roomFilter,
+            LongPredicate hotelFilter);
+
+    /**
+     * One page of hotels ordered by distance from the point, then by id,
+     * starting after the cursor (or from the nearest hotel when it is null).
+     * Paging outward this way has no limit on how deep a client can go.
+     */
+    NearbyPageResponse findNearestPage(double userLat, double userLon, int pageSize, NearbyCursor after);
+
+    /**
+     * The nearest hotels for each query, in query order. All queries see the
+     * same state of the index, even while writes are going on.
+     */
+    List<List<NearbyHotelResponse>> findNearestHotels(List<NearbyQueryRequest> queries);
+
+    /**
+     * All hotels within {@code radiusKm} of the given point, nearest first. When
+     * more than {@code limit} hotels are in range, only the nearest {@code limit}
+     * are returned.
+     */
+    List<NearbyHotelResponse> findHotelsWithin(double userLat, double userLon, double radiusKm, int limit);
+
+    /**
+     * Every hotel within {@code radiusKm}, however many there are. For checks and
+     * tests; requests always pass a limit.
+     */
+    default List<NearbyHotelResponse> findHotelsWithin(double userLat, double userLon, double radiusKm) {
+        return findHotelsWithin(userLat, userLon, radiusKm, Integer.MAX_VALUE);
+    }
+
+    /**
+     * All hotels inside a latitude/longitude box. When west > east the box
+     * crosses the antimeridian.
+     */
+    List<MapHotelResponse> findHotelsInBox(double south, double west, double north, double east);
+
+    /**
+     * Hotels inside the polygon: the index prunes to its bounding box, and only
+     * the hotels in the box are tested against the outline. When more than
+     * {@code limit} are inside, the first {@code limit} found are returned, in
+     * no particular order.
+     */
+    default List<MapHotelResponse> findHotelsInPolygon(GeoPolygon polygon, int limit) {
+        GeoBox bounds = polygon.bounds();
+        List<MapHotelResponse> inBox = findHotelsInBox(bounds.south(), bounds.west(), bounds.north(), bounds.east());
+        List<MapHotelResponse> inside = new ArrayList<>();
+        for (MapHotelResponse hotel : inBox) {
+            if (inside.size() == limit) {
+                break;
+            }
+            if (polygon.contains(hotel.getLatitude(), hotel.getLongitude())) {
+                inside.add(hotel);
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Every hotel inside the polygon, however many there are. For checks and
+     * tests; requests always pass a limit.
+     */
+    default List<MapHotelResponse> findHotelsInPolygon(GeoPolygon polygon) {
+        return findHotelsInPolygon(polygon, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Cluster pyramid over the hotels currently indexed.
+     */
+    ClusterPyramid clusterPyramid();
+
+    SpatialIndexStatsResponse getStats();
+
+    /**
+     * Counter bumped after every change becomes visible to queries. A result
+     * computed after reading version v is current for as long as this still
+     * returns v.
+     */
+    long version();
+
+    /**
+     * Great-circle distance in kilometres between two points.
+     */
+    static double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
+        // Haversine formula for more accurate distance calculation
+        final double R = EARTH_RADIUS_KM;
+
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                        * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return R * c;
+    }
+}
@@ -0,0 +1,192 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.HotelSummary;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of a spatial index and its hotel summaries, so a restart can
+ * load the index from one file instead of every hotel row.
+ *
+ * Layout, big-endian: magic, format version, the high-water mark (epoch second
+ * and nano, Long.MIN_VALUE seconds when unknown), hotel count n, then n ids, n
+ * latitudes, n longitudes (NaN when not indexed) and n room counts
+ * (Integer.MIN_VALUE for null), then the strings of each hotel as a UTF-8 length
+ * (-1 for null) and bytes, and finally a CRC32 of everything before it. The
+ * fixed-width columns are read straight out of the mapped file.
+ */
+final class SpatialIndexSnapshotFile {
+
+    private static final int MAGIC = 0x4C534958;
+    private static final int FORMAT_VERSION = 1;
+    private static final int NO_ROOMS_COUNT = Integer.MIN_VALUE;
+
+    private SpatialIndexSnapshotFile() {
+    }
+
+    /**
+     * What a snapshot holds. highWaterMark is the latest hotel change the index
+     * is known to include, or null.
+     */
+    record Contents(Instant highWaterMark, List<HotelSummary> hotels, double[] latitudes, double[] longitudes) {
+    }
+
+    /**
+     * Write the index to the file, replacing it atomically so a crash never
+     * leaves half a snapshot behind.
+     */
+    static void write(Path file, SpatialIndex index, Instant highWaterMark) throws IOException {
+        List<HotelSummary> hotels = new ArrayList<>();
+        double[][] coordinates = { new double[1024], new double[1024] };
+        index.forEachHotel((hotel, latitude, longitude) -> {
+            int i = hotels.size();
+            if (i == coordinates[0].length) {
+                coordinates[0] = Arrays.copyOf(coordinates[0], i * 2);
+                coordinates[1] = Arrays.copyOf(coordinates[1], i * 2);
+            }
+            hotels.add(hotel);
+            coordinates[0][i] = latitude;
+            coordinates[1][i] = longitude;
+        });
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temporary)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new CheckedOutputStream(stream, crc), 1 << 16));
+                writeContents(out, highWaterMark, hotels, coordinates[0], coordinates[1]);
+                out.flush();
+                // The checksum itself is written past the checked stream
+                new DataOutputStream(stream).writeLong(crc.getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeContents(DataOutputStream out, Instant highWaterMark, List<HotelSummary> hotels,
+            double[] latitudes, double[] longitudes) throws IOException {
+        int count = hotels.size();
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(highWaterMark == null ? Long.MIN_VALUE : highWaterMark.getEpochSecond());
+        out.writeInt(highWaterMark == null ? 0 : highWaterMark.getNano());
+        out.writeInt(count);
+        for (HotelSummary hotel : hotels) {
+            out.writeLong(hotel.id());
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeDouble(latitudes[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeDouble(longitudes[i]);
+        }
+        for (HotelSummary hotel : hotels) {
+            out.writeInt(hotel.roomsCount() == null ? NO_ROOMS_COUNT : hotel.roomsCount());
+        }
+        for (HotelSummary hotel : hotels) {
+            writeString(out, hotel.name());
+            writeString(out, hotel.address());
+            writeString(out, hotel.contact());
+            writeString(out, hotel.email());
+            writeString(out, hotel.imageUrl());
+            writeString(out, hotel.description());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Map the file and decode it.
+     *
+     * @throws IOException when the file is missing, of another format version,
+     *                     truncated or corrupt
+     */
+    static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Long.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + file + " has an unusable size of " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int contentSize = (int) size - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(contentSize));
+            if (crc.getValue() != buffer.getLong(contentSize)) {
+                throw new IOException("Snapshot " + file + " is corrupt");
+            }
+            buffer.limit(contentSize);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Snapshot " + file + " is not in format version " + FORMAT_VERSION);
+            }
+            return readContents(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Snapshot " + file + " is truncated", e);
+        }
+    }
+
+    private static Contents readContents(MappedByteBuffer buffer) {
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        Instant highWaterMark = seconds == Long.MIN_VALUE ? null : Instant.ofEpochSecond(seconds, nanos);
+        int count = buffer.getInt();
+
+        long[] ids = new long[count];
+        buffer.asLongBuffer().get(ids);
+        buffer.position(buffer.position() + count * Long.BYTES);
+        double[] latitudes = new double[count];
+        buffer.asDoubleBuffer().get(latitudes);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        double[] longitudes = new double[count];
+        buffer.asDoubleBuffer().get(longitudes);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        int[] roomsCounts = new int[count];
+        buffer.asIntBuffer().get(roomsCounts);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+
+        List<HotelSummary> hotels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hotels.add(new HotelSummary(ids[i], readString(buffer), readString(buffer), readString(buffer),
+                    readString(buffer), readString(buffer), readString(buffer),
+                    roomsCounts[i] == NO_ROOMS_COUNT ? null : roomsCounts[i]));
+        }
+        return new Contents(highWaterMark, hotels, latitudes, longitudes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
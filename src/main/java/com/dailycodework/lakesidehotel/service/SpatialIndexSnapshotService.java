@@ -0,0 +1,145 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.HotelSummary;
+import com.dailycodework.lakesidehotel.repository.HotelRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Loads the spatial index at startup and keeps a snapshot of it on disk.
+ *
+ * With a snapshot file ({@code spatial.snapshot.path}), startup maps the file,
+ * then reads only the hotels changed since its high-water mark and the ids of
+ * all hotels, to pick up edits and deletes made while the snapshot aged. The
+ * snapshot is rewritten every {@code spatial.snapshot.intervalMs} and on
+ * shutdown. Without one, or when it is unusable, every hotel is loaded from the
+ * database as before.
+ */
+@Service
+@Slf4j
+public class SpatialIndexSnapshotService {
+
+    private final SpatialIndex spatialIndex;
+    private final HotelRepository hotelRepository;
+    // Null when snapshots are turned off
+    private final Path file;
+    private final Duration replayOverlap;
+    // Snapshots are only written once the index holds the whole catalog
+    private volatile boolean loaded;
+
+    public SpatialIndexSnapshotService(SpatialIndex spatialIndex, HotelRepository hotelRepository,
+            @Value("${spatial.snapshot.path:}") String path,
+            @Value("${spatial.snapshot.replayOverlapSeconds:60}") long replayOverlapSeconds) {
+        this.spatialIndex = spatialIndex;
+        this.hotelRepository = hotelRepository;
+        this.file = path.isBlank() ? null : Path.of(path);
+        this.replayOverlap = Duration.ofSeconds(replayOverlapSeconds);
+    }
+
+    /**
+     * Fill the index from the snapshot and the changes since, or from every
+     * hotel in the database when there is no usable snapshot.
+     */
+    public void loadIndex() {
+        if (!restore()) {
+            spatialIndex.rebuild(hotelRepository.findAll());
+        }
+        loaded = true;
+    }
+
+    private boolean restore() {
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+
+        SpatialIndexSnapshotFile.Contents contents;
+        try {
+            contents = SpatialIndexSnapshotFile.read(file);
+        } catch (IOException e) {
+            log.warn("Ignoring spatial index snapshot: {}", e.getMessage());
+            return false;
+        }
+        if (contents.highWaterMark() == null) {
+            return false;
+        }
+
+        // The overlap covers transactions that stamped a row before the mark but committed after it
+        List<Hotel> changed = hotelRepository.findChangedSince(contents.highWaterMark().minus(replayOverlap));
+        Set<Long> existing = new HashSet<>(hotelRepository.findAllIds());
+        Map<Long, Hotel> changedById = new HashMap<>();
+        for (Hotel hotel : changed) {
+            changedById.put(hotel.getId(), hotel);
+        }
+
+        int capacity = contents.hotels().size() + changed.size();
+        List<HotelSummary> hotels = new ArrayList<>(capacity);
+        double[] latitudes = new double[capacity];
+        double[] longitudes = new double[capacity];
+        int n = 0;
+        int deleted = 0;
+        for (int i = 0; i < contents.hotels().size(); i++) {
+            long id = contents.hotels().get(i).id();
+            if (!existing.contains(id)) {
+                deleted++;
+            } else if (!changedById.containsKey(id)) {
+                hotels.add(contents.hotels().get(i));
+                latitudes[n] = contents.latitudes()[i];
+                longitudes[n] = contents.longitudes()[i];
+                n++;
+            }
+        }
+        for (Hotel hotel : changedById.values()) {
+            boolean located = hotel.getLatitude() != null && hotel.getLongitude() != null;
+            hotels.add(HotelSummary.of(hotel));
+            latitudes[n] = located ? hotel.getLatitude() : Double.NaN;
+            longitudes[n] = located ? hotel.getLongitude() : Double.NaN;
+            n++;
+        }
+
+        spatialIndex.rebuild(hotels, latitudes, longitudes);
+        log.info("Spatial index restored from {}: {} hotels in the snapshot, {} replayed, {} deleted since",
+                file, contents.hotels().size(), changedById.size(), deleted);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${spatial.snapshot.intervalMs:600000}",
+            initialDelayString = "${spatial.snapshot.intervalMs:600000}")
+    public void writePeriodically() {
+        write();
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        write();
+    }
+
+    /**
+     * Write the current index to the snapshot file. The high-water mark is read
+     * before the index, so every change up to it is already in the index (or
+     * inside the replay overlap).
+     */
+    public synchronized void write() {
+        if (file == null || !loaded) {
+            return;
+        }
+        try {
+            Instant highWaterMark = hotelRepository.findLatestUpdate();
+            long started = System.nanoTime();
+            SpatialIndexSnapshotFile.write(file, spatialIndex, highWaterMark);
+            log.info("Spatial index snapshot written to {} in {} ms", file, (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not write spatial index snapshot to {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.repository.HotelRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Keeps the spatial index in step with committed hotel changes, whichever code
+ * path made them.
+ *
+ * {@link com.dailycodework.lakesidehotel.config.HotelChangeListener} publishes
+ * an event for each hotel row JPA writes. Once the transaction commits (and
+ * never when it rolls back), the hotel id is queued here, off the request's
+ * transaction. A single background thread takes everything queued so far,
+ * reads those hotels back at most {@code spatial.sync.batchSize} per query and
+ * applies each read to the index as one write: hotels found are updated, ids
+ * no longer found are removed. Ids queued while a batch is being applied
+ * coalesce into the next one.
+ *
+ * Reading the committed rows instead of trusting the order events arrive in
+ * means a late event can never put an older state back: every commit queues
+ * another read after it.
+ *
+ * Bulk JPQL and native statements bypass entity callbacks; pass the ids they
+ * touch to {@link #hotelsChanged} or rebuild the index.
+ */
+@Service
+@Slf4j
+public class SpatialIndexSyncService {
+
+    private final SpatialIndex spatialIndex;
+    private final Function<List<Long>, List<Hotel>> loadHotels;
+    private final int batchSize;
+    private final ExecutorService applier = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spatial-index-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Ids changed since the applier last took them; guarded by this
+    private Set<Long> pending = new LinkedHashSet<>();
+    private boolean applyScheduled;
+
+    @Autowired
+    public SpatialIndexSyncService(SpatialIndex spatialIndex, HotelRepository hotelRepository,
+            @Value("${spatial.sync.batchSize:1000}") int batchSize) {
+        this(spatialIndex, hotelRepository::findAllById, batchSize);
+    }
+
+    SpatialIndexSyncService(SpatialIndex spatialIndex, Function<List<Long>, List<Hotel>> loadHotels, int batchSize) {
+        this.spatialIndex = spatialIndex;
+        this.loadHotels = loadHotels;
+        this.batchSize = batchSize;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHotelChanged(HotelChangedEvent event) {
+        hotelsChanged(List.of(event.hotelId()));
+    }
+
+    /**
+     * Queue hotels whose rows changed, to be read back and applied to the index.
+     */
+    public void hotelsChanged(Collection<Long> hotelIds) {
+        synchronized (this) {
+            pending.addAll(hotelIds);
+            if (applyScheduled || pending.isEmpty()) {
+                return;
+            }
+            applyScheduled = true;
+        }
+        applier.execute(this::applyPending);
+    }
+
+    /**
+     * Wait until every change queued before the call is applied to the index.
+     */
+    public void awaitApplied() throws InterruptedException {
+        try {
+            applier.submit(() -> {
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void applyPending() {
+        List<Long> hotelIds;
+        synchronized (this) {
+            hotelIds = new ArrayList<>(pending);
+            pending = new LinkedHashSet<>();
+            applyScheduled = false;
+        }
+
+        for (int from = 0; from < hotelIds.size(); from += batchSize) {
+            List<Long> batch = hotelIds.subList(from, Math.min(hotelIds.size(), from + batchSize));
+            try {
+                List<Hotel> found = loadHotels.apply(batch);
+                Set<Long> removed = new HashSet<>(batch);
+                for (Hotel hotel : found) {
+                    removed.remove(hotel.getId());
+                }
+                spatialIndex.updateHotels(found, removed);
+            } catch (RuntimeException e) {
+                // The index stays behind on these hotels until they change again or it is rebuilt
+                log.error("Could not apply {} hotel changes to the spatial index: {}", batch.size(), e.getMessage(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        applier.shutdown();
+    }
+}
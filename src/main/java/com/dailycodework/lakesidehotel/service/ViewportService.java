@@ -0,0 +1,77 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.ClusterPyramid;
+import com.dailycodework.lakesidehotel.model.GeoBox;
+import com.dailycodework.lakesidehotel.response.HotelClusterResponse;
+import com.dailycodework.lakesidehotel.response.ViewportResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hotels in a map viewport. Busy or zoomed-out viewports are summarized as
+ * cluster centroids with counts, so the response size depends on the viewport
+ * and not on the catalog. From {@code spatial.viewport.hotelZoom} on, viewports
+ * holding at most {@code spatial.viewport.maxHotels} hotels list the hotels
+ * themselves.
+ */
+@Service
+public class ViewportService {
+
+    // Cluster cells are a quarter of a map tile wide at the requested zoom
+    private static final int CLUSTER_LEVEL_OFFSET = 2;
+    // Most cluster cells a viewport may span on either axis
+    private static final int MAX_VIEWPORT_CELLS = 64;
+
+    private final SpatialIndex spatialIndex;
+
+    // Zoom from which a viewport lists individual hotels instead of clusters
+    @Value("${spatial.viewport.hotelZoom:14}")
+    private int hotelZoom = 14;
+
+    // Most hotels a viewport lists individually; busier viewports stay clustered
+    @Value("${spatial.viewport.maxHotels:500}")
+    private int maxViewportHotels = 500;
+
+    public ViewportService(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    public ViewportResponse findInViewport(double south, double west, double north, double east, int zoom) {
+        GeoBox box = new GeoBox(south, west, north, east);
+
+        List<HotelClusterResponse> clusters = new ArrayList<>();
+        ClusterPyramid.CellConsumer consumer = (count, latitude, longitude, hotelId) -> clusters.add(
+                new HotelClusterResponse(latitude, longitude, count, count == 1 ? hotelId : null));
+        ClusterPyramid pyramid = spatialIndex.clusterPyramid();
+        int level = clusterLevel(box, zoom);
+        if (box.crossesAntimeridian()) {
+            pyramid.query(south, west, north, 180, level, consumer);
+            pyramid.query(south, -180, north, east, level, consumer);
+        } else {
+            pyramid.query(south, west, north, east, level, consumer);
+        }
+
+        if (zoom >= hotelZoom) {
+            // Cells on the edge reach past the viewport, so this is an upper bound
+            long inView = clusters.stream().mapToLong(HotelClusterResponse::getCount).sum();
+            if (inView <= maxViewportHotels) {
+                return new ViewportResponse(zoom, false, List.of(),
+                        spatialIndex.findHotelsInBox(south, west, north, east));
+            }
+        }
+        return new ViewportResponse(zoom, true, clusters, List.of());
+    }
+
+    // Finest pyramid level for the zoom at which the viewport spans at most MAX_VIEWPORT_CELLS per axis
+    private static int clusterLevel(GeoBox box, int zoom) {
+        int level = Math.min(Math.max(0, zoom + CLUSTER_LEVEL_OFFSET), ClusterPyramid.MAX_LEVEL);
+        while (level > 0 && (box.width() / 360 * (1 << level) > MAX_VIEWPORT_CELLS
+                || box.height() / 180 * (1 << level) > MAX_VIEWPORT_CELLS)) {
+            level--;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,250 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.BookedRoom;
+import com.dailycodework.lakesidehotel.model.Room;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads book a few hot rooms at once. No two admitted stays of a room
+ * may share a night; BookingAdmissionBenchmark measures the throughput.
+ */
+class BookingAdmissionServiceTest {
+
+    private static final int THREADS = 64;
+    private static final int HOT_ROOMS = 10;
+    private static final long RUN_MILLIS = 500;
+
+    @Test
+    void testHotRoomsAreNeverDoubleBooked() throws Exception {
+        LocalDate today = LocalDate.now();
+        RoomAvailabilityService availability = new RoomAvailabilityService();
+        availability.rebuild(rooms(), List.of());
+        BookingAdmissionService admission = new BookingAdmissionService(availability, 256);
+
+        // Stands in for the booking table: admitted stays per room
+        List<List<LocalDate[]>> persisted = new ArrayList<>();
+        for (int r = 0; r < HOT_ROOMS; r++) {
+            persisted.add(new ArrayList<>());
+        }
+        AtomicLong doubleBookings = new AtomicLong();
+        AtomicLong admitted = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (running.get()) {
+                        int room = random.nextInt(HOT_ROOMS);
+                        LocalDate checkIn = today.plusDays(random.nextInt(300));
+                        LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(4));
+                        boolean booked = admission.admit(room + 1, checkIn, checkOut, () -> {
+                            List<LocalDate[]> stays = persisted.get(room);
+                            // Unsynchronized on purpose: only the room's stripe lock protects it
+                            for (LocalDate[] stay : stays) {
+                                if (BookedRoom.overlaps(checkIn, checkOut, stay[0], stay[1])) {
+                                    doubleBookings.incrementAndGet();
+                                }
+                            }
+                            Thread.yield();
+                            stays.add(new LocalDate[] { checkIn, checkOut });
+                        });
+                        if (booked) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+
+        assertNull(failure.get());
+        assertEquals(0L, doubleBookings.get());
+        assertTrue(admitted.get() > 0);
+        int stays = 0;
+        for (int r = 0; r < HOT_ROOMS; r++) {
+            List<LocalDate[]> roomStays = persisted.get(r);
+            stays += roomStays.size();
+            for (int i = 0; i < roomStays.size(); i++) {
+                for (int j = i + 1; j < roomStays.size(); j++) {
+                    assertFalse(BookedRoom.overlaps(roomStays.get(i)[0], roomStays.get(i)[1],
+                            roomStays.get(j)[0], roomStays.get(j)[1]));
+                }
+            }
+        }
+        assertEquals(admitted.get(), (long) stays);
+    }
+
+    @Test
+    void testFailedPersistLeavesTheCalendarAlone() {
+        LocalDate today = LocalDate.now();
+        RoomAvailabilityService availability = new RoomAvailabilityService();
+        availability.rebuild(rooms(), List.of());
+        BookingAdmissionService admission = new BookingAdmissionService(availability, 4);
+
+        assertThrows(IllegalStateException.class, () -> admission.admit(1, today, today.plusDays(2), () -> {
+            throw new IllegalStateException("database down");
+        }));
+        assertTrue(availability.isRoomAvailable(1, today, today.plusDays(2)));
+
+        assertTrue(admission.admit(1, today, today.plusDays(2), () -> { }));
+        assertFalse(admission.admit(1, today.plusDays(1), today.plusDays(3), () -> {
+            throw new AssertionError("room was taken");
+        }));
+        assertTrue(admission.admit(1, today.plusDays(2), today.plusDays(3), () -> { }));
+    }
+
+    @Test
+    void testUntrackedRoomsAreLeftToPersist() {
+        LocalDate today = LocalDate.now();
+        RoomAvailabilityService availability = new RoomAvailabilityService();
+        availability.rebuild(rooms(), List.of());
+        BookingAdmissionService admission = new BookingAdmissionService(availability, 4);
+        assertTrue(admission.admit(1, today, today.plusDays(2), () -> { }));
+
+        // Created after the calendar was loaded: only the database can tell, and persist asks it
+        AtomicBoolean persisted = new AtomicBoolean();
+        assertTrue(admission.admit(9_999, today, today.plusDays(2), () -> persisted.set(true)));
+        assertTrue(persisted.get());
+        assertFalse(admission.admit(1, today.plusDays(1), today.plusDays(3), () -> {
+            throw new AssertionError("room 1 is booked");
+        }));
+    }
+
+    @Test
+    void testReleaseFreesOnlyNightsItsBookingHeld() {
+        LocalDate today = LocalDate.now();
+        RoomAvailabilityService availability = new RoomAvailabilityService();
+        availability.rebuild(rooms(), List.of());
+        BookingAdmissionService admission = new BookingAdmissionService(availability, 4);
+        assertTrue(admission.admit(1, today, today.plusDays(3), () -> { }));
+
+        // A cancelled booking over the same nights never held them
+        admission.release(1, today, today.plusDays(3), () -> false);
+        assertFalse(availability.isRoomAvailable(1, today, today.plusDays(1)));
+
+        assertThrows(IllegalStateException.class, () -> admission.release(1, today, today.plusDays(3), () -> {
+            throw new IllegalStateException("database down");
+        }));
+        assertFalse(availability.isRoomAvailable(1, today, today.plusDays(1)));
+
+        admission.release(1, today, today.plusDays(3), () -> true);
+        assertTrue(availability.isRoomAvailable(1, today, today.plusDays(3)));
+    }
+
+    @Test
+    void testGroupIsBookedWhollyOrNotAtAll() {
+        LocalDate today = LocalDate.now();
+        RoomAvailabilityService availability = new RoomAvailabilityService();
+        availability.rebuild(rooms(), List.of());
+        BookingAdmissionService admission = new BookingAdmissionService(availability, 4);
+        assertTrue(admission.admit(3, today.plusDays(1), today.plusDays(2), () -> { }));
+
+        List<BookingAdmissionService.Stay> group = List.of(
+                new BookingAdmissionService.Stay(1, today, today.plusDays(3)),
+                new BookingAdmissionService.Stay(2, today, today.plusDays(3)),
+                new BookingAdmissionService.Stay(3, today, today.plusDays(3)));
+        assertEquals(List.of(3L), admission.admitAll(group, () -> {
+            throw new AssertionError("room 3 was taken");
+        }));
+        assertTrue(availability.isRoomAvailable(1, today, today.plusDays(3)));
+        assertTrue(availability.isRoomAvailable(2, today, today.plusDays(3)));
+
+        // The same room twice in one group must not overlap either
+        assertEquals(List.of(1L), admission.admitAll(List.of(
+                new BookingAdmissionService.Stay(1, today, today.plusDays(2)),
+                new BookingAdmissionService.Stay(1, today.plusDays(1), today.plusDays(3))), () -> {
+                    throw new AssertionError("room 1 twice");
+                }));
+
+        assertTrue(admission.admitAll(List.of(
+                new BookingAdmissionService.Stay(1, today, today.plusDays(2)),
+                new BookingAdmissionService.Stay(1, today.plusDays(2), today.plusDays(3)),
+                new BookingAdmissionService.Stay(2, today, today.plusDays(3))), () -> { }).isEmpty());
+        assertFalse(availability.isRoomAvailable(1, today.plusDays(2), today.plusDays(3)));
+        assertFalse(availability.isRoomAvailable(2, today, today.plusDays(1)));
+    }
+
+    @Test
+    void testOverlappingGroupsNeitherDeadlockNorDoubleBook() throws Exception {
+        LocalDate today = LocalDate.now();
+        RoomAvailabilityService availability = new RoomAvailabilityService();
+        availability.rebuild(rooms(), List.of());
+        // Few stripes, so groups share stripes as well as rooms
+        BookingAdmissionService admission = new BookingAdmissionService(availability, 4);
+        List<List<LocalDate[]>> persisted = new ArrayList<>();
+        for (int r = 0; r < HOT_ROOMS; r++) {
+            persisted.add(new ArrayList<>());
+        }
+        AtomicLong doubleBookings = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(16);
+
+        for (int t = 0; t < 16; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    for (int g = 0; g < 500; g++) {
+                        // Rooms listed in random order, as callers send them
+                        List<BookingAdmissionService.Stay> group = new ArrayList<>();
+                        LocalDate checkIn = today.plusDays(random.nextInt(200));
+                        for (int r = 0; r < 4; r++) {
+                            group.add(new BookingAdmissionService.Stay(1 + random.nextInt(HOT_ROOMS), checkIn,
+                                    checkIn.plusDays(1 + random.nextInt(3))));
+                        }
+                        admission.admitAll(group, () -> {
+                            for (BookingAdmissionService.Stay stay : group) {
+                                List<LocalDate[]> stays = persisted.get((int) stay.roomId() - 1);
+                                for (LocalDate[] booked : stays) {
+                                    if (BookedRoom.overlaps(stay.checkIn(), stay.checkOut(), booked[0], booked[1])) {
+                                        doubleBookings.incrementAndGet();
+                                    }
+                                }
+                                stays.add(new LocalDate[] { stay.checkIn(), stay.checkOut() });
+                            }
+                        });
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(60, TimeUnit.SECONDS), "group admissions deadlocked");
+        assertNull(failure.get());
+        assertEquals(0L, doubleBookings.get());
+    }
+
+    private static List<Room> rooms() {
+        List<Room> rooms = new ArrayList<>();
+        for (long id = 1; id <= HOT_ROOMS; id++) {
+            Room room = new Room();
+            room.setId(id);
+            rooms.add(room);
+        }
+        return rooms;
+    }
+}
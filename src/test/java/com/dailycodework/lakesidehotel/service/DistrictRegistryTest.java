@@ -0,0 +1,76 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.GeoPolygon;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistrictRegistryTest {
+
+    private static final String DISTRICTS = """
+            { "type": "FeatureCollection", "features": [
+              { "type": "Feature", "properties": { "name": "Old Town" },
+                "geometry": { "type": "Polygon", "coordinates": [
+                  [[85.30, 27.70], [85.34, 27.70], [85.34, 27.74], [85.30, 27.74], [85.30, 27.70]],
+                  [[85.31, 27.71], [85.33, 27.71], [85.33, 27.73], [85.31, 27.73], [85.31, 27.71]] ] } },
+              { "type": "Feature", "properties": { "name": "Harbour" },
+                "geometry": { "type": "MultiPolygon", "coordinates": [
+                  [[[85.40, 27.70], [85.41, 27.70], [85.41, 27.71], [85.40, 27.70]]],
+                  [[[85.50, 27.70], [85.51, 27.70], [85.51, 27.71], [85.50, 27.70]]] ] } },
+              { "type": "Feature", "properties": {},
+                "geometry": { "type": "Polygon", "coordinates": [[[0, 0], [1, 0], [1, 1], [0, 0]]] } },
+              { "type": "Feature", "properties": { "name": "Landmark" },
+                "geometry": { "type": "Point", "coordinates": [85.32, 27.72] } } ] }
+            """;
+
+    @Test
+    void testLoadsNamedPolygonsAndSkipsTheRest() throws IOException {
+        Path file = Files.createTempFile("districts", ".geojson");
+        Files.writeString(file, DISTRICTS);
+
+        DistrictRegistry registry = new DistrictRegistry(file.toString());
+
+        assertEquals(List.of("Harbour", "Old Town"), registry.names());
+        GeoPolygon oldTown = registry.find("old town").orElseThrow();
+        assertTrue(oldTown.contains(27.705, 85.305));
+        assertFalse(oldTown.contains(27.72, 85.32)); // in the hole
+        assertFalse(oldTown.contains(27.75, 85.32));
+
+        GeoPolygon harbour = registry.find("Harbour").orElseThrow();
+        assertTrue(harbour.contains(27.702, 85.408));
+        assertTrue(harbour.contains(27.702, 85.508));
+        assertFalse(harbour.contains(27.702, 85.45));
+        assertTrue(registry.find("Landmark").isEmpty());
+    }
+
+    @Test
+    void testMissingFileLeavesTheRegistryEmpty() {
+        assertTrue(new DistrictRegistry("does-not-exist.geojson").names().isEmpty());
+        assertTrue(new DistrictRegistry("").names().isEmpty());
+    }
+
+    @Test
+    void testRejectsUnsupportedGeometries() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+
+        assertThrows(IllegalArgumentException.class, () -> DistrictRegistry.polygonOf(
+                mapper.readTree("{ \"type\": \"Point\", \"coordinates\": [1, 2] }")));
+        // Two vertices only
+        assertThrows(IllegalArgumentException.class, () -> DistrictRegistry.polygonOf(
+                mapper.readTree("{ \"type\": \"Polygon\", \"coordinates\": [[[0, 0], [1, 1], [0, 0]]] }")));
+        assertThrows(IllegalArgumentException.class, () -> DistrictRegistry.polygonOf(mapper.readTree(
+                "{ \"type\": \"Polygon\", \"coordinates\": [[[179, 0], [-179, 0], [-179, 1], [179, 0]]] }")));
+
+        // Over the vertex or ring budget
+        String square = "{ \"type\": \"Polygon\", \"coordinates\": [[[0, 0], [1, 0], [1, 1], [0, 1], [0, 0]]] }";
+        assertNotNull(DistrictRegistry.polygonOf(mapper.readTree(square), 1, 5));
+        assertThrows(IllegalArgumentException.class, () -> DistrictRegistry.polygonOf(mapper.readTree(square), 1, 4));
+        assertThrows(IllegalArgumentException.class, () -> DistrictRegistry.polygonOf(mapper.readTree(square), 0, 5));
+    }
+}
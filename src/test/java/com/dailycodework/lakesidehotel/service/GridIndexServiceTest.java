@@ -0,0 +1,9 @@
+package com.dailycodework.lakesidehotel.service;
+
+class GridIndexServiceTest extends SpatialIndexContractTest {
+
+    @Override
+    protected SpatialIndex createIndex() {
+        return new GridIndexService(0.25);
+    }
+}
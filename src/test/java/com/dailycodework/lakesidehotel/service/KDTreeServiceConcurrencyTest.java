@@ -0,0 +1,109 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Readers query while a writer keeps updating hotels. Every reader must see a
+ * consistent snapshot; KDTreeConcurrencyBenchmark measures the throughput.
+ */
+class KDTreeServiceConcurrencyTest {
+
+    private static final int HOTELS = 20_000;
+    private static final long RUN_MILLIS = 300;
+
+    @Test
+    void testReadersRunConcurrentlyWithWriter() throws Exception {
+        for (int readers : new int[] { 1, 8, 32 }) {
+            KDTreeService service = new KDTreeService();
+            service.rebuild(hotels(HOTELS));
+
+            assertTrue(run(service, readers) > 0);
+        }
+    }
+
+    private long run(KDTreeService service, int readers) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong queries = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(readers + 1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    while (running.get()) {
+                        List<NearbyHotelResponse> nearest = service.findNearestHotels(
+                                -60 + random.nextDouble() * 120, -180 + random.nextDouble() * 360, 10);
+                        assertEquals(10, nearest.size());
+                        for (int i = 1; i < nearest.size(); i++) {
+                            assertTrue(nearest.get(i - 1).getDistance() <= nearest.get(i).getDistance());
+                        }
+                        count++;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    queries.addAndGet(count);
+                    done.countDown();
+                }
+            }));
+        }
+
+        threads.add(new Thread(() -> {
+            Random random = new Random(7);
+            try {
+                while (running.get()) {
+                    long id = 1 + random.nextInt(HOTELS);
+                    service.updateHotelCache(hotel(id, -60 + random.nextDouble() * 120,
+                            -180 + random.nextDouble() * 360));
+                    Thread.sleep(1);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                done.countDown();
+            }
+        }));
+
+        threads.forEach(Thread::start);
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+
+        assertNull(failure.get());
+        return queries.get();
+    }
+
+    private List<Hotel> hotels(int n) {
+        Random random = new Random(n);
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= n; i++) {
+            hotels.add(hotel(i, -60 + random.nextDouble() * 120, -180 + random.nextDouble() * 360));
+        }
+        return hotels;
+    }
+
+    private Hotel hotel(long id, double latitude, double longitude) {
+        Hotel hotel = new Hotel();
+        hotel.setId(id);
+        hotel.setName("Hotel " + id);
+        hotel.setLatitude(latitude);
+        hotel.setLongitude(longitude);
+        return hotel;
+    }
+}
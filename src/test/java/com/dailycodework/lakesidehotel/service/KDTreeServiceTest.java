@@ -1,12 +1,25 @@
 package com.dailycodework.lakesidehotel.service;
 
 import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.HotelRoomProfile;
+import com.dailycodework.lakesidehotel.model.KDTreeIndex;
+import com.dailycodework.lakesidehotel.model.NearbyCursor;
+import com.dailycodework.lakesidehotel.model.RoomFilter;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
 import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import com.dailycodework.lakesidehotel.response.SpatialIndexStatsResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -89,4 +102,447 @@ class KDTreeServiceTest {
         assertEquals(0.0, nearest.get(0).getDistance(), 0.1); // Should be at same location
         assertTrue(nearest.get(1).getDistance() > 0); // Should have some distance
     }
+
+    @Test
+    void testRebuildIsBalancedForSortedInput() {
+        // Rows sorted by id are roughly sorted geographically; one-by-one insertion
+        // would degenerate into a linked list here
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 1000; i++) {
+            hotels.add(hotel(i, 27.0 + i * 0.001, 83.0 + i * 0.001));
+        }
+
+        kdTreeService.rebuild(hotels);
+
+        SpatialIndexStatsResponse stats = kdTreeService.getStats();
+        assertEquals(1000, stats.getNodeCount());
+        assertEquals(10, stats.getBalancedDepth());
+        assertEquals(stats.getBalancedDepth(), stats.getDepth());
+
+        List<NearbyHotelResponse> nearest = kdTreeService.findNearestHotels(27.5, 83.5, 3);
+        assertEquals(500L, nearest.get(0).getId());
+    }
+
+    @Test
+    void testParallelRebuildIsBalanced() {
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 50_000; i++) {
+            hotels.add(hotel(i, -60.0 + (i % 250) * 0.5, -170.0 + (i / 250) * 1.5));
+        }
+
+        kdTreeService.rebuild(hotels);
+
+        SpatialIndexStatsResponse stats = kdTreeService.getStats();
+        assertEquals(50_000, stats.getNodeCount());
+        assertEquals(16, stats.getDepth());
+    }
+
+    @Test
+    void testIncrementalInsertsMatchBruteForce() {
+        // Enough inserts to fold the unbuilt tail into the tree several times
+        Random random = new Random(42);
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 2000; i++) {
+            Hotel hotel = hotel(i, -60 + random.nextDouble() * 120, -180 + random.nextDouble() * 360);
+            hotels.add(hotel);
+            kdTreeService.updateHotelCache(hotel);
+        }
+
+        for (int q = 0; q < 50; q++) {
+            double lat = -60 + random.nextDouble() * 120;
+            double lon = -180 + random.nextDouble() * 360;
+
+            List<Long> expected = hotels.stream()
+                    .sorted(Comparator.comparingDouble(h -> haversine(lat, lon, h.getLatitude(), h.getLongitude())))
+                    .limit(10)
+                    .map(Hotel::getId)
+                    .toList();
+            List<Long> actual = kdTreeService.findNearestHotels(lat, lon, 10).stream()
+                    .map(NearbyHotelResponse::getId)
+                    .toList();
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testUpdateMovesHotelInsteadOfDuplicating() {
+        kdTreeService.updateHotelCache(hotel(1L, 40.7128, -74.0060)); // New York
+        kdTreeService.updateHotelCache(hotel(2L, 40.7589, -73.9851)); // Times Square
+        kdTreeService.updateHotelCache(hotel(1L, 51.5074, -0.1278)); // Hotel 1 moves to London
+
+        List<NearbyHotelResponse> nearest = kdTreeService.findNearestHotels(40.7128, -74.0060, 5);
+
+        assertEquals(2, nearest.size());
+        assertEquals(2L, nearest.get(0).getId());
+        assertEquals(1L, nearest.get(1).getId());
+        assertEquals(51.5074, nearest.get(1).getLatitude(), 1e-9);
+
+        SpatialIndexStatsResponse stats = kdTreeService.getStats();
+        assertEquals(2, stats.getLiveCount());
+        assertEquals(2, stats.getCachedHotels());
+    }
+
+    @Test
+    void testUpdateWithSameCoordinatesKeepsNode() {
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            hotels.add(hotel(i, 27.0 + i * 0.01, 83.0));
+        }
+        kdTreeService.rebuild(hotels);
+
+        Hotel renamed = hotel(5L, 27.05, 83.0);
+        renamed.setName("Renamed");
+        kdTreeService.updateHotelCache(renamed);
+
+        SpatialIndexStatsResponse stats = kdTreeService.getStats();
+        assertEquals(100, stats.getNodeCount());
+        assertEquals(0, stats.getDeadCount());
+        assertEquals("Renamed", kdTreeService.findNearestHotels(27.05, 83.0, 1).get(0).getName());
+    }
+
+    @Test
+    void testResultsComeFromCachedSummaries() {
+        Hotel cached = hotel(1L, 40.7589, -73.9851);
+        kdTreeService.updateHotelCache(cached);
+        // Located but never cached: must not take one of the k places
+        kdTreeService.insertHotel(2L, 40.7128, -74.0060);
+        kdTreeService.updateHotelCache(hotel(3L, 40.7505, -73.9934));
+
+        // The index keeps its own copy, not the entity
+        cached.setName("Edited after caching");
+
+        List<NearbyHotelResponse> nearest = kdTreeService.findNearestHotels(40.7128, -74.0060, 2);
+        assertEquals(List.of(3L, 1L), nearest.stream().map(NearbyHotelResponse::getId).toList());
+        assertEquals("Hotel 1", nearest.get(1).getName());
+    }
+
+    @Test
+    void testRemovedHotelsAreTombstonedThenCompacted() {
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            hotels.add(hotel(i, 27.0 + i * 0.01, 83.0 + i * 0.01));
+        }
+        kdTreeService.rebuild(hotels);
+
+        for (long i = 1; i <= 20; i++) {
+            kdTreeService.removeHotel(i);
+        }
+
+        SpatialIndexStatsResponse stats = kdTreeService.getStats();
+        assertEquals(100, stats.getNodeCount());
+        assertEquals(80, stats.getLiveCount());
+        assertEquals(20, stats.getDeadCount());
+        assertEquals(80, stats.getCachedHotels());
+        assertEquals(21L, kdTreeService.findNearestHotels(27.0, 83.0, 1).get(0).getId());
+
+        // The 26th removal passes the default 25% dead ratio and rebuilds the tree
+        // from the 74 live nodes; the last four removals are tombstoned again
+        for (long i = 21; i <= 30; i++) {
+            kdTreeService.removeHotel(i);
+        }
+
+        stats = kdTreeService.getStats();
+        assertEquals(74, stats.getNodeCount());
+        assertEquals(70, stats.getLiveCount());
+        assertEquals(4, stats.getDeadCount());
+        assertEquals(stats.getBalancedDepth(), stats.getDepth());
+        assertEquals(31L, kdTreeService.findNearestHotels(27.0, 83.0, 1).get(0).getId());
+    }
+
+    @Test
+    void testIndexMemoryFootprint() {
+        // KDTreeNode with boxed Long/Double fields cost 104 bytes per hotel; the
+        // index keeps id, lat/lon and the unit vector in 48
+        for (int n : new int[] { 100_000, 1_000_000 }) {
+            long[] ids = new long[n];
+            double[] latitudes = new double[n];
+            double[] longitudes = new double[n];
+            Random random = new Random(n);
+            for (int i = 0; i < n; i++) {
+                ids[i] = i + 1;
+                latitudes[i] = -85 + random.nextDouble() * 170;
+                longitudes[i] = -180 + random.nextDouble() * 360;
+            }
+
+            KDTreeIndex index = KDTreeIndex.build(ids, latitudes, longitudes);
+            double bytesPerHotel = (double) index.memoryBytes() / n;
+
+            assertEquals(KDTreeIndex.balancedDepth(n), index.depth());
+            assertTrue(bytesPerHotel < 49);
+        }
+    }
+
+    @Test
+    void testSearchPrunesMostOfTheTree() {
+        int n = 100_000;
+        Random random = new Random(5);
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= n; i++) {
+            hotels.add(hotel(i, -85 + random.nextDouble() * 170, -180 + random.nextDouble() * 360));
+        }
+        kdTreeService.rebuild(hotels);
+
+        long visited = 0;
+        int queries = 200;
+        for (int q = 0; q < queries; q++) {
+            visited += kdTreeService.findNearest(
+                    -85 + random.nextDouble() * 170, -180 + random.nextDouble() * 360, 10, Double.POSITIVE_INFINITY).nodesVisited();
+        }
+
+        double visitedRatio = (double) visited / queries / n;
+        assertTrue(visitedRatio < 0.02);
+    }
+
+    @Test
+    void testRoomFilterSkipsSubtreesWithoutMatchingRooms() {
+        int n = 100_000;
+        List<Hotel> hotels = SpatialTestData.uniform(n, 37);
+        kdTreeService.rebuild(hotels);
+        kdTreeService.rebuildRoomProfiles(SpatialIndexContractTest.roomProfiles(hotels, 38));
+        // Suites under 60 with amenities 1 and 2: about one hotel in a thousand
+        RoomFilter rare = new RoomFilter(1 << 2, 60, 0b110, null);
+
+        Random random = new Random(39);
+        long visited = 0;
+        int queries = 200;
+        for (int q = 0; q < queries; q++) {
+            KDTreeService.NearestSearch search = kdTreeService.findNearest(
+                    -85 + random.nextDouble() * 170, -180 + random.nextDouble() * 360, 10, rare);
+            assertEquals(10, search.results().size());
+            visited += search.nodesVisited();
+        }
+
+        // Checking hotels one by one, without the aggregates, visits about 37% of the nodes here
+        double visitedRatio = (double) visited / queries / n;
+        assertTrue(visitedRatio < 0.10);
+    }
+
+    @Test
+    void testRoomChangesPublishNewAggregates() {
+        kdTreeService.rebuild(SpatialTestData.uniform(10_000, 40));
+        RoomFilter suite = new RoomFilter(1 << 2, Double.POSITIVE_INFINITY, 0, null);
+        assertTrue(kdTreeService.findNearestHotels(0, 0, 1, suite, null).isEmpty());
+        int visitedBefore = kdTreeService.findNearest(0, 0, 5, suite).nodesVisited();
+
+        kdTreeService.updateRoomProfile(1234L, HotelRoomProfile.of(new long[] { 1 }, new double[] { 150 },
+                new int[] { 1 << 2 }, new long[] { 0 }));
+
+        assertEquals(List.of(1234L), kdTreeService.findNearestHotels(0, 0, 5, suite, null).stream()
+                .map(NearbyHotelResponse::getId).toList());
+        kdTreeService.updateRoomProfile(1234L, null);
+        assertTrue(kdTreeService.findNearestHotels(0, 0, 5, suite, null).isEmpty());
+        // The path to the hotel is recomputed, not left widened: the search prunes as before
+        assertEquals(visitedBefore, kdTreeService.findNearest(0, 0, 5, suite).nodesVisited());
+    }
+
+    @Test
+    void testDeepPageResumesWithoutRelistingEarlierHotels() {
+        int n = 100_000;
+        kdTreeService.rebuild(SpatialTestData.uniform(n, 6));
+
+        // Walk 250 pages of 20 from scratch, then fetch the next page from the last cursor alone
+        KDTreeService.BestFirstSearch fromStart = kdTreeService.bestFirst(48.86, 2.35, null);
+        NearbyHotelResponse last = null;
+        for (int i = 0; i < 5_000; i++) {
+            last = fromStart.next();
+        }
+        KDTreeService.BestFirstSearch resumed = kdTreeService.bestFirst(48.86, 2.35,
+                new NearbyCursor(last.getDistance(), last.getId()));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(fromStart.next().getId(), resumed.next().getId());
+        }
+
+        assertTrue(resumed.expanded() * 2 < fromStart.expanded());
+    }
+
+    @Test
+    void testNearestAcrossAntimeridian() {
+        kdTreeService.rebuild(List.of(
+                hotel(1L, 0.0, -179.99),
+                hotel(2L, 0.0, 179.0),
+                hotel(3L, 0.0, 170.0)));
+
+        List<NearbyHotelResponse> nearest = kdTreeService.findNearestHotels(0.0, 179.99, 3);
+
+        assertEquals(List.of(1L, 2L, 3L), nearest.stream().map(NearbyHotelResponse::getId).toList());
+        assertEquals(2.2, nearest.get(0).getDistance(), 0.1);
+    }
+
+    @Test
+    void testNearestNearPolesMatchesBruteForce() {
+        Random random = new Random(11);
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 5000; i++) {
+            double lat = (random.nextBoolean() ? 1 : -1) * (80 + random.nextDouble() * 10);
+            hotels.add(hotel(i, lat, -180 + random.nextDouble() * 360));
+        }
+        kdTreeService.rebuild(hotels);
+
+        for (int q = 0; q < 50; q++) {
+            double lat = (random.nextBoolean() ? 1 : -1) * (85 + random.nextDouble() * 5);
+            double lon = -180 + random.nextDouble() * 360;
+
+            List<Long> expected = hotels.stream()
+                    .sorted(Comparator.comparingDouble(h -> haversine(lat, lon, h.getLatitude(), h.getLongitude())))
+                    .limit(10)
+                    .map(Hotel::getId)
+                    .toList();
+            List<Long> actual = kdTreeService.findNearestHotels(lat, lon, 10).stream()
+                    .map(NearbyHotelResponse::getId)
+                    .toList();
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testHotelsWithinRadiusMatchBruteForce() {
+        // A dense city centre inside a uniformly spread catalog
+        Random random = new Random(21);
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 100_000; i++) {
+            hotels.add(i % 20 == 0
+                    ? hotel(i, 48.85 + random.nextGaussian() * 0.05, 2.35 + random.nextGaussian() * 0.08)
+                    : hotel(i, -85 + random.nextDouble() * 170, -180 + random.nextDouble() * 360));
+        }
+        kdTreeService.rebuild(hotels);
+
+        for (int q = 0; q < 50; q++) {
+            double lat = 48.85 + random.nextGaussian() * 0.02;
+            double lon = 2.35 + random.nextGaussian() * 0.03;
+
+            List<Long> expected = hotels.stream()
+                    .filter(h -> haversine(lat, lon, h.getLatitude(), h.getLongitude()) <= 5)
+                    .sorted(Comparator.comparingDouble(h -> haversine(lat, lon, h.getLatitude(), h.getLongitude())))
+                    .map(Hotel::getId)
+                    .toList();
+
+            List<NearbyHotelResponse> within = kdTreeService.findHotelsWithin(lat, lon, 5);
+            assertEquals(expected, within.stream().map(NearbyHotelResponse::getId).toList());
+            assertEquals(expected.subList(0, 20), kdTreeService.findHotelsWithin(lat, lon, 5, 20).stream()
+                    .map(NearbyHotelResponse::getId)
+                    .toList());
+        }
+
+        assertTrue(kdTreeService.findHotelsWithin(0, -150, 5).isEmpty());
+    }
+
+    @Test
+    void testHotelsWithinAcrossAntimeridian() {
+        kdTreeService.rebuild(List.of(
+                hotel(1L, 0.0, -179.99),
+                hotel(2L, 0.0, 179.97),
+                hotel(3L, 0.0, 179.0)));
+
+        List<NearbyHotelResponse> within = kdTreeService.findHotelsWithin(0.0, 179.99, 5);
+
+        assertEquals(List.of(2L, 1L), within.stream().map(NearbyHotelResponse::getId).toList());
+    }
+
+    @Test
+    void testHotelsInBoxMatchBruteForce() {
+        Random random = new Random(31);
+        List<Hotel> hotels = new ArrayList<>();
+        for (long i = 1; i <= 20_000; i++) {
+            hotels.add(hotel(i, -89 + random.nextDouble() * 178, -180 + random.nextDouble() * 360));
+        }
+        kdTreeService.rebuild(hotels);
+
+        double[][] boxes = {
+                { 10, 20, 15, 30 },
+                { -5, 170, 5, -170 }, // crosses the antimeridian
+                { 80, -180, 90, 180 }, // polar cap
+                { -30, -100, 40, 100 },
+                { 0, -5, 3, 5 } };
+        for (double[] box : boxes) {
+            double south = box[0], west = box[1], north = box[2], east = box[3];
+            List<Long> expected = hotels.stream()
+                    .filter(h -> h.getLatitude() >= south && h.getLatitude() <= north
+                            && (west <= east
+                                    ? h.getLongitude() >= west && h.getLongitude() <= east
+                                    : h.getLongitude() >= west || h.getLongitude() <= east))
+                    .map(Hotel::getId)
+                    .sorted()
+                    .toList();
+            List<Long> actual = kdTreeService.findHotelsInBox(south, west, north, east).stream()
+                    .map(MapHotelResponse::getId)
+                    .sorted()
+                    .toList();
+
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testMetricsFollowSearchesWritesAndTreeShape() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        kdTreeService.setMeterRegistry(registry);
+        List<Hotel> hotels = SpatialTestData.uniform(10_000, 81);
+        kdTreeService.rebuild(hotels);
+        kdTreeService.removeHotel(1L);
+        kdTreeService.insertHotel(20_000L, 10.0, 10.0);
+
+        Random random = new Random(82);
+        long visited = 0;
+        for (int q = 0; q < 100; q++) {
+            double[] query = SpatialTestData.queryNear(hotels, random);
+            visited += kdTreeService.findNearest(query[0], query[1], 10, Double.POSITIVE_INFINITY).nodesVisited();
+        }
+
+        DistributionSummary nodes = registry.get("kdtree.search.nodes").summary();
+        assertEquals(100, nodes.count());
+        assertEquals(visited, (long) nodes.totalAmount());
+        assertEquals(100, registry.get("kdtree.search.time").timer().count());
+        assertEquals(3, registry.get("kdtree.write.lock.wait").timer().count());
+
+        SpatialIndexStatsResponse stats = kdTreeService.getStats();
+        assertEquals(stats.getNodeCount(), (int) registry.get("kdtree.nodes").gauge().value());
+        assertEquals(1, (int) registry.get("kdtree.nodes.dead").gauge().value());
+        assertEquals(1, (int) registry.get("kdtree.nodes.unbuilt").gauge().value());
+        assertEquals(stats.getDepth(), (int) registry.get("kdtree.depth").gauge().value());
+    }
+
+    @Test
+    void testMetricsRecordEverySearchWithoutChangingResults() {
+        List<Hotel> hotels = SpatialTestData.uniform(10_000, 83);
+        kdTreeService.rebuild(hotels);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        KDTreeService measured = new KDTreeService();
+        measured.setMeterRegistry(registry);
+        measured.rebuild(hotels);
+
+        Random random = new Random(84);
+        for (int q = 0; q < 200; q++) {
+            double[] query = SpatialTestData.queryNear(hotels, random);
+            assertEquals(kdTreeService.findNearestHotels(query[0], query[1], 10).stream()
+                            .map(NearbyHotelResponse::getId).toList(),
+                    measured.findNearestHotels(query[0], query[1], 10).stream()
+                            .map(NearbyHotelResponse::getId).toList());
+        }
+
+        // Allocation per search is checked with KDTreeMetricsBenchmark under -prof gc
+        assertEquals(200, registry.get("kdtree.search.time").timer().count());
+        assertEquals(200, registry.get("kdtree.search.nodes").summary().count());
+        assertTrue(registry.get("kdtree.search.time").timer().totalTime(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    private static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                        * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        return 6371 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    private Hotel hotel(long id, double latitude, double longitude) {
+        Hotel hotel = new Hotel();
+        hotel.setId(id);
+        hotel.setName("Hotel " + id);
+        hotel.setLatitude(latitude);
+        hotel.setLongitude(longitude);
+        return hotel;
+    }
 }
@@ -0,0 +1,9 @@
+package com.dailycodework.lakesidehotel.service;
+
+class KDTreeSpatialIndexTest extends SpatialIndexContractTest {
+
+    @Override
+    protected SpatialIndex createIndex() {
+        return new KDTreeService();
+    }
+}
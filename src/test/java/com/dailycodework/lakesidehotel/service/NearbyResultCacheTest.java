@@ -0,0 +1,98 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.response.NearbyCacheStatsResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearbyResultCacheTest {
+
+    private KDTreeService kdTreeService;
+
+    @BeforeEach
+    void setUp() {
+        kdTreeService = new KDTreeService();
+    }
+
+    @Test
+    void testCachedAnswersMatchTheIndex() {
+        List<Hotel> hotels = SpatialTestData.clusteredCities(20_000, 51);
+        kdTreeService.rebuild(hotels);
+        NearbyResultCache cache = new NearbyResultCache(kdTreeService, 500, 10_000);
+
+        Random random = new Random(52);
+        List<double[]> hotSpots = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            hotSpots.add(SpatialTestData.queryNear(hotels, random));
+        }
+        for (int q = 0; q < 2_000; q++) {
+            // Queries land anywhere in the cells around a few hot spots
+            double[] spot = hotSpots.get(random.nextInt(hotSpots.size()));
+            double lat = spot[0] + (random.nextDouble() - 0.5) * 0.01;
+            double lon = spot[1] + (random.nextDouble() - 0.5) * 0.01;
+            int k = 1 + random.nextInt(10);
+
+            List<NearbyHotelResponse> cached = cache.findNearestHotels(lat, lon, k);
+            List<NearbyHotelResponse> direct = kdTreeService.findNearestHotels(lat, lon, k);
+            assertEquals(ids(direct), ids(cached));
+            for (int i = 0; i < direct.size(); i++) {
+                assertEquals(direct.get(i).getDistance(), cached.get(i).getDistance(), 1e-9);
+            }
+        }
+
+        NearbyCacheStatsResponse stats = cache.getStats();
+        assertTrue(stats.getHits() > stats.getMisses());
+        assertEquals(2_000, stats.getHits() + stats.getMisses() + stats.getBypassed());
+    }
+
+    @Test
+    void testIndexChangesInvalidateEntries() {
+        kdTreeService.rebuild(List.of(SpatialTestData.hotel(1L, 40, -74), SpatialTestData.hotel(2L, 40.01, -74)));
+        NearbyResultCache cache = new NearbyResultCache(kdTreeService, 100, 100);
+        assertEquals(List.of(1L), ids(cache.findNearestHotels(40, -74, 1)));
+        assertEquals(List.of(1L), ids(cache.findNearestHotels(40, -74, 1)));
+
+        kdTreeService.updateHotelCache(SpatialTestData.hotel(3L, 40.0001, -74.0001));
+        kdTreeService.removeHotel(1L);
+
+        assertEquals(List.of(3L), ids(cache.findNearestHotels(40, -74, 1)));
+        NearbyCacheStatsResponse stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getStaleMisses());
+    }
+
+    @Test
+    void testLeastRecentlyUsedCellsAreEvicted() {
+        kdTreeService.rebuild(SpatialTestData.uniform(1_000, 53));
+        NearbyResultCache cache = new NearbyResultCache(kdTreeService, 100, 64);
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.findNearestHotels(-60 + i * 0.1, 10, 5);
+        }
+
+        NearbyCacheStatsResponse stats = cache.getStats();
+        assertTrue(stats.getSize() <= 64);
+        assertEquals(1_000 - stats.getSize(), stats.getEvictions());
+    }
+
+    @Test
+    void testSmallCatalogReturnsEveryHotel() {
+        kdTreeService.rebuild(List.of(SpatialTestData.hotel(1L, 10, 10), SpatialTestData.hotel(2L, 10.5, 10)));
+        NearbyResultCache cache = new NearbyResultCache(kdTreeService, 100, 100);
+
+        assertEquals(List.of(1L, 2L), ids(cache.findNearestHotels(10, 10, 5)));
+        assertEquals(List.of(2L, 1L), ids(cache.findNearestHotels(10.5, 10.0001, 5)));
+    }
+
+    private static List<Long> ids(List<NearbyHotelResponse> hotels) {
+        return hotels.stream().map(NearbyHotelResponse::getId).toList();
+    }
+}
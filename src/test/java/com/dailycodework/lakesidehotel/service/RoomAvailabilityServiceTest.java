@@ -0,0 +1,261 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.config.BookingStatus;
+import com.dailycodework.lakesidehotel.model.BookedRoom;
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.Room;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomAvailabilityServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 6, 1);
+
+    private RoomAvailabilityService availability;
+
+    @BeforeEach
+    void setUp() {
+        availability = new RoomAvailabilityService();
+    }
+
+    @Test
+    void testStaysAreHalfOpen() {
+        availability.rebuild(List.of(room(1L, 10L)), List.of(booking(1L, DAY, DAY.plusDays(3))));
+
+        assertFalse(availability.hasAvailableRoom(10L, DAY, DAY.plusDays(1)));
+        assertFalse(availability.hasAvailableRoom(10L, DAY.minusDays(1), DAY.plusDays(5)));
+        assertFalse(availability.hasAvailableRoom(10L, DAY.plusDays(2), DAY.plusDays(4)));
+        // Checking in on the day the previous guest checks out is fine, and so is the reverse
+        assertTrue(availability.hasAvailableRoom(10L, DAY.plusDays(3), DAY.plusDays(4)));
+        assertTrue(availability.hasAvailableRoom(10L, DAY.minusDays(2), DAY));
+        assertFalse(availability.hasAvailableRoom(11L, DAY.minusDays(2), DAY));
+    }
+
+    @Test
+    void testAnyFreeRoomMakesTheHotelAvailable() {
+        availability.rebuild(List.of(room(1L, 10L), room(2L, 10L)), List.of(booking(1L, DAY, DAY.plusDays(3))));
+        assertTrue(availability.hasAvailableRoom(10L, DAY, DAY.plusDays(1)));
+
+        availability.addBooking(2L, DAY.plusDays(1), DAY.plusDays(2));
+        assertFalse(availability.hasAvailableRoom(10L, DAY, DAY.plusDays(3)));
+        assertTrue(availability.hasAvailableRoom(10L, DAY.plusDays(3), DAY.plusDays(5)));
+
+        availability.removeBooking(1L, DAY, DAY.plusDays(3));
+        assertTrue(availability.hasAvailableRoom(10L, DAY, DAY.plusDays(3)));
+
+        availability.removeRoom(1L);
+        assertFalse(availability.hasAvailableRoom(10L, DAY, DAY.plusDays(3)));
+    }
+
+    @Test
+    void testRoomMovedToAnotherHotelKeepsItsBookings() {
+        availability.rebuild(List.of(room(1L, 10L)), List.of(booking(1L, DAY, DAY.plusDays(3))));
+
+        availability.addRoom(room(1L, 20L));
+
+        assertFalse(availability.hasAvailableRoom(10L, DAY.plusDays(5), DAY.plusDays(6)));
+        assertFalse(availability.hasAvailableRoom(20L, DAY, DAY.plusDays(1)));
+        assertTrue(availability.hasAvailableRoom(20L, DAY.plusDays(5), DAY.plusDays(6)));
+    }
+
+    @Test
+    void testMatchesBookingScanOnRandomCalendars() {
+        Random random = new Random(1);
+        List<Room> rooms = new ArrayList<>();
+        List<BookedRoom> bookings = new ArrayList<>();
+        for (long roomId = 1; roomId <= 200; roomId++) {
+            rooms.add(room(roomId, 1 + roomId % 20));
+            for (int b = 0; b < 10; b++) {
+                LocalDate checkIn = DAY.plusDays(random.nextInt(60));
+                // Overlapping bookings are possible in old data and must still count
+                bookings.add(booking(roomId, checkIn, checkIn.plusDays(1 + random.nextInt(7))));
+            }
+        }
+        availability.rebuild(rooms, bookings);
+
+        for (int q = 0; q < 2_000; q++) {
+            long hotelId = 1 + random.nextInt(20);
+            LocalDate checkIn = DAY.plusDays(random.nextInt(70) - 5);
+            LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(5));
+            boolean expected = rooms.stream()
+                    .filter(room -> room.getHotel().getId() == hotelId)
+                    .anyMatch(room -> bookings.stream()
+                            .filter(booking -> booking.getRoom().getId().equals(room.getId()))
+                            .noneMatch(booking -> checkIn.isBefore(booking.getCheckOutDate())
+                                    && checkOut.isAfter(booking.getCheckInDate())));
+            assertEquals(expected, availability.hasAvailableRoom(hotelId, checkIn, checkOut));
+        }
+    }
+
+    @Test
+    void testCalendarMatchesBookingScanInsideAndOutsideTheWindow() {
+        Random random = new Random(2);
+        List<Room> rooms = new ArrayList<>();
+        List<BookedRoom> bookings = new ArrayList<>();
+        for (long roomId = 1; roomId <= 50; roomId++) {
+            rooms.add(room(roomId, 1 + roomId % 5));
+            for (int b = 0; b < 8; b++) {
+                LocalDate checkIn = DAY.plusDays(random.nextInt(120));
+                bookings.add(booking(roomId, checkIn, checkIn.plusDays(1 + random.nextInt(10))));
+            }
+        }
+        availability.rebuild(rooms, bookings);
+        // 100 nights round up to two words: [DAY + 30, DAY + 158), so queries straddle both ends
+        availability.moveWindow(DAY.plusDays(30), 100);
+
+        for (int q = 0; q < 5_000; q++) {
+            long roomId = 1 + random.nextInt(50);
+            LocalDate checkIn = DAY.plusDays(random.nextInt(180) - 10);
+            LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(q % 2 == 0 ? 5 : 90));
+            if (q == 2_500) {
+                // Changes after the move must reach the bitmaps too
+                LocalDate extra = DAY.plusDays(60);
+                availability.addBooking(roomId, extra, extra.plusDays(70));
+                bookings.add(booking(roomId, extra, extra.plusDays(70)));
+                BookedRoom cancelled = bookings.remove(0);
+                availability.removeBooking(cancelled.getRoom().getId(), cancelled.getCheckInDate(),
+                        cancelled.getCheckOutDate());
+            }
+            boolean expected = bookings.stream()
+                    .filter(booking -> booking.getRoom().getId() == roomId)
+                    .noneMatch(booking -> checkIn.isBefore(booking.getCheckOutDate())
+                            && checkOut.isAfter(booking.getCheckInDate()));
+            assertEquals(expected, availability.isRoomAvailable(roomId, checkIn, checkOut));
+        }
+    }
+
+    @Test
+    void testFindAvailableRoomIdsFiltersByType() {
+        availability.moveWindow(DAY, 365);
+        Room single = room(1L, 10L);
+        single.setRoomType("Single");
+        Room doubleRoom = room(2L, 10L);
+        doubleRoom.setRoomType("Double Deluxe");
+        Room noHotel = new Room();
+        noHotel.setId(3L);
+        noHotel.setRoomType("Deluxe Suite");
+        availability.rebuild(List.of(single, doubleRoom, noHotel), List.of(booking(2L, DAY, DAY.plusDays(2))));
+
+        assertEquals(List.of(1L, 3L), availability.findAvailableRoomIds(DAY, DAY.plusDays(1), null));
+        assertEquals(List.of(1L, 2L, 3L), availability.findAvailableRoomIds(DAY.plusDays(2), DAY.plusDays(3), " "));
+        assertEquals(List.of(2L, 3L),
+                availability.findAvailableRoomIds(DAY.plusDays(2), DAY.plusDays(3), "deluxe"));
+
+        doubleRoom.setRoomType("Twin");
+        availability.addRoom(doubleRoom);
+        assertEquals(List.of(2L), availability.findAvailableRoomIds(DAY.plusDays(2), DAY.plusDays(3), "TWIN"));
+        assertTrue(availability.findAvailableRoomIds(DAY, DAY.plusDays(1), "twin").isEmpty());
+    }
+
+    @Test
+    void testCancelledAndEndedStaysDoNotBlock() {
+        LocalDate today = LocalDate.now();
+        BookedRoom cancelled = booking(1L, today.plusDays(10), today.plusDays(12));
+        cancelled.setStatus(BookingStatus.CANCELLED);
+        BookedRoom confirmed = booking(1L, today.plusDays(20), today.plusDays(22));
+        confirmed.setStatus(BookingStatus.CONFIRMED);
+        availability.rebuild(List.of(room(1L, 10L)), List.of(cancelled, confirmed,
+                booking(1L, today.minusDays(5), today), booking(1L, today.minusDays(1), today.plusDays(1))));
+
+        assertTrue(availability.isRoomAvailable(1L, today.plusDays(10), today.plusDays(12)));
+        assertFalse(availability.isRoomAvailable(1L, today.plusDays(21), today.plusDays(23)));
+        assertFalse(availability.isRoomAvailable(1L, today.minusDays(3), today.minusDays(2)));
+
+        availability.rollWindow();
+
+        // The stay that ended today is gone; the one still running and the future one remain
+        assertTrue(availability.isRoomAvailable(1L, today.minusDays(3), today.minusDays(2)));
+        assertFalse(availability.isRoomAvailable(1L, today, today.plusDays(1)));
+        assertTrue(availability.isRoomAvailable(1L, today.plusDays(1), today.plusDays(20)));
+        assertFalse(availability.isRoomAvailable(1L, today.plusDays(19), today.plusDays(21)));
+        assertTrue(BookedRoom.overlaps(today, today.plusDays(2), today.plusDays(1), today.plusDays(3)));
+        assertFalse(BookedRoom.overlaps(today, today.plusDays(2), today.plusDays(2), today.plusDays(3)));
+    }
+
+    @Test
+    void testReadersNeverSeeARebuildHalfDone() throws InterruptedException {
+        LocalDate today = LocalDate.now();
+        List<Room> rooms = new ArrayList<>();
+        for (long id = 1; id <= 2_000; id++) {
+            rooms.add(room(id, id % 100));
+        }
+        availability.rebuild(rooms, List.of());
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger missing = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            Random random = new Random(21);
+            while (!done.get()) {
+                long roomId = 1 + random.nextInt(2_000);
+                if (!availability.isRoomAvailable(roomId, today, today.plusDays(2))
+                        || !availability.hasAvailableRoom(roomId % 100, today, today.plusDays(2))) {
+                    missing.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200; i++) {
+            if (i % 2 == 0) {
+                availability.rebuild(rooms, List.of());
+            } else {
+                availability.rollWindow();
+            }
+        }
+        done.set(true);
+        reader.join();
+
+        assertEquals(0, missing.get());
+    }
+
+    @Test
+    void testNearestAvailableSkipsFullyBookedHotels() {
+        KDTreeService spatialIndex = new KDTreeService();
+        List<Hotel> hotels = new ArrayList<>();
+        List<Room> rooms = new ArrayList<>();
+        List<BookedRoom> bookings = new ArrayList<>();
+        for (long id = 1; id <= 1_000; id++) {
+            hotels.add(SpatialTestData.hotel(id, 40 + id * 0.001, -74));
+            rooms.add(room(id, id));
+            // Every hotel but each tenth is full that night
+            if (id % 10 != 0) {
+                bookings.add(booking(id, DAY, DAY.plusDays(1)));
+            }
+        }
+        spatialIndex.rebuild(hotels);
+        availability.rebuild(rooms, bookings);
+
+        List<NearbyHotelResponse> nearest = spatialIndex.findNearestHotels(40, -74, 3,
+                availability.availableFor(DAY, DAY.plusDays(1)));
+
+        assertEquals(List.of(10L, 20L, 30L), nearest.stream().map(NearbyHotelResponse::getId).toList());
+    }
+
+    private static Room room(long roomId, long hotelId) {
+        Hotel hotel = new Hotel();
+        hotel.setId(hotelId);
+        Room room = new Room();
+        room.setId(roomId);
+        room.setHotel(hotel);
+        return room;
+    }
+
+    private static BookedRoom booking(long roomId, LocalDate checkIn, LocalDate checkOut) {
+        Room room = new Room();
+        room.setId(roomId);
+        BookedRoom booking = new BookedRoom();
+        booking.setRoom(room);
+        booking.setCheckInDate(checkIn);
+        booking.setCheckOutDate(checkOut);
+        return booking;
+    }
+}
@@ -0,0 +1,443 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.config.BookingStatus;
+import com.dailycodework.lakesidehotel.model.BookedRoom;
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.Room;
+import com.dailycodework.lakesidehotel.model.RoomTypeInventory;
+import com.dailycodework.lakesidehotel.repository.BookingRepository;
+import com.dailycodework.lakesidehotel.repository.RoomRepository;
+import com.dailycodework.lakesidehotel.repository.RoomTypeInventoryRepository;
+import com.dailycodework.lakesidehotel.response.RoomTypeAvailabilityResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The service runs against lists standing in for the room and booking tables
+ * and a map standing in for room_type_inventory, through the same calls the
+ * application makes.
+ */
+class RoomTypeInventoryServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final int DAYS = 60;
+    private static final String[] TYPES = { "Single", "Double", "Deluxe" };
+
+    private final List<Room> rooms = new ArrayList<>();
+    private final List<BookedRoom> bookings = new ArrayList<>();
+    private final Map<Long, RoomTypeInventory> table = new HashMap<>();
+    private long nextRowId = 1;
+    private long nextBookingId = 1;
+    private int rowsSaved;
+    private int totalUpdates;
+    // Runs inside the recount, as bookings.findAll reads the bookings
+    private Runnable whileReading = () -> {
+    };
+
+    private RoomAvailabilityService availability;
+    private RoomTypeInventoryService inventory;
+
+    @BeforeEach
+    void setUp() {
+        availability = new RoomAvailabilityService();
+        inventory = new RoomTypeInventoryService(inventoryRepository(), roomRepository(), bookingRepository(),
+                new TransactionTemplate(new PlatformTransactionManager() {
+                    @Override
+                    public TransactionStatus getTransaction(TransactionDefinition definition) {
+                        return new SimpleTransactionStatus();
+                    }
+
+                    @Override
+                    public void commit(TransactionStatus status) {
+                    }
+
+                    @Override
+                    public void rollback(TransactionStatus status) {
+                    }
+                }), availability, DAYS);
+    }
+
+    @Test
+    void testFreeRoomsMatchABookingScan() {
+        Random random = new Random(25);
+        for (long id = 1; id <= 40; id++) {
+            rooms.add(room(id, 1 + random.nextInt(3), TYPES[random.nextInt(TYPES.length)]));
+        }
+        for (int i = 0; i < 300; i++) {
+            LocalDate checkIn = TODAY.plusDays(random.nextInt(DAYS + 10) - 5);
+            Room room = rooms.get(random.nextInt(rooms.size()));
+            LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(6));
+            // Admission never lets a room's stays overlap
+            if (!isFree(room, checkIn, checkOut)) {
+                continue;
+            }
+            BookedRoom booking = booking(room, checkIn, checkOut);
+            if (i % 10 == 0) {
+                booking.setStatus(BookingStatus.CANCELLED);
+            }
+            bookings.add(booking);
+        }
+        availability.rebuild(rooms, bookings);
+        inventory.reconcile();
+
+        for (int i = 0; i < 500; i++) {
+            long hotelId = 1 + random.nextInt(3);
+            String type = TYPES[random.nextInt(TYPES.length)];
+            LocalDate checkIn = TODAY.plusDays(random.nextInt(DAYS - 7));
+            LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(7));
+
+            assertEquals(OptionalInt.of(scanFreeRooms(hotelId, type, checkIn, checkOut)),
+                    inventory.freeRooms(hotelId, type, checkIn, checkOut));
+            for (RoomTypeAvailabilityResponse byType : inventory.availabilityByType(hotelId, checkIn, checkOut)) {
+                assertEquals(scanHasRoom(hotelId, byType.getRoomType(), checkIn, checkOut), byType.isAvailable());
+            }
+        }
+        assertTableMatchesScan();
+    }
+
+    @Test
+    void testBookingsAndCancellationsMoveTheCounts() {
+        rooms.addAll(List.of(room(1L, 10L, "Deluxe"), room(2L, 10L, "deluxe ")));
+        inventory.reconcile();
+        assertEquals(OptionalInt.of(2), inventory.freeRooms(10L, "DELUXE", TODAY, TODAY.plusDays(3)));
+
+        BookedRoom first = booking(rooms.get(0), TODAY.plusDays(1), TODAY.plusDays(2));
+        inventory.recordSold(first, 1);
+        inventory.recordSold(booking(rooms.get(1), TODAY.plusDays(1), TODAY.plusDays(4)), 1);
+        assertEquals(OptionalInt.of(0), inventory.freeRooms(10L, "Deluxe", TODAY, TODAY.plusDays(3)));
+        assertEquals(OptionalInt.of(1), inventory.freeRooms(10L, "Deluxe", TODAY.plusDays(2), TODAY.plusDays(3)));
+        assertEquals(OptionalInt.of(2), inventory.freeRooms(10L, "Deluxe", TODAY, TODAY.plusDays(1)));
+        assertEquals(2, row(10L, "deluxe", TODAY.plusDays(1)).getSold());
+
+        inventory.recordSold(first, -1);
+        assertEquals(OptionalInt.of(1), inventory.freeRooms(10L, "Deluxe", TODAY, TODAY.plusDays(3)));
+        assertEquals(1, row(10L, "deluxe", TODAY.plusDays(1)).getSold());
+
+        // Unknown types have none free, stays beyond the counted nights are not answered
+        assertEquals(OptionalInt.of(0), inventory.freeRooms(10L, "Suite", TODAY, TODAY.plusDays(1)));
+        assertEquals(OptionalInt.empty(), inventory.freeRooms(10L, "Deluxe", TODAY.minusDays(1), TODAY));
+        assertEquals(OptionalInt.empty(), inventory.freeRooms(10L, "Deluxe", TODAY, TODAY.plusDays(DAYS + 1)));
+    }
+
+    @Test
+    void testSalesDuringARecountAreKept() {
+        rooms.addAll(List.of(room(1L, 10L, "Double"), room(2L, 10L, "Double"), room(3L, 10L, "Double")));
+        BookedRoom cancelled = booking(rooms.get(0), TODAY, TODAY.plusDays(2));
+        bookings.add(cancelled);
+        inventory.reconcile();
+
+        BookedRoom readByRecount = booking(rooms.get(2), TODAY, TODAY.plusDays(1));
+        BookedRoom afterRead = booking(rooms.get(1), TODAY.plusDays(1), TODAY.plusDays(3));
+        bookings.add(readByRecount);
+        whileReading = () -> {
+            // Committed before the read, but reaching the mirror only now
+            inventory.recordSold(readByRecount, 1);
+            // Committed after the read
+            bookings.add(afterRead);
+            inventory.recordSold(afterRead, 1);
+            bookings.remove(cancelled);
+            inventory.recordSold(cancelled, -1);
+        };
+        inventory.reconcile();
+
+        for (int night = 0; night < 4; night++) {
+            LocalDate date = TODAY.plusDays(night);
+            assertEquals(OptionalInt.of(scanFreeRooms(10L, "Double", date, date.plusDays(1))),
+                    inventory.freeRooms(10L, "Double", date, date.plusDays(1)));
+        }
+        assertEquals(OptionalInt.of(2), inventory.freeRooms(10L, "Double", TODAY, TODAY.plusDays(1)));
+    }
+
+    @Test
+    void testSalesMissingRowsOrWindowNights() {
+        rooms.addAll(List.of(room(1L, 10L, "Double"), room(2L, 10L, "Double")));
+        inventory.reconcile();
+
+        // Rows lost for the last nights, and stays running past either end of the window
+        table.values().removeIf(row -> !row.getNight().isBefore(TODAY.plusDays(DAYS - 2)));
+        BookedRoom late = booking(rooms.get(0), TODAY.plusDays(DAYS - 3), TODAY.plusDays(DAYS + 2));
+        BookedRoom early = booking(rooms.get(1), TODAY.minusDays(3), TODAY.plusDays(1));
+        bookings.addAll(List.of(late, early));
+        inventory.recordSold(late, 1);
+        inventory.recordSold(early, 1);
+        assertTableMatchesScan();
+        assertEquals(OptionalInt.of(1), inventory.freeRooms(10L, "Double", TODAY.plusDays(DAYS - 3),
+                TODAY.plusDays(DAYS)));
+        assertEquals(OptionalInt.of(1), inventory.freeRooms(10L, "Double", TODAY, TODAY.plusDays(1)));
+
+        bookings.remove(late);
+        inventory.recordSold(late, -1);
+        assertTableMatchesScan();
+        assertEquals(OptionalInt.of(2), inventory.freeRooms(10L, "Double", TODAY.plusDays(DAYS - 3),
+                TODAY.plusDays(DAYS)));
+
+        // A type with no rows yet gets the stay's nights counted from the bookings
+        rooms.add(room(3L, 10L, "Suite"));
+        BookedRoom suite = booking(rooms.get(2), TODAY.plusDays(5), TODAY.plusDays(7));
+        bookings.add(suite);
+        inventory.recordSold(suite, 1);
+        assertEquals(1, row(10L, "suite", TODAY.plusDays(6)).getSold());
+        assertEquals(1, row(10L, "suite", TODAY.plusDays(6)).getTotal());
+    }
+
+    @Test
+    void testCountsOnlyRuleTypesOut() {
+        // Each room is booked one of the two nights: one room free every night, but none for both
+        rooms.addAll(List.of(room(1L, 10L, "Double"), room(2L, 10L, "Double"), room(3L, 10L, "Single")));
+        bookings.addAll(List.of(booking(rooms.get(0), TODAY, TODAY.plusDays(1)),
+                booking(rooms.get(1), TODAY.plusDays(1), TODAY.plusDays(2)),
+                booking(rooms.get(2), TODAY, TODAY.plusDays(2))));
+        availability.rebuild(rooms, bookings);
+        inventory.reconcile();
+
+        List<RoomTypeAvailabilityResponse> byType = inventory.availabilityByType(10L, TODAY, TODAY.plusDays(2));
+        assertEquals(2, byType.size());
+        assertEquals("Double", byType.get(0).getRoomType());
+        assertEquals(2, byType.get(0).getTotalRooms());
+        assertEquals(1, byType.get(0).getFreeRooms());
+        assertFalse(byType.get(0).isAvailable());
+        assertEquals("Single", byType.get(1).getRoomType());
+        assertEquals(0, byType.get(1).getFreeRooms());
+        assertFalse(byType.get(1).isAvailable());
+
+        assertTrue(inventory.availabilityByType(10L, TODAY, TODAY.plusDays(1)).get(0).isAvailable());
+        assertEquals(-1, inventory.availabilityByType(10L, TODAY, TODAY.plusDays(DAYS + 1)).get(0).getFreeRooms());
+    }
+
+    @Test
+    void testReconcileFixesTheTable() {
+        rooms.addAll(List.of(room(1L, 10L, "Double"), room(2L, 10L, "Double")));
+        bookings.add(booking(rooms.get(0), TODAY.plusDays(3), TODAY.plusDays(5)));
+        inventory.reconcile();
+        assertTableMatchesScan();
+
+        // A lost update, a past night, and a type whose rooms are gone
+        row(10L, "double", TODAY.plusDays(4)).setSold(0);
+        insert(10L, "double", TODAY.minusDays(1), 2, 1);
+        insert(10L, "suite", TODAY, 1, 0);
+        inventory.reconcile();
+        assertTableMatchesScan();
+        assertEquals(1, row(10L, "double", TODAY.plusDays(4)).getSold());
+    }
+
+    @Test
+    void testRoomChangesRecountTheHotel() {
+        rooms.addAll(List.of(room(1L, 10L, "Double"), room(2L, 20L, "Double")));
+        bookings.add(booking(rooms.get(0), TODAY, TODAY.plusDays(2)));
+        inventory.reconcile();
+        assertEquals(OptionalInt.of(0), inventory.freeRooms(10L, "Double", TODAY, TODAY.plusDays(1)));
+
+        rooms.add(room(3L, 10L, "Double"));
+        rooms.add(room(4L, 10L, "Single"));
+        inventory.hotelRoomsChanged(10L);
+        assertEquals(OptionalInt.of(1), inventory.freeRooms(10L, "Double", TODAY, TODAY.plusDays(1)));
+        assertEquals(OptionalInt.of(1), inventory.freeRooms(10L, "Single", TODAY, TODAY.plusDays(1)));
+        assertTableMatchesScan();
+
+        // A room of a type the hotel has: one UPDATE for its total, no row written
+        rowsSaved = 0;
+        totalUpdates = 0;
+        rooms.add(room(5L, 10L, "double"));
+        inventory.hotelRoomsChanged(10L);
+        assertEquals(0, rowsSaved);
+        assertEquals(1, totalUpdates);
+        assertEquals(OptionalInt.of(2), inventory.freeRooms(10L, "Double", TODAY, TODAY.plusDays(1)));
+        assertTableMatchesScan();
+
+        rooms.removeIf(room -> room.getHotel().getId() == 10L);
+        inventory.hotelRemoved(10L);
+        assertEquals(OptionalInt.of(0), inventory.freeRooms(10L, "Double", TODAY, TODAY.plusDays(1)));
+        assertEquals(OptionalInt.of(1), inventory.freeRooms(20L, "Double", TODAY, TODAY.plusDays(1)));
+        assertTableMatchesScan();
+    }
+
+    // One row per hotel, type and counted night, each with the scanned counts
+    private void assertTableMatchesScan() {
+        Map<List<Object>, int[]> expected = new HashMap<>();
+        for (Room room : rooms) {
+            String type = RoomAvailabilityService.typeKey(room.getRoomType());
+            for (int night = 0; night < DAYS; night++) {
+                LocalDate date = TODAY.plusDays(night);
+                int[] counts = expected.computeIfAbsent(List.of(room.getHotel().getId(), type, date),
+                        key -> new int[2]);
+                counts[0]++;
+                if (!isFree(room, date, date.plusDays(1))) {
+                    counts[1]++;
+                }
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (RoomTypeInventory row : table.values()) {
+            int[] counts = expected.get(List.of(row.getHotelId(), row.getRoomType(), row.getNight()));
+            assertNotNull(counts);
+            assertEquals(counts[0], row.getTotal());
+            assertEquals(counts[1], row.getSold());
+        }
+    }
+
+    private int scanFreeRooms(long hotelId, String type, LocalDate checkIn, LocalDate checkOut) {
+        int free = Integer.MAX_VALUE;
+        for (LocalDate night = checkIn; night.isBefore(checkOut); night = night.plusDays(1)) {
+            int unbooked = 0;
+            for (Room room : rooms) {
+                if (room.getHotel().getId() == hotelId && room.getRoomType().equals(type)
+                        && isFree(room, night, night.plusDays(1))) {
+                    unbooked++;
+                }
+            }
+            free = Math.min(free, unbooked);
+        }
+        return free;
+    }
+
+    private boolean scanHasRoom(long hotelId, String type, LocalDate checkIn, LocalDate checkOut) {
+        for (Room room : rooms) {
+            if (room.getHotel().getId() == hotelId && room.getRoomType().equals(type)
+                    && isFree(room, checkIn, checkOut)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isFree(Room room, LocalDate checkIn, LocalDate checkOut) {
+        for (BookedRoom booking : bookings) {
+            if (booking.getRoom() == room && booking.holdsRoom() && BookedRoom.overlaps(checkIn, checkOut,
+                    booking.getCheckInDate(), booking.getCheckOutDate())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RoomTypeInventory row(long hotelId, String type, LocalDate night) {
+        return table.values().stream()
+                .filter(row -> row.getHotelId() == hotelId && row.getRoomType().equals(type)
+                        && row.getNight().equals(night))
+                .findFirst().orElseThrow();
+    }
+
+    private void insert(long hotelId, String type, LocalDate night, int total, int sold) {
+        long id = nextRowId++;
+        table.put(id, new RoomTypeInventory(id, hotelId, type, night, total, sold));
+    }
+
+    private RoomRepository roomRepository() {
+        return fake(RoomRepository.class, Map.of(
+                "findAll", args -> new ArrayList<>(rooms),
+                "findByHotelId", args -> rooms.stream()
+                        .filter(room -> room.getHotel().getId().equals(args[0])).toList()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private BookingRepository bookingRepository() {
+        return fake(BookingRepository.class, Map.of(
+                "findAll", args -> {
+                    List<BookedRoom> read = new ArrayList<>(bookings);
+                    whileReading.run();
+                    return read;
+                },
+                "findHoldingBetween", args -> bookings.stream()
+                        .filter(booking -> ((Collection<Long>) args[0]).contains(booking.getRoom().getId())
+                                && booking.holdsRoom() && BookedRoom.overlaps((LocalDate) args[1],
+                                        (LocalDate) args[2], booking.getCheckInDate(), booking.getCheckOutDate()))
+                        .toList()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private RoomTypeInventoryRepository inventoryRepository() {
+        return fake(RoomTypeInventoryRepository.class, Map.of(
+                "findAllForUpdate", args -> new ArrayList<>(table.values()),
+                "findByHotelId", args -> table.values().stream()
+                        .filter(row -> row.getHotelId().equals(args[0])).toList(),
+                "findByHotelIdForUpdate", args -> table.values().stream()
+                        .filter(row -> row.getHotelId().equals(args[0])).toList(),
+                "saveAll", args -> {
+                    for (RoomTypeInventory row : (Iterable<RoomTypeInventory>) args[0]) {
+                        rowsSaved++;
+                        if (row.getId() == null) {
+                            row.setId(nextRowId++);
+                        }
+                        table.put(row.getId(), row);
+                    }
+                    return null;
+                },
+                "deleteAllInBatch", args -> {
+                    for (RoomTypeInventory row : (Iterable<RoomTypeInventory>) args[0]) {
+                        table.remove(row.getId());
+                    }
+                    return null;
+                },
+                "findNights", args -> table.values().stream()
+                        .filter(row -> row.getHotelId().equals(args[0]) && row.getRoomType().equals(args[1])
+                                && !row.getNight().isBefore((LocalDate) args[2])
+                                && row.getNight().isBefore((LocalDate) args[3]))
+                        .map(RoomTypeInventory::getNight).toList(),
+                "setTotal", args -> {
+                    totalUpdates++;
+                    int updated = 0;
+                    for (RoomTypeInventory row : table.values()) {
+                        if (row.getHotelId().equals(args[0]) && row.getRoomType().equals(args[1])) {
+                            row.setTotal((int) args[2]);
+                            updated++;
+                        }
+                    }
+                    return updated;
+                },
+                "addSold", args -> {
+                    int updated = 0;
+                    for (RoomTypeInventory row : table.values()) {
+                        if (row.getHotelId().equals(args[0]) && row.getRoomType().equals(args[1])
+                                && !row.getNight().isBefore((LocalDate) args[2])
+                                && row.getNight().isBefore((LocalDate) args[3])) {
+                            row.setSold(row.getSold() + (int) args[4]);
+                            updated++;
+                        }
+                    }
+                    return updated;
+                }));
+    }
+
+    // Repository methods the service does not call fail the test
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            Function<Object[], Object> body = methods.get(method.getName());
+            if (body == null) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            return body.apply(args);
+        });
+    }
+
+    private static Room room(long id, long hotelId, String type) {
+        Hotel hotel = new Hotel();
+        hotel.setId(hotelId);
+        Room room = new Room();
+        room.setId(id);
+        room.setHotel(hotel);
+        room.setRoomType(type);
+        return room;
+    }
+
+    private BookedRoom booking(Room room, LocalDate checkIn, LocalDate checkOut) {
+        BookedRoom booking = new BookedRoom();
+        booking.setBookingId(nextBookingId++);
+        booking.setRoom(room);
+        booking.setCheckInDate(checkIn);
+        booking.setCheckOutDate(checkOut);
+        return booking;
+    }
+}
@@ -0,0 +1,385 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.GeoPolygon;
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.HotelRoomProfile;
+import com.dailycodework.lakesidehotel.model.NearbyCursor;
+import com.dailycodework.lakesidehotel.model.RoomFilter;
+import com.dailycodework.lakesidehotel.request.NearbyQueryRequest;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import com.dailycodework.lakesidehotel.response.NearbyPageResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.dailycodework.lakesidehotel.service.SpatialTestData.hotel;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Correctness suite every {@link SpatialIndex} implementation must pass. Each
+ * query is checked against a brute-force scan of the same hotels.
+ */
+abstract class SpatialIndexContractTest {
+
+    protected SpatialIndex index;
+
+    protected abstract SpatialIndex createIndex();
+
+    @BeforeEach
+    void setUp() {
+        index = createIndex();
+    }
+
+    @Test
+    void testNearestMatchesBruteForceOnUniformHotels() {
+        checkNearest(SpatialTestData.uniform(20_000, 1));
+    }
+
+    @Test
+    void testNearestMatchesBruteForceOnClusteredCities() {
+        checkNearest(SpatialTestData.clusteredCities(20_000, 2));
+    }
+
+    @Test
+    void testNearestMatchesBruteForceInSingleCity() {
+        checkNearest(SpatialTestData.singleCity(20_000, 3));
+    }
+
+    @Test
+    void testFilteredNearestMatchesBruteForce() {
+        List<Hotel> hotels = SpatialTestData.clusteredCities(10_000, 13);
+        index.rebuild(hotels);
+        // Only one hotel in 50 qualifies
+        List<Hotel> qualifying = hotels.stream().filter(h -> h.getId() % 50 == 0).toList();
+
+        Random random = new Random(14);
+        for (int q = 0; q < 20; q++) {
+            double[] query = SpatialTestData.queryNear(hotels, random);
+            assertEquals(SpatialTestData.nearestIds(qualifying, query[0], query[1], 10),
+                    ids(index.findNearestHotels(query[0], query[1], 10, id -> id % 50 == 0)));
+        }
+    }
+
+    @Test
+    void testRoomFilteredNearestMatchesBruteForce() {
+        List<Hotel> hotels = SpatialTestData.clusteredCities(10_000, 31);
+        index.rebuild(hotels);
+        Map<Long, HotelRoomProfile> profiles = roomProfiles(hotels, 32);
+        index.rebuildRoomProfiles(profiles);
+
+        List<RoomFilter> filters = List.of(
+                // A suite under 200
+                new RoomFilter(1 << 2, 200, 0, null),
+                // Any room under 60 with amenities 0 and 3
+                new RoomFilter(0, 60, 0b1001, null),
+                // A suite or presidential room with amenity 7, free on even room ids
+                new RoomFilter(1 << 2 | 1 << 3, Double.POSITIVE_INFINITY, 1 << 7, null).withRoomCheck(id -> id % 2 == 0),
+                RoomFilter.NOTHING);
+        Random random = new Random(33);
+        for (RoomFilter filter : filters) {
+            List<Hotel> qualifying = hotels.stream().filter(h -> profiles.containsKey(h.getId())
+                    && profiles.get(h.getId()).matches(filter)).toList();
+            for (int q = 0; q < 20; q++) {
+                double[] query = SpatialTestData.queryNear(hotels, random);
+                assertEquals(SpatialTestData.nearestIds(qualifying, query[0], query[1], 10),
+                        ids(index.findNearestHotels(query[0], query[1], 10, filter, null)));
+            }
+        }
+    }
+
+    @Test
+    void testRoomFilterFollowsRoomAndHotelChanges() {
+        List<Hotel> hotels = SpatialTestData.uniform(5_000, 34);
+        index.rebuild(hotels);
+        Map<Long, HotelRoomProfile> profiles = roomProfiles(hotels, 35);
+        index.rebuildRoomProfiles(profiles);
+        // Nothing costs less than 50
+        RoomFilter bargain = new RoomFilter(0, 10, 0, null);
+        assertTrue(index.findNearestHotels(0, 0, 5, bargain, null).isEmpty());
+
+        Random random = new Random(36);
+        for (int i = 0; i < 2_000; i++) {
+            long id = 1 + random.nextInt(5_000);
+            if (random.nextBoolean()) {
+                index.updateHotelCache(hotel(id, -60 + random.nextDouble() * 120, -180 + random.nextDouble() * 360));
+            } else {
+                HotelRoomProfile cheap = HotelRoomProfile.of(new long[] { id * 10 }, new double[] { 5 + random.nextInt(5) },
+                        new int[] { 1 }, new long[] { 0 });
+                index.updateRoomProfile(id, cheap);
+                profiles.put(id, cheap);
+            }
+        }
+
+        Map<Long, Hotel> latest = new HashMap<>();
+        index.forEachHotel((hotel, latitude, longitude) -> latest.put(hotel.id(), hotel(hotel.id(), latitude, longitude)));
+        List<Hotel> qualifying = latest.values().stream().filter(h -> profiles.containsKey(h.getId())
+                && profiles.get(h.getId()).matches(bargain)).toList();
+        assertFalse(qualifying.isEmpty());
+        for (int q = 0; q < 20; q++) {
+            double[] query = SpatialTestData.queryNear(hotels, random);
+            assertEquals(SpatialTestData.nearestIds(qualifying, query[0], query[1], 10),
+                    ids(index.findNearestHotels(query[0], query[1], 10, bargain, null)));
+        }
+    }
+
+    // Up to four rooms per hotel and none for one hotel in ten; types are bits 0..5, amenities bits 0..9
+    static Map<Long, HotelRoomProfile> roomProfiles(List<Hotel> hotels, long seed) {
+        Random random = new Random(seed);
+        Map<Long, HotelRoomProfile> profiles = new HashMap<>();
+        for (Hotel hotel : hotels) {
+            if (random.nextInt(10) == 0) {
+                continue;
+            }
+            int rooms = 1 + random.nextInt(4);
+            long[] roomIds = new long[rooms];
+            double[] prices = new double[rooms];
+            int[] types = new int[rooms];
+            long[] amenities = new long[rooms];
+            for (int r = 0; r < rooms; r++) {
+                roomIds[r] = hotel.getId() * 10 + r;
+                prices[r] = 50 + random.nextInt(450);
+                types[r] = 1 << random.nextInt(6);
+                amenities[r] = random.nextLong() & random.nextLong() & 0x3FF;
+            }
+            profiles.put(hotel.getId(), HotelRoomProfile.of(roomIds, prices, types, amenities));
+        }
+        return profiles;
+    }
+
+    @Test
+    void testPagesListEveryHotelInDistanceOrder() {
+        List<Hotel> hotels = SpatialTestData.singleCity(3_000, 15);
+        // Hotels sharing a location tie on distance and must be ordered by id across pages
+        for (long id = 3_001; id <= 3_100; id++) {
+            hotels.add(hotel(id, 27.72, 85.32 + (id % 5) * 0.001));
+        }
+        index.rebuild(hotels);
+
+        List<Long> listed = new ArrayList<>();
+        String cursor = null;
+        do {
+            NearbyPageResponse page = index.findNearestPage(27.7201, 85.3205, 37,
+                    cursor == null ? null : NearbyCursor.decode(cursor));
+            assertTrue(page.getHotels().size() <= 37);
+            listed.addAll(ids(page.getHotels()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(SpatialTestData.nearestIds(hotels, 27.7201, 85.3205, hotels.size()), listed);
+    }
+
+    @Test
+    void testBatchMatchesSingleQueries() {
+        List<Hotel> hotels = SpatialTestData.clusteredCities(10_000, 9);
+        index.rebuild(hotels);
+
+        Random random = new Random(10);
+        List<NearbyQueryRequest> queries = new ArrayList<>();
+        for (int q = 0; q < 100; q++) {
+            double[] query = SpatialTestData.queryNear(hotels, random);
+            queries.add(new NearbyQueryRequest(query[0], query[1], 1 + q % 20));
+        }
+
+        List<List<NearbyHotelResponse>> results = index.findNearestHotels(queries);
+        assertEquals(queries.size(), results.size());
+        for (int q = 0; q < queries.size(); q++) {
+            NearbyQueryRequest query = queries.get(q);
+            assertEquals(SpatialTestData.nearestIds(hotels, query.getLat(), query.getLon(), query.getK()),
+                    ids(results.get(q)));
+        }
+    }
+
+    @Test
+    void testBatchSeesOneStateOfTheIndex() throws Exception {
+        List<Hotel> hotels = SpatialTestData.singleCity(2_000, 11);
+        index.rebuild(hotels);
+        // The same query many times over: every copy must get the same answer
+        List<NearbyQueryRequest> queries = new ArrayList<>();
+        for (int q = 0; q < 64; q++) {
+            queries.add(new NearbyQueryRequest(27.72, 85.32, 5));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            Random random = new Random(12);
+            while (running.get()) {
+                // Moves keep replacing the hotels nearest to the query
+                Hotel hotel = hotels.get(random.nextInt(hotels.size()));
+                index.updateHotelCache(hotel(hotel.getId(), 27.72 + random.nextGaussian() * 0.001,
+                        85.32 + random.nextGaussian() * 0.001));
+            }
+        });
+        writer.start();
+        try {
+            for (int round = 0; round < 50; round++) {
+                List<List<NearbyHotelResponse>> results = index.findNearestHotels(queries);
+                for (List<NearbyHotelResponse> result : results) {
+                    assertEquals(ids(results.get(0)), ids(result));
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    @Test
+    void testWithinMatchesBruteForce() {
+        List<Hotel> hotels = SpatialTestData.clusteredCities(20_000, 4);
+        hotels.addAll(SpatialTestData.uniform(5_000, 5).stream()
+                .map(h -> hotel(h.getId() + 20_000, h.getLatitude(), h.getLongitude()))
+                .toList());
+        index.rebuild(hotels);
+
+        Random random = new Random(6);
+        for (int q = 0; q < 30; q++) {
+            double[] query = SpatialTestData.queryNear(hotels, random);
+            double radius = q % 3 == 0 ? 1 : q % 3 == 1 ? 5 : 200;
+            List<Long> expected = SpatialTestData.withinIds(hotels, query[0], query[1], radius);
+
+            assertEquals(expected, ids(index.findHotelsWithin(query[0], query[1], radius)));
+            assertEquals(expected.subList(0, Math.min(7, expected.size())),
+                    ids(index.findHotelsWithin(query[0], query[1], radius, 7)));
+        }
+    }
+
+    @Test
+    void testBoxMatchesBruteForce() {
+        List<Hotel> hotels = SpatialTestData.uniform(20_000, 7);
+        index.rebuild(hotels);
+
+        double[][] boxes = {
+                { 10, 20, 15, 30 },
+                { -5, 170, 5, -170 }, // crosses the antimeridian
+                { 80, -180, 90, 180 }, // polar cap
+                { -30, -100, 40, 100 } };
+        for (double[] box : boxes) {
+            assertEquals(SpatialTestData.inBoxIds(hotels, box[0], box[1], box[2], box[3]),
+                    index.findHotelsInBox(box[0], box[1], box[2], box[3]).stream()
+                            .map(MapHotelResponse::getId)
+                            .sorted()
+                            .toList());
+        }
+    }
+
+    @Test
+    void testPolygonMatchesBruteForce() {
+        List<Hotel> hotels = SpatialTestData.clusteredCities(20_000, 15);
+        index.rebuild(hotels);
+
+        // A jagged district around New York with a hole, large enough for a raster cover
+        double[] outline = jaggedRing(40.71, -74.01, 0.08, 400, 16);
+        double[] hole = jaggedRing(40.71, -74.01, 0.02, 40, 17);
+        List<List<double[]>> districts = List.of(
+                List.of(outline, hole),
+                List.of(new double[] { 2.30, 48.80, 2.40, 48.85, 2.30, 48.90, 2.30, 48.80 }),
+                // Two parts, in London and Paris
+                List.of(jaggedRing(51.51, -0.13, 0.05, 12, 18), jaggedRing(48.86, 2.35, 0.05, 12, 19)));
+        for (List<double[]> rings : districts) {
+            GeoPolygon polygon = GeoPolygon.of(rings);
+            GeoPolygon exact = new GeoPolygon(rings, 0);
+            List<Long> expected = hotels.stream()
+                    .filter(h -> exact.contains(h.getLatitude(), h.getLongitude()))
+                    .map(Hotel::getId)
+                    .sorted()
+                    .toList();
+
+            List<Long> actual = index.findHotelsInPolygon(polygon).stream()
+                    .map(MapHotelResponse::getId)
+                    .sorted()
+                    .toList();
+
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual);
+            List<MapHotelResponse> limited = index.findHotelsInPolygon(polygon, 3);
+            assertEquals(Math.min(3, expected.size()), limited.size());
+            assertTrue(limited.stream().allMatch(hotel -> expected.contains(hotel.getId())));
+        }
+        assertTrue(GeoPolygon.of(List.of(outline, hole)).hasRasterCover());
+    }
+
+    // Longitude, latitude pairs around the centre, at a random radius of 50..100% per vertex
+    private static double[] jaggedRing(double latitude, double longitude, double radius, int vertices, long seed) {
+        Random random = new Random(seed);
+        double[] ring = new double[2 * vertices];
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double r = radius * (0.5 + 0.5 * random.nextDouble());
+            ring[2 * i] = longitude + r * Math.cos(angle) * 1.3;
+            ring[2 * i + 1] = latitude + r * Math.sin(angle);
+        }
+        return ring;
+    }
+
+    @Test
+    void testChurnMatchesBruteForce() {
+        // Interleave inserts, moves and removals with queries
+        Random random = new Random(8);
+        Map<Long, Hotel> live = new HashMap<>();
+        for (int step = 0; step < 5_000; step++) {
+            long id = 1 + random.nextInt(1_000);
+            if (random.nextInt(4) == 0) {
+                index.removeHotel(id);
+                live.remove(id);
+            } else {
+                Hotel hotel = hotel(id, 40 + random.nextDouble() * 5, -75 + random.nextDouble() * 5);
+                index.updateHotelCache(hotel);
+                live.put(id, hotel);
+            }
+
+            if (step % 100 == 0) {
+                List<Hotel> hotels = new ArrayList<>(live.values());
+                double lat = 40 + random.nextDouble() * 5;
+                double lon = -75 + random.nextDouble() * 5;
+                assertEquals(SpatialTestData.nearestIds(hotels, lat, lon, 10),
+                        ids(index.findNearestHotels(lat, lon, 10)));
+                assertEquals(SpatialTestData.withinIds(hotels, lat, lon, 50),
+                        ids(index.findHotelsWithin(lat, lon, 50)));
+            }
+        }
+        assertEquals(live.size(), index.getStats().getLiveCount());
+    }
+
+    @Test
+    void testNearestAcrossAntimeridianAndPoles() {
+        index.rebuild(List.of(
+                hotel(1L, 0.0, -179.99),
+                hotel(2L, 0.0, 179.0),
+                hotel(3L, 89.9, 0.0),
+                hotel(4L, 89.9, 180.0),
+                hotel(5L, -45.0, 90.0)));
+
+        assertEquals(List.of(1L, 2L), ids(index.findNearestHotels(0.0, 179.99, 2)));
+        assertEquals(List.of(4L, 3L), ids(index.findNearestHotels(89.95, 170.0, 2)));
+    }
+
+    @Test
+    void testNearestReturnsWholeCatalogWhenKIsLarger() {
+        index.rebuild(List.of(hotel(1L, 10.0, 10.0), hotel(2L, -10.0, -170.0)));
+
+        assertEquals(List.of(1L, 2L), ids(index.findNearestHotels(11.0, 11.0, 5)));
+    }
+
+    private void checkNearest(List<Hotel> hotels) {
+        index.rebuild(hotels);
+
+        Random random = new Random(hotels.size());
+        for (int q = 0; q < 30; q++) {
+            double[] query = SpatialTestData.queryNear(hotels, random);
+            int k = q % 3 == 0 ? 1 : q % 3 == 1 ? 10 : 50;
+            assertEquals(SpatialTestData.nearestIds(hotels, query[0], query[1], k),
+                    ids(index.findNearestHotels(query[0], query[1], k)));
+        }
+    }
+
+    private static List<Long> ids(List<NearbyHotelResponse> hotels) {
+        return hotels.stream().map(NearbyHotelResponse::getId).toList();
+    }
+}
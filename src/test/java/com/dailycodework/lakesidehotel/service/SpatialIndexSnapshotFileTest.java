@@ -0,0 +1,109 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.model.HotelSummary;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatialIndexSnapshotFileTest {
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempDirectory("spatial-snapshot").resolve("index.bin");
+    }
+
+    @Test
+    void testSnapshotRestoresTheSameIndex() throws IOException {
+        List<Hotel> hotels = SpatialTestData.clusteredCities(20_000, 61);
+        Hotel described = hotels.get(0);
+        described.setDescription("\u00dcber den D\u00e4chern, \u6771\u4eac view");
+        described.setRoomsCount(42);
+        KDTreeService original = new KDTreeService();
+        original.rebuild(hotels);
+        // Cached without a location, and a change still in the overlay
+        Hotel unlocated = SpatialTestData.hotel(50_000L, 0, 0);
+        unlocated.setLatitude(null);
+        unlocated.setLongitude(null);
+        original.updateHotelCache(unlocated);
+        original.updateHotelCache(SpatialTestData.hotel(2L, 10, 10));
+        original.removeHotel(3L);
+
+        Instant highWaterMark = Instant.parse("2025-06-01T10:15:30.123456Z");
+        SpatialIndexSnapshotFile.write(file, original, highWaterMark);
+        SpatialIndexSnapshotFile.Contents contents = SpatialIndexSnapshotFile.read(file);
+
+        assertEquals(highWaterMark, contents.highWaterMark());
+        assertEquals(snapshotOf(original), snapshotOf(contents));
+
+        for (SpatialIndex restored : List.of(new KDTreeService(), new GridIndexService(0.25))) {
+            restored.rebuild(contents.hotels(), contents.latitudes(), contents.longitudes());
+            assertEquals(snapshotOf(original), snapshotOf(restored));
+
+            Random random = new Random(62);
+            for (int q = 0; q < 200; q++) {
+                double[] query = SpatialTestData.queryNear(hotels, random);
+                assertEquals(ids(original.findNearestHotels(query[0], query[1], 10)),
+                        ids(restored.findNearestHotels(query[0], query[1], 10)));
+            }
+        }
+    }
+
+    @Test
+    void testDamagedSnapshotsAreRejected() throws IOException {
+        KDTreeService index = new KDTreeService();
+        index.rebuild(SpatialTestData.uniform(1_000, 63));
+        SpatialIndexSnapshotFile.write(file, index, Instant.EPOCH);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> SpatialIndexSnapshotFile.read(file));
+
+        Files.write(file, Arrays.copyOf(bytes, 100));
+        assertThrows(IOException.class, () -> SpatialIndexSnapshotFile.read(file));
+
+        Files.delete(file);
+        assertThrows(IOException.class, () -> SpatialIndexSnapshotFile.read(file));
+    }
+
+    @Test
+    void testEmptyIndexWithoutHighWaterMark() throws IOException {
+        SpatialIndexSnapshotFile.write(file, new KDTreeService(), null);
+
+        SpatialIndexSnapshotFile.Contents contents = SpatialIndexSnapshotFile.read(file);
+
+        assertNull(contents.highWaterMark());
+        assertTrue(contents.hotels().isEmpty());
+    }
+
+    // Every hotel with its location, keyed by id; NaN locations compare equal in a List<Double>
+    private static Map<Long, List<Object>> snapshotOf(SpatialIndex index) {
+        Map<Long, List<Object>> hotels = new HashMap<>();
+        index.forEachHotel((hotel, latitude, longitude) -> hotels.put(hotel.id(), List.of(hotel, latitude, longitude)));
+        return hotels;
+    }
+
+    private static Map<Long, List<Object>> snapshotOf(SpatialIndexSnapshotFile.Contents contents) {
+        Map<Long, List<Object>> hotels = new HashMap<>();
+        for (int i = 0; i < contents.hotels().size(); i++) {
+            HotelSummary hotel = contents.hotels().get(i);
+            hotels.put(hotel.id(), List.of(hotel, contents.latitudes()[i], contents.longitudes()[i]));
+        }
+        return hotels;
+    }
+
+    private static List<Long> ids(List<NearbyHotelResponse> hotels) {
+        return hotels.stream().map(NearbyHotelResponse::getId).toList();
+    }
+}
@@ -0,0 +1,122 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.response.NearbyHotelResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The sync service runs against a map standing in for the hotel table: each
+ * writer changes a row, then reports it the way a commit would.
+ */
+class SpatialIndexSyncServiceTest {
+
+    private final Map<Long, Hotel> table = new ConcurrentHashMap<>();
+
+    private List<Hotel> select(List<Long> ids) {
+        List<Hotel> found = new ArrayList<>();
+        for (Long id : ids) {
+            Hotel hotel = table.get(id);
+            if (hotel != null) {
+                found.add(hotel);
+            }
+        }
+        return found;
+    }
+
+    @Test
+    void testIndexFollowsConcurrentCommits() throws Exception {
+        for (SpatialIndex index : List.of(new KDTreeService(), new GridIndexService(1.0))) {
+            table.clear();
+            SpatialIndexSyncService sync = new SpatialIndexSyncService(index, this::select, 64);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> writers = new ArrayList<>();
+            for (int w = 0; w < 8; w++) {
+                writers.add(new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        for (int i = 0; i < 2_000; i++) {
+                            long id = 1 + random.nextInt(500);
+                            if (random.nextInt(4) == 0) {
+                                table.remove(id);
+                            } else {
+                                Hotel hotel = SpatialTestData.hotel(id, -60 + random.nextDouble() * 120,
+                                        -180 + random.nextDouble() * 360);
+                                if (random.nextInt(10) == 0) {
+                                    hotel.setLatitude(null);
+                                    hotel.setLongitude(null);
+                                }
+                                table.put(id, hotel);
+                            }
+                            sync.hotelsChanged(List.of(id));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            sync.awaitApplied();
+            sync.shutdown();
+            assertNull(failure.get());
+
+            Map<Long, double[]> indexed = new HashMap<>();
+            index.forEachHotel((hotel, latitude, longitude) -> indexed.put(hotel.id(), new double[] { latitude, longitude }));
+            assertEquals(table.keySet(), indexed.keySet());
+            table.forEach((id, hotel) -> {
+                double[] location = indexed.get(id);
+                assertEquals(hotel.getLatitude() == null ? Double.NaN : hotel.getLatitude(), location[0]);
+                assertEquals(hotel.getLongitude() == null ? Double.NaN : hotel.getLongitude(), location[1]);
+            });
+        }
+    }
+
+    @Test
+    void testChangesQueuedDuringABatchCoalesceIntoTheNext() throws Exception {
+        CountDownLatch firstReadStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> readSizes = new CopyOnWriteArrayList<>();
+        KDTreeService index = new KDTreeService();
+        SpatialIndexSyncService sync = new SpatialIndexSyncService(index, ids -> {
+            readSizes.add(ids.size());
+            firstReadStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return select(ids);
+        }, 40);
+
+        for (long id = 1; id <= 100; id++) {
+            table.put(id, SpatialTestData.hotel(id, id * 0.1, id * 0.1));
+        }
+        sync.hotelsChanged(List.of(1L));
+        firstReadStarted.await();
+        for (int round = 0; round < 10; round++) {
+            for (long id = 1; id <= 100; id++) {
+                sync.hotelsChanged(List.of(id));
+            }
+        }
+        table.remove(50L);
+        sync.hotelsChanged(List.of(50L));
+        release.countDown();
+        sync.awaitApplied();
+        sync.shutdown();
+
+        assertEquals(List.of(1, 40, 40, 20), readSizes);
+        assertEquals(99, index.getStats().getCachedHotels());
+        assertEquals(List.of(51L), index.findNearestHotels(5.02, 5.02, 1).stream().map(NearbyHotelResponse::getId).toList());
+    }
+}
@@ -0,0 +1,142 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic hotel catalogs and brute-force answers for spatial index tests and
+ * benchmarks.
+ */
+public final class SpatialTestData {
+
+    // Latitude, longitude of the city centres used by the clustered distributions
+    private static final double[][] CITIES = {
+            { 40.71, -74.01 }, { 51.51, -0.13 }, { 48.86, 2.35 }, { 35.68, 139.69 }, { 27.72, 85.32 },
+            { -33.87, 151.21 }, { -23.55, -46.63 }, { 19.43, -99.13 }, { 1.35, 103.82 }, { 55.76, 37.62 },
+            { 64.15, -21.94 }, { -36.85, 174.76 }, { 21.31, -157.86 }, { 30.04, 31.24 }, { -1.29, 36.82 } };
+
+    private SpatialTestData() {
+    }
+
+    /**
+     * Hotels spread uniformly over latitudes -85..85 and all longitudes.
+     */
+    public static List<Hotel> uniform(int n, long seed) {
+        Random random = new Random(seed);
+        List<Hotel> hotels = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            hotels.add(hotel(id, -85 + random.nextDouble() * 170, -180 + random.nextDouble() * 360));
+        }
+        return hotels;
+    }
+
+    /**
+     * Hotels around a handful of cities on every continent, most of them within
+     * about 10 km of a centre.
+     */
+    public static List<Hotel> clusteredCities(int n, long seed) {
+        Random random = new Random(seed);
+        List<Hotel> hotels = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            double[] city = CITIES[random.nextInt(CITIES.length)];
+            hotels.add(hotel(id, city[0] + random.nextGaussian() * 0.05, city[1] + random.nextGaussian() * 0.08));
+        }
+        return hotels;
+    }
+
+    /**
+     * Every hotel in one city, within a few kilometres of its centre.
+     */
+    public static List<Hotel> singleCity(int n, long seed) {
+        Random random = new Random(seed);
+        List<Hotel> hotels = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            hotels.add(hotel(id, 27.72 + random.nextGaussian() * 0.02, 85.32 + random.nextGaussian() * 0.02));
+        }
+        return hotels;
+    }
+
+    /**
+     * Uniform hotels with ids assigned in latitude, then longitude order: the
+     * degenerate case of rows imported region by region and inserted one by one.
+     */
+    public static List<Hotel> sorted(int n, long seed) {
+        List<Hotel> points = new ArrayList<>(uniform(n, seed));
+        points.sort(Comparator.comparingDouble(Hotel::getLatitude).thenComparingDouble(Hotel::getLongitude));
+        List<Hotel> hotels = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            hotels.add(hotel(i + 1, points.get(i).getLatitude(), points.get(i).getLongitude()));
+        }
+        return hotels;
+    }
+
+    /**
+     * A query point near the given catalog: a random hotel's location, jittered.
+     */
+    public static double[] queryNear(List<Hotel> hotels, Random random) {
+        Hotel hotel = hotels.get(random.nextInt(hotels.size()));
+        return new double[] {
+                Math.max(-90, Math.min(90, hotel.getLatitude() + random.nextGaussian() * 0.05)),
+                wrapLongitude(hotel.getLongitude() + random.nextGaussian() * 0.05) };
+    }
+
+    /**
+     * Ids of the k hotels nearest to the point, nearest first.
+     */
+    public static List<Long> nearestIds(List<Hotel> hotels, double lat, double lon, int k) {
+        // Each distance computed once, not once per comparison: this runs over 1M hotels in benchmarks
+        return hotels.stream()
+                .map(h -> Map.entry(h.getId(), distance(lat, lon, h)))
+                .sorted(Map.Entry.comparingByValue())
+                .limit(k)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Ids of the hotels within radiusKm of the point, nearest first.
+     */
+    public static List<Long> withinIds(List<Hotel> hotels, double lat, double lon, double radiusKm) {
+        return hotels.stream()
+                .filter(h -> distance(lat, lon, h) <= radiusKm)
+                .sorted(Comparator.comparingDouble(h -> distance(lat, lon, h)))
+                .map(Hotel::getId)
+                .toList();
+    }
+
+    /**
+     * Ids of the hotels inside the box, ascending.
+     */
+    public static List<Long> inBoxIds(List<Hotel> hotels, double south, double west, double north, double east) {
+        return hotels.stream()
+                .filter(h -> h.getLatitude() >= south && h.getLatitude() <= north
+                        && (west <= east
+                                ? h.getLongitude() >= west && h.getLongitude() <= east
+                                : h.getLongitude() >= west || h.getLongitude() <= east))
+                .map(Hotel::getId)
+                .sorted()
+                .toList();
+    }
+
+    public static double distance(double lat, double lon, Hotel hotel) {
+        return SpatialIndex.calculateDistance(lat, lon, hotel.getLatitude(), hotel.getLongitude());
+    }
+
+    public static Hotel hotel(long id, double latitude, double longitude) {
+        Hotel hotel = new Hotel();
+        hotel.setId(id);
+        hotel.setName("Hotel " + id);
+        hotel.setLatitude(latitude);
+        hotel.setLongitude(longitude);
+        return hotel;
+    }
+
+    private static double wrapLongitude(double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+    }
+}
@@ -0,0 +1,73 @@
+package com.dailycodework.lakesidehotel.service;
+
+import com.dailycodework.lakesidehotel.model.Hotel;
+import com.dailycodework.lakesidehotel.response.HotelClusterResponse;
+import com.dailycodework.lakesidehotel.response.MapHotelResponse;
+import com.dailycodework.lakesidehotel.response.ViewportResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ViewportServiceTest {
+
+    private KDTreeService kdTreeService;
+    private ViewportService viewportService;
+
+    @BeforeEach
+    void setUp() {
+        kdTreeService = new KDTreeService();
+        viewportService = new ViewportService(kdTreeService);
+    }
+
+    @Test
+    void testViewportClustersWhenZoomedOut() {
+        List<Hotel> hotels = SpatialTestData.uniform(100_000, 41);
+        kdTreeService.rebuild(hotels);
+
+        ViewportResponse world = viewportService.findInViewport(-90, -180, 90, 180, 2);
+        assertTrue(world.getClustered());
+        assertTrue(world.getClusters().size() <= 65 * 65);
+        assertEquals(100_000, world.getClusters().stream().mapToInt(HotelClusterResponse::getCount).sum());
+
+        // Zooming in further never returns more cells than the viewport allows
+        ViewportResponse europe = viewportService.findInViewport(35, -10, 60, 30, 12);
+        assertTrue(europe.getClustered());
+        assertTrue(europe.getClusters().size() <= 65 * 65);
+        long inEurope = hotels.stream()
+                .filter(h -> h.getLatitude() >= 35 && h.getLatitude() <= 60
+                        && h.getLongitude() >= -10 && h.getLongitude() <= 30)
+                .count();
+        long clustered = europe.getClusters().stream().mapToInt(HotelClusterResponse::getCount).sum();
+        assertTrue(clustered >= inEurope);
+        for (HotelClusterResponse cluster : europe.getClusters()) {
+            assertEquals(cluster.getCount() == 1, cluster.getHotelId() != null);
+        }
+    }
+
+    @Test
+    void testViewportListsHotelsWhenZoomedIn() {
+        kdTreeService.rebuild(List.of(
+                SpatialTestData.hotel(1L, 27.7000, 85.3000),
+                SpatialTestData.hotel(2L, 27.7010, 85.3010),
+                SpatialTestData.hotel(3L, 27.7100, 85.3200),
+                SpatialTestData.hotel(4L, 28.2000, 83.9800)));
+
+        ViewportResponse zoomedOut = viewportService.findInViewport(27, 83, 29, 86, 6);
+        assertTrue(zoomedOut.getClustered());
+        assertEquals(4, zoomedOut.getClusters().stream().mapToInt(HotelClusterResponse::getCount).sum());
+
+        ViewportResponse zoomedIn = viewportService.findInViewport(27.69, 85.29, 27.705, 85.31, 15);
+        assertFalse(zoomedIn.getClustered());
+        assertEquals(List.of(1L, 2L), zoomedIn.getHotels().stream().map(MapHotelResponse::getId).sorted().toList());
+
+        // Clusters follow hotel moves
+        kdTreeService.updateHotelCache(SpatialTestData.hotel(4L, 27.7005, 85.3005));
+        zoomedIn = viewportService.findInViewport(27.69, 85.29, 27.705, 85.31, 15);
+        assertEquals(List.of(1L, 2L, 4L), zoomedIn.getHotels().stream().map(MapHotelResponse::getId).sorted().toList());
+        zoomedOut = viewportService.findInViewport(27, 83, 29, 86, 6);
+        assertEquals(4, zoomedOut.getClusters().stream().mapToInt(HotelClusterResponse::getCount).sum());
+    }
+}